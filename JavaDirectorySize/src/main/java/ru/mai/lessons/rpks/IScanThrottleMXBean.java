@@ -0,0 +1,21 @@
+package ru.mai.lessons.rpks;
+
+public interface IScanThrottleMXBean {
+  public double getEntriesPerSecond(); // предел записей в секунду, 0 — без предела
+
+  public void setEntriesPerSecond(double entriesPerSecond);
+
+  public int getMaxConcurrentDirectoryReads(); // предел одновременно читаемых директорий
+
+  public void setMaxConcurrentDirectoryReads(int maxConcurrentDirectoryReads);
+
+  public long getEntries(); // прочитано атрибутов записей
+
+  public long getDirectoryReads(); // прочитано директорий
+
+  public int getActiveDirectoryReads(); // директорий, читаемых сейчас
+
+  public long getThrottledMillis(); // суммарное время ожидания разрешений во всех потоках
+
+  public double getEffectiveEntriesPerSecond(); // фактическая скорость за последнюю секунду
+}
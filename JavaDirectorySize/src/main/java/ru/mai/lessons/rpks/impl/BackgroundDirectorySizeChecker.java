@@ -0,0 +1,37 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.query.TraversalPolicy;
+
+import java.util.Objects;
+
+/**
+ * Фоновый подсчёт размера, который не мешает остальной работе с хранилищем: все обходы
+ * ({@link #checkSize(String)}, пакетный, отчёт, фильтры, асинхронный) читают атрибуты записей и
+ * открывают директории только с разрешения {@link ScanThrottle}. Пределы ограничения можно менять,
+ * пока обход идёт, — например, снимать их ночью, — а фактическую скорость смотреть через
+ * {@link ScanThrottle#register(String)} в JMX-консоли.
+ * <p>
+ * Ожидающий разрешения поток пула простаивает (пул на это время может подставить запасной поток
+ * для других своих задач), поэтому при низком пределе скорости больше потоков не ускоряют обход;
+ * по умолчанию обходит два потока.
+ */
+public class BackgroundDirectorySizeChecker extends ParallelDirectorySizeChecker {
+
+    private static final int DEFAULT_PARALLELISM = 2;
+
+    private final ScanThrottle throttle;
+
+    public BackgroundDirectorySizeChecker(ScanThrottle throttle) {
+        this(DEFAULT_PARALLELISM, TraversalPolicy.defaults(), throttle);
+    }
+
+    public BackgroundDirectorySizeChecker(int parallelism, TraversalPolicy policy, ScanThrottle throttle) {
+        super(parallelism, policy);
+        this.throttle = Objects.requireNonNull(throttle, "throttle");
+    }
+
+    @Override
+    public ScanThrottle getThrottle() {
+        return throttle;
+    }
+}
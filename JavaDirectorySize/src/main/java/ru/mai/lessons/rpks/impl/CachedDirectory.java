@@ -0,0 +1,49 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Запись кэша размеров об одной директории: по каким признакам проверять, изменилась ли она,
+ * суммарный размер файлов прямо в ней и такие же записи о поддиректориях.
+ */
+class CachedDirectory {
+
+    final String name;
+    final long modifiedNanos;
+    final long identity;
+    final boolean stable;
+    final long filesSize;
+    final List<CachedDirectory> children;
+    final long totalSize;
+
+    /**
+     * @param identity хэш {@code fileKey} директории (устройство и inode): подменённая директория с
+     *                 тем же временем изменения не будет принята за прежнюю
+     * @param stable   время изменения старше окна неточности часов файловой системы — только такой
+     *                 записи можно доверять без повторного чтения директории
+     */
+    CachedDirectory(String name, long modifiedNanos, long identity, boolean stable, long filesSize,
+                    List<CachedDirectory> children) {
+        this.name = name;
+        this.modifiedNanos = modifiedNanos;
+        this.identity = identity;
+        this.stable = stable;
+        this.filesSize = filesSize;
+        this.children = children;
+        long total = filesSize;
+        for (CachedDirectory child : children) {
+            total += child.totalSize;
+        }
+        this.totalSize = total;
+    }
+
+    Map<String, CachedDirectory> childrenByName() {
+        Map<String, CachedDirectory> result = new HashMap<>();
+        for (CachedDirectory child : children) {
+            result.put(child.name, child);
+        }
+        return result;
+    }
+}
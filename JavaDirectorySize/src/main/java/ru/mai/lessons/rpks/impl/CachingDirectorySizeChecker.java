@@ -0,0 +1,187 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.exception.DirectoryAccessException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подсчёт размера с кэшем размеров директорий, который хранится в файле между запусками.
+ * <p>
+ * Время изменения директории меняется, когда в ней создают, удаляют или переименовывают записи.
+ * Поэтому директория с прежними временем изменения и {@code fileKey} не читается заново: берётся
+ * сохранённый размер её файлов, и проверка продолжается только в её поддиректориях. Директория,
+ * время изменения которой поменялось, читается целиком. На неизменном дереве повторная проверка
+ * стоит одного {@code stat} на директорию вместо одного на каждый файл.
+ * <p>
+ * Ограничение: дописывание в существующий файл не меняет время изменения директории, и такой
+ * рост кэш не заметит, пока в директории не изменится состав записей. Записям, время изменения
+ * которых попадает в последние {@link #CLOCK_GRANULARITY_NANOS} до проверки, кэш не доверяет: они
+ * могли измениться ещё раз в пределах той же отметки времени.
+ */
+public class CachingDirectorySizeChecker extends ParallelDirectorySizeChecker {
+
+    static final long CLOCK_GRANULARITY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final Path cacheFile;
+    private DirectorySizeCache cache;
+
+    /**
+     * @param cacheFile файл кэша; создаётся при первой проверке
+     */
+    public CachingDirectorySizeChecker(Path cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    public CachingDirectorySizeChecker(Path cacheFile, int parallelism) {
+        super(parallelism);
+        this.cacheFile = cacheFile;
+    }
+
+    @Override
+    protected synchronized long calculateDirectorySize(File directory) throws DirectoryAccessException {
+        if (cache == null) {
+            cache = DirectorySizeCache.load(cacheFile);
+        }
+        Path root = directory.toPath().toAbsolutePath().normalize();
+        long stableBefore = System.currentTimeMillis() * 1_000_000 - CLOCK_GRANULARITY_NANOS;
+        Traversal traversal = traversal(root);
+
+        CachedDirectory refreshed;
+        try {
+            refreshed = getPool().invoke(new RefreshTask(root, cache.get(root), stableBefore, traversal, null));
+        } catch (UncheckedIOException e) {
+            throw new DirectoryAccessException("Unable to list files in directory: " + e.getMessage());
+        }
+        if (refreshed == null) {
+            throw new DirectoryAccessException("Directory disappeared: " + directory.getPath());
+        }
+
+        cache.put(root, refreshed);
+        try {
+            cache.save(cacheFile);
+        } catch (IOException e) {
+            throw new DirectoryAccessException("Unable to save directory size cache: " + cacheFile);
+        }
+        return refreshed.totalSize;
+    }
+
+    /**
+     * Проверяет одну директорию по записи кэша и возвращает новую запись или {@code null}, если
+     * директории больше нет или политика обхода не позволяет в неё спуститься.
+     */
+    private static class RefreshTask extends RecursiveTask<CachedDirectory> {
+
+        private final Path directory;
+        private final CachedDirectory cached;
+        private final long stableBefore;
+        private final Traversal traversal;
+        private final Traversal.Level parent;
+        private Traversal.Level level;
+
+        /**
+         * @param parent уровень родительской директории или {@code null} для корня
+         */
+        RefreshTask(Path directory, CachedDirectory cached, long stableBefore, Traversal traversal,
+                    Traversal.Level parent) {
+            this.directory = directory;
+            this.cached = cached;
+            this.stableBefore = stableBefore;
+            this.traversal = traversal;
+            this.parent = parent;
+        }
+
+        @Override
+        protected CachedDirectory compute() {
+            try {
+                BasicFileAttributes attributes = readAttributes(directory);
+                if (attributes == null || !attributes.isDirectory()) {
+                    return null;
+                }
+                level = parent == null ? traversal.root() : traversal.enter(parent, directory, attributes);
+                if (level == null) {
+                    return null;
+                }
+                long modifiedNanos = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+                long identity = String.valueOf(attributes.fileKey()).hashCode();
+                boolean stable = modifiedNanos < stableBefore;
+
+                if (cached != null && cached.stable && cached.modifiedNanos == modifiedNanos
+                        && cached.identity == identity) {
+                    List<CachedDirectory> children = refreshChildren(cached.children);
+                    if (children != null) {
+                        return new CachedDirectory(cached.name, modifiedNanos, identity, true, cached.filesSize,
+                                children);
+                    }
+                }
+                return list(modifiedNanos, identity, stable);
+            } catch (IOException e) {
+                throw new UncheckedIOException(directory.toString(), e);
+            }
+        }
+
+        /**
+         * Директория не менялась: проверяются только поддиректории из кэша. Если какой-то из них
+         * не оказалось, кэш противоречит диску, и возвращается {@code null}.
+         */
+        private List<CachedDirectory> refreshChildren(List<CachedDirectory> cachedChildren) {
+            List<RefreshTask> tasks = new ArrayList<>(cachedChildren.size());
+            for (CachedDirectory child : cachedChildren) {
+                RefreshTask task = new RefreshTask(directory.resolve(child.name), child, stableBefore, traversal,
+                        level);
+                task.fork();
+                tasks.add(task);
+            }
+            List<CachedDirectory> children = joinAll(tasks);
+            return children.size() == cachedChildren.size() ? children : null;
+        }
+
+        private CachedDirectory list(long modifiedNanos, long identity, boolean stable) throws IOException {
+            Map<String, CachedDirectory> cachedChildren = cached == null ? Map.of() : cached.childrenByName();
+            long filesSize = 0;
+            List<RefreshTask> tasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = traversal.openDirectory(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = traversal.readAttributes(entry);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        String name = entry.getFileName().toString();
+                        RefreshTask task = new RefreshTask(entry, cachedChildren.get(name), stableBefore, traversal,
+                                level);
+                        task.fork();
+                        tasks.add(task);
+                    } else {
+                        filesSize += attributes.size();
+                    }
+                }
+            }
+            String name = cached != null ? cached.name : String.valueOf(directory.getFileName());
+            return new CachedDirectory(name, modifiedNanos, identity, stable, filesSize, joinAll(tasks));
+        }
+
+        private static List<CachedDirectory> joinAll(List<RefreshTask> tasks) {
+            CachedDirectory[] results = new CachedDirectory[tasks.size()];
+            for (int index = tasks.size() - 1; index >= 0; index--) {
+                results[index] = tasks.get(index).join();
+            }
+            List<CachedDirectory> children = new ArrayList<>(results.length);
+            for (CachedDirectory result : results) {
+                if (result != null) {
+                    children.add(result);
+                }
+            }
+            return children;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Кэш размеров директорий в памяти и в файле. Для каждой проверенной директории хранится дерево
+ * {@link CachedDirectory}. В файл дерево пишется обходом в глубину: у записи только имя, а не
+ * полный путь, поэтому файл занимает несколько десятков байт на директорию. Файл с другой версией
+ * формата или повреждённый молча отбрасывается — кэш просто строится заново.
+ */
+class DirectorySizeCache {
+
+    private static final int MAGIC = 0x44534331;
+    private static final int VERSION = 1;
+
+    private final Map<String, CachedDirectory> roots = new HashMap<>();
+
+    static DirectorySizeCache load(Path file) {
+        DirectorySizeCache cache = new DirectorySizeCache();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return cache;
+            }
+            int rootCount = input.readInt();
+            for (int index = 0; index < rootCount; index++) {
+                String root = input.readUTF();
+                cache.roots.put(root, readDirectory(input));
+            }
+        } catch (NoSuchFileException e) {
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            cache.roots.clear();
+        }
+        return cache;
+    }
+
+    CachedDirectory get(Path root) {
+        return roots.get(root.toString());
+    }
+
+    void put(Path root, CachedDirectory directory) {
+        roots.put(root.toString(), directory);
+    }
+
+    /**
+     * Записывает кэш во временный файл рядом и переименовывает его, поэтому прерванная запись не
+     * портит прежний кэш.
+     */
+    void save(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(roots.size());
+                for (Map.Entry<String, CachedDirectory> root : roots.entrySet()) {
+                    output.writeUTF(root.getKey());
+                    writeDirectory(output, root.getValue());
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeDirectory(DataOutputStream output, CachedDirectory directory) throws IOException {
+        output.writeUTF(directory.name);
+        output.writeLong(directory.modifiedNanos);
+        output.writeLong(directory.identity);
+        output.writeBoolean(directory.stable);
+        output.writeLong(directory.filesSize);
+        output.writeInt(directory.children.size());
+        for (CachedDirectory child : directory.children) {
+            writeDirectory(output, child);
+        }
+    }
+
+    private static CachedDirectory readDirectory(DataInputStream input) throws IOException {
+        String name = input.readUTF();
+        long modifiedNanos = input.readLong();
+        long identity = input.readLong();
+        boolean stable = input.readBoolean();
+        long filesSize = input.readLong();
+        int childCount = input.readInt();
+        List<CachedDirectory> children = new ArrayList<>(Math.min(childCount, 1024));
+        for (int index = 0; index < childCount; index++) {
+            children.add(readDirectory(input));
+        }
+        return new CachedDirectory(name, modifiedNanos, identity, stable, filesSize, children);
+    }
+}
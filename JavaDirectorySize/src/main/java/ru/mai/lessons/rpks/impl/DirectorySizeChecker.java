@@ -2,15 +2,74 @@ package ru.mai.lessons.rpks.impl;
 
 import ru.mai.lessons.rpks.IDirectorySizeChecker;
 import ru.mai.lessons.rpks.exception.DirectoryAccessException;
+import ru.mai.lessons.rpks.query.TraversalPolicy;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 
 public class DirectorySizeChecker implements IDirectorySizeChecker {
 
     public static final String PREFIX = "src/test/resources/";
 
+    private final TraversalPolicy policy;
+
+    /**
+     * Обход по {@link TraversalPolicy#defaults()}: по символическим ссылкам, кроме замыкающих цикл.
+     */
+    public DirectorySizeChecker() {
+        this(TraversalPolicy.defaults());
+    }
+
+    /**
+     * @param policy правила обхода: переход по ссылкам, наибольшая глубина, одна файловая система
+     */
+    public DirectorySizeChecker(TraversalPolicy policy) {
+        this.policy = Objects.requireNonNull(policy, "policy");
+    }
+
+    public TraversalPolicy getTraversalPolicy() {
+        return policy;
+    }
+
     @Override
     public String checkSize(String directoryName) throws DirectoryAccessException {
+        File directory = resolveDirectory(directoryName);
+
+        long totalResult;
+        try {
+            totalResult = calculateDirectorySize(directory);
+        } catch (Exception e) {
+            throw new DirectoryAccessException("Error while accessing directory: " + directory.getPath());
+        }
+
+        return formatSize(totalResult, directory.getPath());
+    }
+
+    /**
+     * Запускает слежение за размером директории (см. {@link DirectorySizeWatcher}): после начального
+     * обхода размер поддерживается по событиям файловой системы. Чтобы получать события, вызовите
+     * {@link DirectorySizeWatcher#watch(long)} в отдельном потоке или периодически
+     * {@link DirectorySizeWatcher#poll()}.
+     */
+    public DirectorySizeWatcher watch(String directoryName) throws DirectoryAccessException {
+        File directory = resolveDirectory(directoryName);
+        try {
+            return new DirectorySizeWatcher(directory.toPath());
+        } catch (IOException e) {
+            throw new DirectoryAccessException("Unable to watch directory: " + directory.getPath());
+        }
+    }
+
+    /**
+     * Проверяет имя директории и возвращает её путь с учётом {@link #PREFIX}.
+     */
+    protected File resolveDirectory(String directoryName) throws DirectoryAccessException {
         if (directoryName == null || directoryName.isEmpty()) {
             throw new DirectoryAccessException("Directory name is null or empty");
         }
@@ -24,36 +83,57 @@ public class DirectorySizeChecker implements IDirectorySizeChecker {
         if (!directory.isDirectory()) {
             throw new DirectoryAccessException("The provided path is not a directory: " + directory.getPath());
         }
-
-        long totalResult;
-        try {
-            totalResult = calculateDirectorySize(directory);
-        } catch (Exception e) {
-            throw new DirectoryAccessException("Error while accessing directory: " + directory.getPath());
-        }
-
-        return formatSize(totalResult, directory.getPath());
+        return directory;
     }
 
-    private long calculateDirectorySize(File directory) throws DirectoryAccessException {
+    /**
+     * Суммирует размеры всех файлов директории и её поддиректорий, спускаясь только туда, куда
+     * разрешает {@link Traversal}. Наследники могут заменить способ обхода, сохранив проверку
+     * аргументов и формат результата {@link #checkSize(String)}.
+     */
+    protected long calculateDirectorySize(File directory) throws DirectoryAccessException {
         if (directory == null) {
             return 0;
         }
 
-        long result = 0;
-        File[] files = directory.listFiles();
-        if (files == null) {
-            throw new DirectoryAccessException("Unable to list files in directory: " + directory.getPath());
+        Path root = directory.toPath();
+        try {
+            Traversal traversal = new Traversal(policy, root);
+            return calculateDirectorySize(root, traversal.root(), traversal);
+        } catch (IOException e) {
+            throw new DirectoryAccessException("Unable to list files in directory: " + e.getMessage());
         }
+    }
 
-        for (File file : files) {
-            if (file.isDirectory()) {
-                result += calculateDirectorySize(file);
-            } else {
-                result += file.length();
+    /**
+     * Поддиректории обходятся после закрытия потока записей, поэтому открыт только один поток.
+     */
+    private static long calculateDirectorySize(Path directory, Traversal.Level level, Traversal traversal)
+            throws IOException {
+        long result = 0;
+        List<Path> subdirectories = new ArrayList<>();
+        List<Traversal.Level> levels = new ArrayList<>();
+        try (DirectoryStream<Path> entries = traversal.openDirectory(directory)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attributes = traversal.readAttributes(entry);
+                if (attributes == null) {
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    Traversal.Level child = traversal.enter(level, entry, attributes);
+                    if (child != null) {
+                        subdirectories.add(entry);
+                        levels.add(child);
+                    }
+                } else {
+                    result += attributes.size();
+                }
             }
         }
 
+        for (int index = 0; index < subdirectories.size(); index++) {
+            result += calculateDirectorySize(subdirectories.get(index), levels.get(index), traversal);
+        }
         return result;
     }
 
@@ -0,0 +1,327 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Размер директории, который поддерживается актуальным по событиям {@link WatchService}. После
+ * начального обхода каждая поддиректория зарегистрирована в службе слежения, а размеры файлов и
+ * поддеревьев хранятся в памяти; изменение файла сдвигает размеры только его директории и её
+ * предков.
+ * <p>
+ * События не применяются по одному. За окно объединения собираются имена изменившихся записей, и
+ * каждая запись затем проверяется один раз по её текущему состоянию на диске. Поэтому серия
+ * записей в один файл стоит одного {@code stat}, а файл, созданный и удалённый в пределах окна, не
+ * стоит ничего. При {@link StandardWatchEventKinds#OVERFLOW} события директории потеряны, и
+ * заново обходится только её поддерево.
+ * <p>
+ * Изменения применяет один поток — тот, что вызывает {@link #watch(long)} или {@link #poll()};
+ * читать размеры можно из любого потока.
+ */
+public class DirectorySizeWatcher implements Closeable {
+
+    private final Path root;
+    private final WatchService service;
+    private volatile Node rootNode;
+    private final Map<WatchKey, Node> nodes = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    DirectorySizeWatcher(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.service = this.root.getFileSystem().newWatchService();
+        try {
+            rootNode = scan(this.root, ParallelDirectorySizeChecker.readAttributes(this.root), null);
+        } catch (IOException | RuntimeException e) {
+            service.close();
+            throw e;
+        }
+        if (rootNode == null) {
+            service.close();
+            throw new IOException("Directory disappeared: " + root);
+        }
+    }
+
+    /**
+     * Текущий размер всей директории.
+     */
+    public long getSize() {
+        return rootNode.subtreeSize;
+    }
+
+    /**
+     * Текущий размер поддиректории или -1, если такой поддиректории нет.
+     *
+     * @param directory путь относительно отслеживаемой директории
+     */
+    public long getSize(Path directory) {
+        Node node = rootNode;
+        for (Path name : directory.normalize()) {
+            if (name.toString().isEmpty()) {
+                continue;
+            }
+            node = node.children.get(name.toString());
+            if (node == null) {
+                return -1;
+            }
+        }
+        return node.subtreeSize;
+    }
+
+    /**
+     * Применяет все уже пришедшие события, не дожидаясь новых.
+     *
+     * @return {@code true}, если были события
+     */
+    public boolean poll() throws IOException {
+        Batch batch = new Batch();
+        for (WatchKey key = service.poll(); key != null; key = service.poll()) {
+            batch.add(key);
+        }
+        batch.apply();
+        return !batch.isEmpty();
+    }
+
+    /**
+     * Следит за директорией, пока не будет вызван {@link #close()} или прерван поток. После
+     * первого события ждёт ещё {@code coalesceMillis}, собирая события, и применяет их вместе.
+     */
+    public void watch(long coalesceMillis) throws IOException, InterruptedException {
+        try {
+            while (!closed) {
+                Batch batch = new Batch();
+                batch.add(service.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(coalesceMillis);
+                for (long remaining = coalesceMillis * 1_000_000; remaining > 0;
+                     remaining = deadline - System.nanoTime()) {
+                    WatchKey key = service.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (key != null) {
+                        batch.add(key);
+                    }
+                }
+                for (WatchKey key = service.poll(); key != null; key = service.poll()) {
+                    batch.add(key);
+                }
+                batch.apply();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // слежение остановлено через close()
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        service.close();
+    }
+
+    /**
+     * Обходит поддерево, регистрируя каждую директорию до чтения её записей: всё, что появится
+     * после чтения, придёт событием. Возвращает {@code null}, если директории уже нет или она по
+     * ссылке совпадает с одним из своих предков ({@code fileKey}, как в {@link Traversal}): такая
+     * ссылка замыкает цикл и не учитывается.
+     */
+    private Node scan(Path directory, BasicFileAttributes directoryAttributes, Node parent) throws IOException {
+        if (directoryAttributes == null || !directoryAttributes.isDirectory()) {
+            return null;
+        }
+        Object fileKey = directoryAttributes.fileKey();
+        for (Node ancestor = parent; fileKey != null && ancestor != null; ancestor = ancestor.parent) {
+            if (fileKey.equals(ancestor.fileKey)) {
+                return null;
+            }
+        }
+        WatchKey key;
+        try {
+            key = directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (NoSuchFileException | NotDirectoryException e) {
+            return null;
+        }
+        Node node = new Node(directory, fileKey, key, parent);
+        nodes.put(key, node);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attributes = ParallelDirectorySizeChecker.readAttributes(entry);
+                if (attributes == null) {
+                    continue;
+                }
+                String name = entry.getFileName().toString();
+                if (attributes.isDirectory()) {
+                    Node child = scan(entry, attributes, node);
+                    if (child != null) {
+                        node.children.put(name, child);
+                        node.subtreeSize += child.subtreeSize;
+                    }
+                } else {
+                    node.files.put(name, attributes.size());
+                    node.subtreeSize += attributes.size();
+                }
+            }
+        } catch (NoSuchFileException e) {
+            cancel(node);
+            return null;
+        }
+        return node;
+    }
+
+    /**
+     * Сверяет одну запись директории с диском и применяет разницу. Поддиректория, которую за окно
+     * объединения удалили и создали заново, — уже другая директория: её прежний ключ слежения
+     * недействителен или {@code fileKey} отличается, и она обходится заново.
+     */
+    private void reconcile(Node node, String name) throws IOException {
+        Path entry = node.directory.resolve(name);
+        BasicFileAttributes attributes = ParallelDirectorySizeChecker.readAttributes(entry);
+        boolean isDirectory = attributes != null && attributes.isDirectory();
+
+        Long oldSize = node.files.get(name);
+        if (oldSize != null && (attributes == null || isDirectory)) {
+            node.files.remove(name);
+            node.add(-oldSize);
+        }
+        Node oldChild = node.children.get(name);
+        if (oldChild != null && (!isDirectory || !oldChild.key.isValid()
+                || !Objects.equals(oldChild.fileKey, attributes.fileKey()))) {
+            node.children.remove(name);
+            cancel(oldChild);
+            node.add(-oldChild.subtreeSize);
+            oldChild = null;
+        }
+
+        if (isDirectory && oldChild == null) {
+            Node child = scan(entry, attributes, node);
+            if (child != null) {
+                node.children.put(name, child);
+                node.add(child.subtreeSize);
+            }
+        } else if (attributes != null && !isDirectory) {
+            long size = attributes.size();
+            Long previous = node.files.put(name, size);
+            node.add(size - (previous == null ? 0 : previous));
+        }
+    }
+
+    /**
+     * Заново обходит поддерево директории, события которой потеряны.
+     */
+    private void rescan(Node node) throws IOException {
+        if (node.parent == null) {
+            cancel(node);
+            Node fresh = scan(root, ParallelDirectorySizeChecker.readAttributes(root), null);
+            if (fresh != null) {
+                rootNode = fresh;
+            }
+            return;
+        }
+        String name = node.directory.getFileName().toString();
+        Node parent = node.parent;
+        parent.children.remove(name);
+        cancel(node);
+        parent.add(-node.subtreeSize);
+        reconcile(parent, name);
+    }
+
+    private void cancel(Node node) {
+        node.removed = true;
+        node.key.cancel();
+        nodes.remove(node.key);
+        for (Node child : node.children.values()) {
+            cancel(child);
+        }
+    }
+
+    /**
+     * Директория под слежением. Размеры меняет только поток, применяющий события.
+     */
+    private static class Node {
+        final Path directory;
+        final Object fileKey;
+        final Map<String, Long> files = new HashMap<>();
+        final Map<String, Node> children = new ConcurrentHashMap<>();
+        final WatchKey key;
+        final Node parent;
+        volatile long subtreeSize;
+        boolean removed;
+
+        Node(Path directory, Object fileKey, WatchKey key, Node parent) {
+            this.directory = directory;
+            this.fileKey = fileKey;
+            this.key = key;
+            this.parent = parent;
+        }
+
+        /**
+         * Сдвигает размер этой директории и всех её предков.
+         */
+        void add(long delta) {
+            for (Node node = this; node != null; node = node.parent) {
+                node.subtreeSize += delta;
+            }
+        }
+    }
+
+    /**
+     * События, собранные за одно окно объединения: имена изменившихся записей по директориям и
+     * директории с потерянными событиями.
+     */
+    private class Batch {
+        private final Map<Node, Set<String>> changed = new LinkedHashMap<>();
+        private final Set<Node> overflowed = new LinkedHashSet<>();
+
+        void add(WatchKey key) {
+            Node node = nodes.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (node == null) {
+                    continue;
+                }
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflowed.add(node);
+                } else {
+                    changed.computeIfAbsent(node, ignored -> new LinkedHashSet<>())
+                            .add(event.context().toString());
+                }
+            }
+            key.reset();
+        }
+
+        boolean isEmpty() {
+            return changed.isEmpty() && overflowed.isEmpty();
+        }
+
+        void apply() throws IOException {
+            for (Node node : overflowed) {
+                if (!node.removed) {
+                    rescan(node);
+                }
+            }
+            for (Map.Entry<Node, Set<String>> entry : changed.entrySet()) {
+                Node node = entry.getKey();
+                if (node.removed || overflowed.contains(node)) {
+                    continue;
+                }
+                for (String name : entry.getValue()) {
+                    reconcile(node, name);
+                }
+            }
+        }
+    }
+}
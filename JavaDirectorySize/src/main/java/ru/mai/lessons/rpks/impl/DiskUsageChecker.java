@@ -0,0 +1,192 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.exception.DirectoryAccessException;
+import ru.mai.lessons.rpks.query.TraversalPolicy;
+import ru.mai.lessons.rpks.result.DiskUsage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Подсчёт места, которое директория действительно занимает, по атрибутам {@code unix:} (inode,
+ * устройство, число ссылок, размер), прочитанным одним {@code stat} на запись.
+ * <ul>
+ *     <li>Файл с несколькими жёсткими ссылками учитывается один раз: пары (устройство, inode)
+ *     таких файлов запоминаются в {@link LongHashSet} — по 8–16 байт на файл без объектов, и
+ *     только для файлов с {@code nlink > 1}, так что на обычных деревьях множество пусто.</li>
+ *     <li>Символические ссылки, как и в {@code du}, не разыменовываются: учитывается сама ссылка, а
+ *     не её цель, поэтому цель не считается дважды, а циклы невозможны. Из
+ *     {@link TraversalPolicy} поэтому действуют только наибольшая глубина и ограничение одной
+ *     файловой системой.</li>
+ * </ul>
+ * {@link #checkSize(String)} в этом режиме возвращает логический размер без повторных ссылок.
+ * <p>
+ * Число занятых блоков ({@code st_blocks}) атрибуты JDK не отдают, поэтому место на диске
+ * оценивается как размер файла, округлённый вверх до размера блока его {@link java.nio.file.FileStore}.
+ * Для разреженных файлов такая оценка завышена.
+ */
+public class DiskUsageChecker extends ParallelDirectorySizeChecker {
+
+    private static final String ATTRIBUTES = "unix:dev,ino,nlink,size,isDirectory,isRegularFile";
+    private static final long DEFAULT_BLOCK_SIZE = 4096;
+
+    private final Map<Long, Long> blockSizes = new ConcurrentHashMap<>();
+
+    public DiskUsageChecker() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public DiskUsageChecker(int parallelism) {
+        this(parallelism, TraversalPolicy.defaults());
+    }
+
+    public DiskUsageChecker(int parallelism, TraversalPolicy policy) {
+        super(parallelism, policy.followLinks(false));
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("unix")) {
+            throw new UnsupportedOperationException("unix file attributes are not supported");
+        }
+    }
+
+    /**
+     * Логический размер и оценка места на диске всех файлов директории и её поддиректорий.
+     */
+    public DiskUsage usage(String directoryName) throws DirectoryAccessException {
+        return usage(resolveDirectory(directoryName));
+    }
+
+    @Override
+    protected long calculateDirectorySize(File directory) throws DirectoryAccessException {
+        return usage(directory).getApparentSize();
+    }
+
+    private DiskUsage usage(File directory) throws DirectoryAccessException {
+        Totals totals = new Totals();
+        Traversal traversal = traversal(directory.toPath());
+        try {
+            getPool().invoke(new UsageTask(directory.toPath(), traversal.root(), traversal, totals));
+        } catch (UncheckedIOException e) {
+            throw new DirectoryAccessException("Unable to list files in directory: " + e.getMessage());
+        }
+        return new DiskUsage(totals.apparentSize.sum(), totals.estimatedAllocatedSize.sum(),
+                totals.fileCount.sum(), totals.skippedLinks.sum());
+    }
+
+    private long blockSize(Path file, long device) throws IOException {
+        Long known = blockSizes.get(device);
+        if (known != null) {
+            return known;
+        }
+        long blockSize;
+        try {
+            blockSize = Files.getFileStore(file).getBlockSize();
+        } catch (UnsupportedOperationException e) {
+            blockSize = DEFAULT_BLOCK_SIZE;
+        }
+        blockSizes.put(device, blockSize);
+        return blockSize;
+    }
+
+    /**
+     * Суммы одного подсчёта и множество уже учтённых inode с несколькими ссылками по устройствам.
+     */
+    private static class Totals {
+        final LongAdder apparentSize = new LongAdder();
+        final LongAdder estimatedAllocatedSize = new LongAdder();
+        final LongAdder fileCount = new LongAdder();
+        final LongAdder skippedLinks = new LongAdder();
+        final Map<Long, LongHashSet> linkedInodes = new ConcurrentHashMap<>();
+
+        /**
+         * @return {@code true}, если inode встретился впервые
+         */
+        boolean firstLink(long device, long inode) {
+            LongHashSet inodes = linkedInodes.computeIfAbsent(device, ignored -> new LongHashSet());
+            synchronized (inodes) {
+                return inodes.add(inode);
+            }
+        }
+    }
+
+    /**
+     * Одна директория: суммы её файлов добавляются в общие счётчики одним обращением, поддиректории
+     * отдаются в пул отдельными задачами.
+     */
+    private class UsageTask extends RecursiveAction {
+
+        private final Path directory;
+        private final Traversal.Level level;
+        private final Traversal traversal;
+        private final Totals totals;
+
+        UsageTask(Path directory, Traversal.Level level, Traversal traversal, Totals totals) {
+            this.directory = directory;
+            this.level = level;
+            this.traversal = traversal;
+            this.totals = totals;
+        }
+
+        @Override
+        protected void compute() {
+            long apparentSize = 0;
+            long estimatedAllocatedSize = 0;
+            long fileCount = 0;
+            long skippedLinks = 0;
+            List<UsageTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = traversal.openDirectory(directory)) {
+                for (Path entry : entries) {
+                    Map<String, Object> attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    if ((Boolean) attributes.get("isDirectory")) {
+                        Traversal.Level child = traversal.enter(level, entry, null);
+                        if (child != null) {
+                            UsageTask task = new UsageTask(entry, child, traversal, totals);
+                            task.fork();
+                            subdirectories.add(task);
+                        }
+                        continue;
+                    }
+                    long device = (Long) attributes.get("dev");
+                    if ((Integer) attributes.get("nlink") > 1
+                            && !totals.firstLink(device, (Long) attributes.get("ino"))) {
+                        skippedLinks++;
+                        continue;
+                    }
+                    long size = (Long) attributes.get("size");
+                    apparentSize += size;
+                    fileCount++;
+                    if ((Boolean) attributes.get("isRegularFile")) {
+                        long blockSize = blockSize(entry, device);
+                        estimatedAllocatedSize += (size + blockSize - 1) / blockSize * blockSize;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(directory.toString(), e);
+            }
+            totals.apparentSize.add(apparentSize);
+            totals.estimatedAllocatedSize.add(estimatedAllocatedSize);
+            totals.fileCount.add(fileCount);
+            totals.skippedLinks.add(skippedLinks);
+
+            for (int index = subdirectories.size() - 1; index >= 0; index--) {
+                subdirectories.get(index).join();
+            }
+        }
+    }
+}
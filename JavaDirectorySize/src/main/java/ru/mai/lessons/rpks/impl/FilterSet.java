@@ -0,0 +1,163 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.query.SizeFilter;
+import ru.mai.lessons.rpks.result.FilteredSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Набор отборов, подготовленный к проверке файлов при обходе: шаблоны путей скомпилированы в
+ * {@link PathMatcher}, границы времени переведены в {@link FileTime}. Все отборы проверяются по
+ * одним и тем же атрибутам записи, прочитанным один раз, а путь относительно корня строится,
+ * только если хотя бы один отбор задаёт шаблон.
+ */
+class FilterSet {
+
+    private final List<SizeFilter> filters;
+    private final Traversal traversal;
+    private final Path root;
+    private final Condition[] conditions;
+    private final boolean needsRelativePath;
+
+    FilterSet(Traversal traversal, Path root, List<SizeFilter> filters) {
+        this.filters = List.copyOf(filters);
+        this.traversal = traversal;
+        this.root = root;
+        this.conditions = new Condition[filters.size()];
+        boolean relativePath = false;
+        for (int index = 0; index < conditions.length; index++) {
+            conditions[index] = new Condition(root, filters.get(index));
+            relativePath |= conditions[index].glob != null;
+        }
+        this.needsRelativePath = relativePath;
+    }
+
+    /**
+     * Задача обхода всей директории; результат — размеры и числа файлов по отборам, см.
+     * {@link #toResults(long[])}.
+     */
+    RecursiveTask<long[]> task() {
+        return new Task(root, traversal.root());
+    }
+
+    List<FilteredSize> toResults(long[] totals) {
+        List<FilteredSize> results = new ArrayList<>(filters.size());
+        for (int index = 0; index < filters.size(); index++) {
+            results.add(new FilteredSize(filters.get(index), totals[2 * index], totals[2 * index + 1]));
+        }
+        return results;
+    }
+
+    /**
+     * Добавляет файл к итогам всех подходящих отборов: {@code totals[2i]} — размер,
+     * {@code totals[2i + 1]} — число файлов отбора {@code i}.
+     */
+    private void add(Path file, BasicFileAttributes attributes, long[] totals) {
+        Path relativePath = needsRelativePath ? root.relativize(file) : null;
+        String name = file.getFileName().toString();
+        for (int index = 0; index < conditions.length; index++) {
+            if (conditions[index].test(relativePath, name, attributes)) {
+                totals[2 * index] += attributes.size();
+                totals[2 * index + 1]++;
+            }
+        }
+    }
+
+    /**
+     * Один отбор; сначала проверяются дешёвые условия по атрибутам, шаблон пути — последним.
+     */
+    private static class Condition {
+        final PathMatcher glob;
+        final String extension;
+        final FileTime modifiedAfter;
+        final FileTime modifiedBefore;
+        final long minSize;
+        final long maxSize;
+
+        Condition(Path root, SizeFilter filter) {
+            this.glob = filter.getGlob() == null ? null
+                    : root.getFileSystem().getPathMatcher("glob:" + filter.getGlob());
+            this.extension = filter.getExtension() == null ? null : "." + filter.getExtension();
+            this.modifiedAfter = filter.getModifiedAfter() == null ? null : FileTime.from(filter.getModifiedAfter());
+            this.modifiedBefore = filter.getModifiedBefore() == null ? null
+                    : FileTime.from(filter.getModifiedBefore());
+            this.minSize = filter.getMinSize();
+            this.maxSize = filter.getMaxSize();
+        }
+
+        boolean test(Path relativePath, String name, BasicFileAttributes attributes) {
+            long size = attributes.size();
+            if (size < minSize || size > maxSize) {
+                return false;
+            }
+            if (extension != null && !name.endsWith(extension)) {
+                return false;
+            }
+            if (modifiedAfter != null && attributes.lastModifiedTime().compareTo(modifiedAfter) < 0) {
+                return false;
+            }
+            if (modifiedBefore != null && attributes.lastModifiedTime().compareTo(modifiedBefore) >= 0) {
+                return false;
+            }
+            return glob == null || glob.matches(relativePath);
+        }
+    }
+
+    /**
+     * Одна директория: итоги её файлов копятся в собственном массиве, итоги поддиректорий
+     * прибавляются при их присоединении, поэтому общих счётчиков у потоков нет.
+     */
+    private class Task extends RecursiveTask<long[]> {
+
+        private final Path directory;
+        private final Traversal.Level level;
+
+        Task(Path directory, Traversal.Level level) {
+            this.directory = directory;
+            this.level = level;
+        }
+
+        @Override
+        protected long[] compute() {
+            long[] totals = new long[2 * conditions.length];
+            List<Task> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = traversal.openDirectory(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = traversal.readAttributes(entry);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        Traversal.Level child = traversal.enter(level, entry, attributes);
+                        if (child != null) {
+                            Task task = new Task(entry, child);
+                            task.fork();
+                            subdirectories.add(task);
+                        }
+                    } else {
+                        add(entry, attributes, totals);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(directory.toString(), e);
+            }
+
+            for (int index = subdirectories.size() - 1; index >= 0; index--) {
+                long[] subdirectoryTotals = subdirectories.get(index).join();
+                for (int total = 0; total < totals.length; total++) {
+                    totals[total] += subdirectoryTotals[total];
+                }
+            }
+            return totals;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.result.SizeEntry;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * {@code limit} самых больших записей из тех, что предложены из разных потоков обхода. Хранит
+ * ограниченную кучу с наименьшей записью на вершине, поэтому память — O(limit), а добавление —
+ * O(log limit).
+ * <p>
+ * Когда куча заполнена, размер её вершины публикуется в {@code threshold}, и запись не больше
+ * него отбрасывается без блокировки и без создания объектов — так отсеивается почти всё дерево.
+ */
+class LargestEntries {
+
+    private static final Comparator<SizeEntry> ORDER = Comparator.comparingLong(SizeEntry::getSize)
+            .thenComparing(SizeEntry::getPath, Comparator.reverseOrder());
+
+    private final int limit;
+    private final PriorityQueue<SizeEntry> heap;
+    private volatile long threshold = -1;
+
+    LargestEntries(int limit) {
+        this.limit = limit;
+        this.heap = new PriorityQueue<>(Math.max(1, limit), ORDER);
+    }
+
+    void offer(Path path, long size) {
+        if (size < threshold || limit == 0) {
+            return;
+        }
+        synchronized (heap) {
+            SizeEntry entry = new SizeEntry(path, size);
+            if (heap.size() < limit) {
+                heap.add(entry);
+            } else if (ORDER.compare(entry, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(entry);
+            } else {
+                return;
+            }
+            if (heap.size() == limit) {
+                threshold = heap.peek().getSize();
+            }
+        }
+    }
+
+    /**
+     * Записи по убыванию размера; при равном размере — по пути.
+     */
+    List<SizeEntry> toList() {
+        List<SizeEntry> result;
+        synchronized (heap) {
+            result = new ArrayList<>(heap);
+        }
+        result.sort(ORDER.reversed());
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package ru.mai.lessons.rpks.impl;
+
+/**
+ * Множество чисел {@code long} с открытой адресацией и линейным пробированием в одном массиве
+ * {@code long[]}: 8–16 байт на элемент без объектов-обёрток, поэтому миллионы inode не нагружают
+ * сборщик мусора. Нуль — маркер пустой ячейки, сам нуль хранится отдельным флагом.
+ * <p>
+ * Не потокобезопасно.
+ */
+class LongHashSet {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] table = new long[INITIAL_CAPACITY];
+    private int size;
+    private boolean containsZero;
+
+    /**
+     * @return {@code true}, если элемента ещё не было
+     */
+    boolean add(long value) {
+        if (value == 0) {
+            boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+        int mask = table.length - 1;
+        for (int index = mix(value) & mask; ; index = (index + 1) & mask) {
+            if (table[index] == value) {
+                return false;
+            }
+            if (table[index] == 0) {
+                table[index] = value;
+                if (++size * 2 > table.length) {
+                    grow();
+                }
+                return true;
+            }
+        }
+    }
+
+    boolean contains(long value) {
+        if (value == 0) {
+            return containsZero;
+        }
+        int mask = table.length - 1;
+        for (int index = mix(value) & mask; table[index] != 0; index = (index + 1) & mask) {
+            if (table[index] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return size + (containsZero ? 1 : 0);
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        int mask = table.length - 1;
+        for (long value : old) {
+            if (value != 0) {
+                int index = mix(value) & mask;
+                while (table[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = value;
+            }
+        }
+    }
+
+    /**
+     * Перемешивает биты (финализатор MurmurHash3): номера inode идут подряд, и без перемешивания
+     * они занимали бы соседние ячейки длинными цепочками.
+     */
+    private static int mix(long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53ec9ffL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+}
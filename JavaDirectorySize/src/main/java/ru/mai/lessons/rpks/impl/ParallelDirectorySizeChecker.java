@@ -0,0 +1,452 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.exception.DirectoryAccessException;
+import ru.mai.lessons.rpks.query.SizeFilter;
+import ru.mai.lessons.rpks.query.TraversalPolicy;
+import ru.mai.lessons.rpks.result.DirectorySize;
+import ru.mai.lessons.rpks.result.DirectorySizeReport;
+import ru.mai.lessons.rpks.result.FilteredSize;
+import ru.mai.lessons.rpks.result.SizeProgress;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * Параллельный подсчёт размера директории на {@link ForkJoinPool}. Каждая поддиректория — отдельная
+ * задача: свободные потоки забирают (work stealing) ещё не начатые поддиректории у занятых, поэтому
+ * нагрузка выравнивается и на широких, и на глубоких деревьях.
+ * <p>
+ * Записи директории читаются через {@link Files#newDirectoryStream(Path)}, а тип и размер каждой
+ * записи — одним чтением {@link BasicFileAttributes} вместо пары {@code isDirectory()} и
+ * {@code length()}, то есть одним системным вызовом {@code stat} на запись вместо двух.
+ * <p>
+ * Все обходы подчиняются {@link TraversalPolicy}, заданной при создании, так же, как
+ * последовательный обход {@link DirectorySizeChecker}: по умолчанию они переходят по символическим
+ * ссылкам, но пропускают ссылки, замыкающие цикл.
+ * <p>
+ * Каждый экземпляр владеет собственным пулом; его потоки живут, пока экземпляр не закрыт через
+ * {@link #close()}, поэтому экземпляр стоит переиспользовать, а не создавать на каждый подсчёт.
+ */
+public class ParallelDirectorySizeChecker extends DirectorySizeChecker implements AutoCloseable {
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Число потоков равно числу ядер.
+     */
+    public ParallelDirectorySizeChecker() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism число потоков обхода. Для сетевых файловых систем (NFS) имеет смысл задавать
+     *                    больше числа ядер: потоки в основном ждут ответа хранилища, и чем больше
+     *                    запросов одновременно в очереди, тем выше скорость обхода
+     */
+    public ParallelDirectorySizeChecker(int parallelism) {
+        this(parallelism, TraversalPolicy.defaults());
+    }
+
+    /**
+     * @param policy правила обхода: переход по ссылкам, наибольшая глубина, одна файловая система
+     */
+    public ParallelDirectorySizeChecker(int parallelism, TraversalPolicy policy) {
+        super(policy);
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism should be positive");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Пул обхода; наследники запускают в нём собственные задачи.
+     */
+    protected ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Ограничение нагрузки на хранилище, которому подчиняются обходы, или {@code null}.
+     */
+    ScanThrottle getThrottle() {
+        return null;
+    }
+
+    /**
+     * Правила обхода, применённые к корню {@code root}; наследники передают их своим задачам.
+     */
+    Traversal traversal(Path root) throws DirectoryAccessException {
+        try {
+            return new Traversal(getTraversalPolicy(), root, getThrottle());
+        } catch (IOException e) {
+            throw new DirectoryAccessException("Error while accessing directory: " + root);
+        }
+    }
+
+    @Override
+    protected long calculateDirectorySize(File directory) throws DirectoryAccessException {
+        Path root = directory.toPath();
+        Traversal traversal = traversal(root);
+        try {
+            return pool.invoke(new DirectoryTask(root, traversal.root(), traversal, null));
+        } catch (UncheckedIOException e) {
+            throw new DirectoryAccessException("Unable to list files in directory: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Размеры сразу многих директорий за один общий обход. Имена приводятся к реальным путям, и
+     * обходятся только директории, не вложенные в другие запрошенные: размер вложенной
+     * запоминается, когда общий обход доходит до неё, а повторы одной директории обходятся один
+     * раз. Все директории обходятся задачами одного пула, поэтому число одновременных обращений к
+     * хранилищу ограничено {@link #getParallelism()} при любом размере пакета.
+     * <p>
+     * При ограниченной глубине обхода глубина вложенной директории считается от неё самой, а при
+     * {@link TraversalPolicy#isVisitOnce()} часть её поддиректорий общий обход мог учесть по другому
+     * пути, поэтому каждая директория обходится отдельно. Вложенная директория, в которую общий обход не
+     * спустился (например, на другой файловой системе), тоже обходится отдельно. Так же обходится
+     * вложенная директория, в поддереве которой общий обход пропустил ссылку, замыкающую цикл на
+     * директорию выше неё: её собственный обход по этой ссылке прошёл бы.
+     *
+     * @return размеры в байтах по именам директорий в порядке запроса
+     */
+    public Map<String, Long> checkSizes(Collection<String> directoryNames) throws DirectoryAccessException {
+        Map<String, Path> realPaths = new LinkedHashMap<>();
+        for (String directoryName : directoryNames) {
+            File directory = resolveDirectory(directoryName);
+            try {
+                realPaths.put(directoryName, directory.toPath().toRealPath());
+            } catch (IOException e) {
+                throw new DirectoryAccessException("Error while accessing directory: " + directory.getPath());
+            }
+        }
+
+        Set<Path> requested = new HashSet<>(realPaths.values());
+        TraversalPolicy policy = getTraversalPolicy();
+        boolean shareNested = policy.getMaxDepth() == Integer.MAX_VALUE && !policy.isVisitOnce();
+        BatchSizes batch = new BatchSizes(requested, shareNested, new ConcurrentHashMap<>());
+        List<Path> roots = new ArrayList<>();
+        for (Path root : requested) {
+            if (!shareNested || !hasRequestedAncestor(root, requested)) {
+                roots.add(root);
+            }
+        }
+        walkBatch(roots, batch);
+        List<Path> missed = new ArrayList<>();
+        for (Path root : requested) {
+            if (!batch.sizes.containsKey(root)) {
+                missed.add(root);
+            }
+        }
+        walkBatch(missed, batch);
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        realPaths.forEach((directoryName, root) -> result.put(directoryName, batch.sizes.get(root)));
+        return result;
+    }
+
+    private void walkBatch(List<Path> roots, BatchSizes batch) throws DirectoryAccessException {
+        List<DirectoryTask> tasks = new ArrayList<>(roots.size());
+        for (Path root : roots) {
+            Traversal traversal = traversal(root);
+            tasks.add(new DirectoryTask(root, traversal.root(), traversal, batch));
+        }
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        } catch (UncheckedIOException e) {
+            throw new DirectoryAccessException("Unable to list files in directory: " + e.getMessage());
+        }
+    }
+
+    private static boolean hasRequestedAncestor(Path directory, Set<Path> requested) {
+        for (Path parent = directory.getParent(); parent != null; parent = parent.getParent()) {
+            if (requested.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Размеры файлов директории по каждому из отборов за один параллельный обход: атрибуты
+     * каждой записи читаются один раз и проверяются всеми отборами.
+     *
+     * @return итоги в порядке отборов
+     */
+    public List<FilteredSize> checkFilteredSizes(String directoryName, List<SizeFilter> filters)
+            throws DirectoryAccessException {
+        File directory = resolveDirectory(directoryName);
+        FilterSet filterSet = new FilterSet(traversal(directory.toPath()), directory.toPath(), filters);
+        try {
+            return filterSet.toResults(pool.invoke(filterSet.task()));
+        } catch (UncheckedIOException e) {
+            throw new DirectoryAccessException("Unable to list files in directory: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Запускает подсчёт размера в пуле и сразу возвращает его результат; см.
+     * {@link #checkSizeAsync(String, Consumer, Duration, Duration)}.
+     */
+    public CompletableFuture<SizeProgress> checkSizeAsync(String directoryName) throws DirectoryAccessException {
+        return checkSizeAsync(directoryName, null, Duration.ofSeconds(1), null);
+    }
+
+    /**
+     * Запускает подсчёт размера в пуле и сразу возвращает его результат. Отмена результата
+     * ({@link CompletableFuture#cancel(boolean)}) останавливает обход; по истечении {@code deadline}
+     * результат завершается частичным итогом с {@link SizeProgress#isComplete()} {@code == false},
+     * а не ошибкой, так что вызывающая сторона получает хотя бы нижнюю оценку размера.
+     *
+     * @param listener получатель промежуточного состояния или {@code null}; вызывается из потоков
+     *                 обхода не чаще раза в {@code interval}
+     * @param deadline наибольшая длительность подсчёта или {@code null}
+     */
+    public CompletableFuture<SizeProgress> checkSizeAsync(String directoryName, Consumer<SizeProgress> listener,
+                                                          Duration interval, Duration deadline)
+            throws DirectoryAccessException {
+        File directory = resolveDirectory(directoryName);
+        return new SizeWalk(traversal(directory.toPath()), directory.toPath(), listener, interval)
+                .start(pool, deadline);
+    }
+
+    /**
+     * Строит отчёт о заполнении директории за один параллельный обход: дерево размеров и числа
+     * файлов всех поддиректорий и по {@code topCount} самых больших файлов и поддиректорий.
+     * Дерево хранит по записи на каждую директорию, файлы в него не попадают.
+     *
+     * @param topCount длина списков самых больших файлов и директорий
+     */
+    public DirectorySizeReport report(String directoryName, int topCount) throws DirectoryAccessException {
+        if (topCount < 0) {
+            throw new IllegalArgumentException("Top count should not be negative");
+        }
+        File directory = resolveDirectory(directoryName);
+        LargestEntries largestFiles = new LargestEntries(topCount);
+        LargestEntries largestDirectories = new LargestEntries(topCount);
+        Traversal traversal = traversal(directory.toPath());
+        DirectorySize root;
+        try {
+            root = pool.invoke(new ReportTask(directory.toPath(), traversal.root(), traversal, largestFiles,
+                    largestDirectories));
+        } catch (UncheckedIOException e) {
+            throw new DirectoryAccessException("Unable to list files in directory: " + e.getMessage());
+        }
+        return new DirectorySizeReport(root, largestFiles.toList(), largestDirectories.toList());
+    }
+
+    /**
+     * Запрошенные директории пакетного подсчёта и размеры тех из них, до которых уже дошёл обход.
+     */
+    private static class BatchSizes {
+        final Set<Path> requested;
+        final boolean shareNested;
+        final Map<Path, Long> sizes;
+
+        /**
+         * @param shareNested запоминать размеры запрошенных директорий внутри обхода, а не только
+         *                    размер его корня
+         */
+        BatchSizes(Set<Path> requested, boolean shareNested, Map<Path, Long> sizes) {
+            this.requested = requested;
+            this.shareNested = shareNested;
+            this.sizes = sizes;
+        }
+
+        /**
+         * @param cycleDepth наименьшая глубина директории, к которой замыкают циклы пропущенные в
+         *                   поддереве ссылки, или -1
+         */
+        void record(Path directory, Traversal.Level level, long size, int cycleDepth) {
+            boolean sameAsOwnWalk = level.depth == 0 || shareNested && (cycleDepth < 0 || cycleDepth >= level.depth);
+            if (sameAsOwnWalk && requested.contains(directory)) {
+                sizes.put(directory, size);
+            }
+        }
+    }
+
+    /**
+     * Размер одной директории: файлы суммируются сразу, поддиректории отдаются в пул отдельными
+     * задачами. В пакетном подсчёте размер запрошенной директории ещё и запоминается.
+     */
+    private static class DirectoryTask extends RecursiveTask<Long> {
+
+        private final Path directory;
+        private final Traversal.Level level;
+        private final Traversal traversal;
+        private final BatchSizes batch;
+        private int cycleDepth = -1;
+
+        /**
+         * @param batch пакетный подсчёт или {@code null}
+         */
+        DirectoryTask(Path directory, Traversal.Level level, Traversal traversal, BatchSizes batch) {
+            this.directory = directory;
+            this.level = level;
+            this.traversal = traversal;
+            this.batch = batch;
+        }
+
+        /**
+         * Задачи поддиректорий присоединяются в порядке, обратном запуску: последняя запущенная
+         * скорее всего ещё лежит на вершине очереди текущего потока и выполняется им же без
+         * переключения.
+         */
+        @Override
+        protected Long compute() {
+            long result = 0;
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = traversal.openDirectory(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = traversal.readAttributes(entry);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        Traversal.Level child = traversal.enter(level, entry, attributes);
+                        if (child != null) {
+                            DirectoryTask task = new DirectoryTask(entry, child, traversal, batch);
+                            task.fork();
+                            subdirectories.add(task);
+                        } else if (batch != null) {
+                            addCycleDepth(traversal.cycleDepth(level, attributes));
+                        }
+                    } else {
+                        result += attributes.size();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(directory.toString(), e);
+            }
+
+            for (int index = subdirectories.size() - 1; index >= 0; index--) {
+                DirectoryTask subdirectory = subdirectories.get(index);
+                result += subdirectory.join();
+                addCycleDepth(subdirectory.cycleDepth);
+            }
+            if (batch != null) {
+                batch.record(directory, level, result, cycleDepth);
+            }
+            return result;
+        }
+
+        private void addCycleDepth(int depth) {
+            if (depth >= 0 && (cycleDepth < 0 || depth < cycleDepth)) {
+                cycleDepth = depth;
+            }
+        }
+    }
+
+    /**
+     * Запись отчёта об одной директории. Обходит её так же, как {@link DirectoryTask}, но кроме
+     * суммы считает файлы, предлагает их и готовые поддиректории спискам самых больших и
+     * возвращает узел дерева.
+     */
+    private static class ReportTask extends RecursiveTask<DirectorySize> {
+
+        private static final Comparator<DirectorySize> LARGEST_FIRST = Comparator
+                .comparingLong(DirectorySize::getSize).reversed()
+                .thenComparing(DirectorySize::getPath);
+
+        private final Path directory;
+        private final Traversal.Level level;
+        private final Traversal traversal;
+        private final LargestEntries largestFiles;
+        private final LargestEntries largestDirectories;
+
+        ReportTask(Path directory, Traversal.Level level, Traversal traversal, LargestEntries largestFiles,
+                   LargestEntries largestDirectories) {
+            this.directory = directory;
+            this.level = level;
+            this.traversal = traversal;
+            this.largestFiles = largestFiles;
+            this.largestDirectories = largestDirectories;
+        }
+
+        @Override
+        protected DirectorySize compute() {
+            long size = 0;
+            long fileCount = 0;
+            List<ReportTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = traversal.openDirectory(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes = traversal.readAttributes(entry);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        Traversal.Level child = traversal.enter(level, entry, attributes);
+                        if (child != null) {
+                            ReportTask task = new ReportTask(entry, child, traversal, largestFiles, largestDirectories);
+                            task.fork();
+                            subdirectories.add(task);
+                        }
+                    } else {
+                        size += attributes.size();
+                        fileCount++;
+                        largestFiles.offer(entry, attributes.size());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(directory.toString(), e);
+            }
+
+            List<DirectorySize> children = new ArrayList<>(subdirectories.size());
+            for (int index = subdirectories.size() - 1; index >= 0; index--) {
+                DirectorySize child = subdirectories.get(index).join();
+                size += child.getSize();
+                fileCount += child.getFileCount();
+                largestDirectories.offer(child.getPath(), child.getSize());
+                children.add(child);
+            }
+            children.sort(LARGEST_FIRST);
+            return new DirectorySize(directory, size, fileCount, children);
+        }
+    }
+
+    /**
+     * Останавливает пул обхода: уже запущенные подсчёты, в том числе асинхронные, доводятся до конца,
+     * а новые отклоняются пулом. Повторный вызов ничего не делает.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Атрибуты записи (по символической ссылке — её цели, как у {@link File#length()}) или
+     * {@code null}, если запись удалили во время обхода или ссылка никуда не ведёт.
+     */
+    static BasicFileAttributes readAttributes(Path entry) throws IOException {
+        try {
+            return Files.readAttributes(entry, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
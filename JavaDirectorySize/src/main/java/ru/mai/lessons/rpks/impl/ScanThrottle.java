@@ -0,0 +1,316 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.IScanThrottleMXBean;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ограничение нагрузки фонового обхода на хранилище: не больше {@code entriesPerSecond} чтений
+ * атрибутов записей в секунду и не больше {@code maxConcurrentDirectoryReads} одновременно
+ * открытых директорий. Оба предела можно менять на ходу, в том числе через JMX
+ * ({@link #register(String)}): новые значения действуют с ближайшего запроса разрешения.
+ * <p>
+ * Скорость ограничивается корзиной маркеров (token bucket) ёмкостью в одну секунду работы. Запрос
+ * всегда списывает маркер, уходя при нехватке в долг, и ждёт, пока долг не погасится, вне
+ * блокировки — поэтому потоки получают разрешения по очереди запросов и не соревнуются за
+ * маркеры после пробуждения.
+ * <p>
+ * Потоки обхода ждут разрешений через {@link ForkJoinPool#managedBlock}: пока поток пула ждёт,
+ * пул может запустить запасной поток, поэтому другие задачи того же пула, например асинхронные
+ * обходы, не простаивают из-за заторможенного. Число одновременных обращений к хранилищу при этом
+ * ограничивают сами пределы, а не число потоков пула.
+ */
+public class ScanThrottle implements IScanThrottleMXBean {
+
+    private static final long NANOS_IN_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Object rateLock = new Object();
+    private final Object readLock = new Object();
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder directoryReads = new LongAdder();
+    private final LongAdder throttledNanos = new LongAdder();
+
+    private volatile double entriesPerSecond;
+    private double tokens;
+    private long refilledNanos = System.nanoTime();
+    private long windowStartNanos = refilledNanos;
+    private long windowEntries;
+    private volatile double effectiveEntriesPerSecond;
+
+    private volatile int maxConcurrentDirectoryReads;
+    private int activeDirectoryReads;
+
+    /**
+     * @param entriesPerSecond            предел чтений атрибутов в секунду, 0 — без предела
+     * @param maxConcurrentDirectoryReads предел одновременно открытых директорий
+     */
+    public ScanThrottle(double entriesPerSecond, int maxConcurrentDirectoryReads) {
+        setEntriesPerSecond(entriesPerSecond);
+        setMaxConcurrentDirectoryReads(maxConcurrentDirectoryReads);
+        this.tokens = entriesPerSecond;
+    }
+
+    /**
+     * Регистрирует ограничение в платформенном {@link MBeanServer} под именем
+     * {@code ru.mai.lessons.rpks:type=ScanThrottle,name=<name>}.
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("ru.mai.lessons.rpks:type=ScanThrottle,name=" + name);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this, objectName);
+            }
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register MXBean: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public double getEntriesPerSecond() {
+        return entriesPerSecond;
+    }
+
+    @Override
+    public void setEntriesPerSecond(double entriesPerSecond) {
+        if (entriesPerSecond < 0 || Double.isNaN(entriesPerSecond)) {
+            throw new IllegalArgumentException("Entries per second shouldn't be negative");
+        }
+        synchronized (rateLock) {
+            refill(System.nanoTime());
+            this.entriesPerSecond = entriesPerSecond;
+            tokens = Math.min(tokens, entriesPerSecond);
+        }
+    }
+
+    @Override
+    public int getMaxConcurrentDirectoryReads() {
+        return maxConcurrentDirectoryReads;
+    }
+
+    @Override
+    public void setMaxConcurrentDirectoryReads(int maxConcurrentDirectoryReads) {
+        if (maxConcurrentDirectoryReads <= 0) {
+            throw new IllegalArgumentException("Max concurrent directory reads should be positive");
+        }
+        synchronized (readLock) {
+            this.maxConcurrentDirectoryReads = maxConcurrentDirectoryReads;
+            readLock.notifyAll();
+        }
+    }
+
+    @Override
+    public long getEntries() {
+        return entries.sum();
+    }
+
+    @Override
+    public long getDirectoryReads() {
+        return directoryReads.sum();
+    }
+
+    @Override
+    public int getActiveDirectoryReads() {
+        synchronized (readLock) {
+            return activeDirectoryReads;
+        }
+    }
+
+    @Override
+    public long getThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttledNanos.sum());
+    }
+
+    @Override
+    public double getEffectiveEntriesPerSecond() {
+        synchronized (rateLock) {
+            return System.nanoTime() - windowStartNanos > 2 * NANOS_IN_SECOND ? 0 : effectiveEntriesPerSecond;
+        }
+    }
+
+    /**
+     * Разрешение на чтение атрибутов одной записи; ждёт, если предел скорости исчерпан.
+     */
+    void acquireEntry() {
+        long waitNanos;
+        synchronized (rateLock) {
+            long now = System.nanoTime();
+            refill(now);
+            windowEntries++;
+            if (now - windowStartNanos >= NANOS_IN_SECOND) {
+                effectiveEntriesPerSecond = windowEntries * (double) NANOS_IN_SECOND / (now - windowStartNanos);
+                windowStartNanos = now;
+                windowEntries = 0;
+            }
+            if (entriesPerSecond == 0) {
+                waitNanos = 0;
+            } else {
+                tokens--;
+                waitNanos = tokens >= 0 ? 0 : (long) (-tokens / entriesPerSecond * NANOS_IN_SECOND);
+            }
+        }
+        entries.increment();
+        if (waitNanos > 0) {
+            throttledNanos.add(waitNanos);
+            sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Открывает директорию, дождавшись свободного места среди одновременно читаемых. Место
+     * освобождается при закрытии возвращённого потока.
+     */
+    DirectoryStream<Path> openDirectory(Path directory) throws IOException {
+        long started = System.nanoTime();
+        ReadPermit permit = new ReadPermit();
+        managedBlock(permit);
+        if (permit.interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        throttledNanos.add(System.nanoTime() - started);
+        directoryReads.increment();
+        try {
+            return new ReleasingStream(Files.newDirectoryStream(directory));
+        } catch (IOException | RuntimeException e) {
+            releaseDirectory();
+            throw e;
+        }
+    }
+
+    private void releaseDirectory() {
+        synchronized (readLock) {
+            activeDirectoryReads--;
+            readLock.notifyAll();
+        }
+    }
+
+    private void refill(long now) {
+        if (entriesPerSecond > 0) {
+            tokens = Math.min(entriesPerSecond, tokens + (now - refilledNanos) * entriesPerSecond / NANOS_IN_SECOND);
+        }
+        refilledNanos = now;
+    }
+
+    /**
+     * Спит, не прерываясь: обход остановится сам на ближайшей проверке, а флаг прерывания
+     * сохраняется для вызывающего кода.
+     */
+    private static void sleep(long nanos) {
+        managedBlock(new Sleep(System.nanoTime() + nanos));
+    }
+
+    /**
+     * Ждёт через {@link ForkJoinPool#managedBlock}; ожидания этого класса не прерываются, поэтому
+     * {@link InterruptedException} возможно только как сохранённый флаг прерывания.
+     */
+    private static void managedBlock(ForkJoinPool.ManagedBlocker blocker) {
+        try {
+            ForkJoinPool.managedBlock(blocker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ожидание до момента {@code deadline} по {@link System#nanoTime()}.
+     */
+    private static final class Sleep implements ForkJoinPool.ManagedBlocker {
+        private final long deadline;
+
+        Sleep(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean block() {
+            LockSupport.parkNanos(deadline - System.nanoTime());
+            return isReleasable();
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return deadline - System.nanoTime() <= 0;
+        }
+    }
+
+    /**
+     * Ожидание места среди одновременно читаемых директорий; занимает его, как только оно
+     * освободилось.
+     */
+    private final class ReadPermit implements ForkJoinPool.ManagedBlocker {
+        private boolean acquired;
+        private boolean interrupted;
+
+        @Override
+        public boolean block() {
+            synchronized (readLock) {
+                while (!tryAcquire()) {
+                    try {
+                        readLock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            synchronized (readLock) {
+                return tryAcquire();
+            }
+        }
+
+        private boolean tryAcquire() {
+            if (!acquired && activeDirectoryReads < maxConcurrentDirectoryReads) {
+                activeDirectoryReads++;
+                acquired = true;
+            }
+            return acquired;
+        }
+    }
+
+    /**
+     * Поток записей директории, который при закрытии освобождает место среди читаемых.
+     */
+    private class ReleasingStream implements DirectoryStream<Path> {
+        private final DirectoryStream<Path> stream;
+        private boolean closed;
+
+        ReleasingStream(DirectoryStream<Path> stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public Iterator<Path> iterator() {
+            return stream.iterator();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                stream.close();
+            } finally {
+                releaseDirectory();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.exception.DirectoryAccessException;
+import ru.mai.lessons.rpks.result.SizeProgress;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Один асинхронный подсчёт размера: обход тот же, что у {@link ParallelDirectorySizeChecker}, но
+ * суммы копятся в общих счётчиках, а не возвращаются из задач, поэтому частичный итог доступен в
+ * любой момент.
+ * <p>
+ * Остановка кооперативная: задачи проверяют флаг перед каждой записью и после остановки только
+ * выходят. Обход останавливается, как только его {@link CompletableFuture} завершён — обходом,
+ * отменой вызывающей стороной или по сроку.
+ */
+class SizeWalk {
+
+    /**
+     * Сколько записей директории учитываются локально, прежде чем попасть в общие счётчики: так
+     * прогресс виден и внутри огромной директории, а счётчики не обновляются на каждой записи.
+     */
+    private static final int FLUSH_ENTRIES = 1024;
+
+    private final Traversal traversal;
+    private final Path directory;
+    private final Consumer<SizeProgress> listener;
+    private final long intervalNanos;
+    private final long startedNanos = System.nanoTime();
+    private final AtomicLong nextReportNanos;
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder entries = new LongAdder();
+    private final CompletableFuture<SizeProgress> future = new CompletableFuture<>();
+    private volatile Path currentPath;
+    private volatile boolean stopped;
+
+    /**
+     * @param listener получатель промежуточного состояния или {@code null}; вызывается из потоков
+     *                 обхода не чаще раза в {@code interval}, поэтому должен быть быстрым
+     */
+    SizeWalk(Traversal traversal, Path directory, Consumer<SizeProgress> listener, Duration interval) {
+        this.traversal = traversal;
+        this.directory = directory;
+        this.listener = listener;
+        this.intervalNanos = interval.toNanos();
+        this.nextReportNanos = new AtomicLong(startedNanos + intervalNanos);
+        this.currentPath = directory;
+        future.whenComplete((result, error) -> stopped = true);
+    }
+
+    /**
+     * Запускает обход в пуле. Если задан {@code deadline}, по его истечении результат завершается
+     * частичным итогом с {@link SizeProgress#isComplete()} {@code == false}.
+     */
+    CompletableFuture<SizeProgress> start(ForkJoinPool pool, Duration deadline) {
+        pool.execute(ForkJoinTask.adapt(() -> {
+            try {
+                new DirectoryTask(directory, traversal.root()).invoke();
+                future.complete(snapshot(true));
+            } catch (UncheckedIOException e) {
+                future.completeExceptionally(
+                        new DirectoryAccessException("Unable to list files in directory: " + e.getMessage()));
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            }
+        }));
+        if (deadline != null) {
+            CompletableFuture.delayedExecutor(deadline.toNanos(), TimeUnit.NANOSECONDS)
+                    .execute(() -> future.complete(snapshot(false)));
+        }
+        return future;
+    }
+
+    SizeProgress snapshot(boolean complete) {
+        return new SizeProgress(directory, bytes.sum(), entries.sum(), currentPath,
+                System.nanoTime() - startedNanos, complete);
+    }
+
+    private void record(long entryBytes, long entryCount) {
+        bytes.add(entryBytes);
+        entries.add(entryCount);
+        if (listener == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        long next = nextReportNanos.get();
+        if (now - next >= 0 && nextReportNanos.compareAndSet(next, now + intervalNanos) && !stopped) {
+            listener.accept(snapshot(false));
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+
+        private final Path path;
+        private final Traversal.Level level;
+
+        DirectoryTask(Path path, Traversal.Level level) {
+            this.path = path;
+            this.level = level;
+        }
+
+        @Override
+        protected void compute() {
+            if (stopped) {
+                return;
+            }
+            currentPath = path;
+            long localBytes = 0;
+            long localEntries = 0;
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> stream = traversal.openDirectory(path)) {
+                for (Path entry : stream) {
+                    if (stopped) {
+                        return;
+                    }
+                    BasicFileAttributes attributes = traversal.readAttributes(entry);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    localEntries++;
+                    if (attributes.isDirectory()) {
+                        Traversal.Level child = traversal.enter(level, entry, attributes);
+                        if (child != null) {
+                            DirectoryTask task = new DirectoryTask(entry, child);
+                            task.fork();
+                            subdirectories.add(task);
+                        }
+                    } else {
+                        localBytes += attributes.size();
+                    }
+                    if (localEntries == FLUSH_ENTRIES) {
+                        record(localBytes, localEntries);
+                        localBytes = 0;
+                        localEntries = 0;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(path.toString(), e);
+            }
+            record(localBytes, localEntries);
+
+            for (int index = subdirectories.size() - 1; index >= 0; index--) {
+                subdirectories.get(index).join();
+            }
+        }
+    }
+}
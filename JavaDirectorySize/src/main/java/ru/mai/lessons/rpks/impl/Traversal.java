@@ -0,0 +1,177 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.query.TraversalPolicy;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Правила {@link TraversalPolicy}, применённые к одному обходу от корня {@code root}. Задачи обхода
+ * читают атрибуты записей через {@link #readAttributes(Path)} и спускаются в поддиректорию, только
+ * если {@link #enter(Level, Path, BasicFileAttributes)} вернул её уровень.
+ * <ul>
+ *     <li>Цикл ссылок распознаётся так же, как в {@link Files#walk(Path, java.nio.file.FileVisitOption...)}:
+ *     директория, {@code fileKey} (устройство и inode) которой совпадает с ключом одного из её
+ *     предков на текущем пути, пропускается. Проверяется только цепочка предков, поэтому результат
+ *     не зависит от порядка, в котором потоки обходят дерево; директория, на которую ведут две
+ *     ссылки без цикла, учитывается дважды, как и при обходе по ссылкам без политики.</li>
+ *     <li>При {@link TraversalPolicy#isVisitOnce()} ключи всех директорий, в которые спустился обход,
+ *     собираются в общее множество, и в директорию с уже встречавшимся ключом обход не спускается.
+ *     Так директория, на которую ведут несколько ссылок, учитывается один раз, и время обхода
+ *     ссылок, сходящихся к общим директориям, остаётся линейным, а не растёт экспоненциально.
+ *     Итоговый размер от порядка обхода не зависит, а путь, по которому учтена такая директория
+ *     (например, в отчёте), — зависит.</li>
+ *     <li>Файловая система директории сравнивается с файловой системой корня по номеру устройства
+ *     {@code unix:dev} — лишний {@code stat} на директорию. Поиск {@link FileStore} просматривает
+ *     таблицу монтирования и стоит на порядок дороже, поэтому используется, только если атрибутов
+ *     {@code unix:} нет.</li>
+ * </ul>
+ * Если задано {@link ScanThrottle}, директории открываются через {@link #openDirectory(Path)} и
+ * атрибуты читаются только с его разрешения.
+ */
+class Traversal {
+
+    private final TraversalPolicy policy;
+    private final boolean unixDevices;
+    private final Object rootDevice;
+    private final Level root;
+    private final ScanThrottle throttle;
+    private final Set<Object> visited;
+
+    Traversal(TraversalPolicy policy, Path root) throws IOException {
+        this(policy, root, null);
+    }
+
+    /**
+     * @param throttle ограничение нагрузки на хранилище или {@code null}
+     */
+    Traversal(TraversalPolicy policy, Path root, ScanThrottle throttle) throws IOException {
+        this.policy = policy;
+        this.throttle = throttle;
+        this.unixDevices = root.getFileSystem().supportedFileAttributeViews().contains("unix");
+        this.rootDevice = policy.isSameFileSystem() ? device(root) : null;
+        Object key = policy.isFollowLinks() ? Files.readAttributes(root, BasicFileAttributes.class).fileKey() : null;
+        this.root = new Level(key, 0, null);
+        this.visited = policy.isVisitOnce() && key != null ? ConcurrentHashMap.newKeySet() : null;
+        if (visited != null) {
+            visited.add(key);
+        }
+    }
+
+    TraversalPolicy policy() {
+        return policy;
+    }
+
+    Level root() {
+        return root;
+    }
+
+    /**
+     * Записи директории; поток нужно закрыть до ожидания задач поддиректорий, чтобы не держать
+     * разрешение {@link ScanThrottle} на одновременное чтение.
+     */
+    DirectoryStream<Path> openDirectory(Path directory) throws IOException {
+        return throttle == null ? Files.newDirectoryStream(directory) : throttle.openDirectory(directory);
+    }
+
+    /**
+     * Атрибуты записи (при переходе по ссылкам — атрибуты цели) или {@code null}, если запись
+     * удалили во время обхода или ссылка никуда не ведёт.
+     */
+    BasicFileAttributes readAttributes(Path entry) throws IOException {
+        if (throttle != null) {
+            throttle.acquireEntry();
+        }
+        if (policy.isFollowLinks()) {
+            return ParallelDirectorySizeChecker.readAttributes(entry);
+        }
+        try {
+            return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Уровень поддиректории {@code directory} директории уровня {@code parent} или {@code null},
+     * если спускаться в неё нельзя: она глубже {@link TraversalPolicy#getMaxDepth()}, лежит на
+     * другой файловой системе, замыкает цикл ссылок или при {@link TraversalPolicy#isVisitOnce()}
+     * уже обойдена.
+     */
+    Level enter(Level parent, Path directory, BasicFileAttributes attributes) throws IOException {
+        if (parent.depth >= policy.getMaxDepth()) {
+            return null;
+        }
+        Object key = null;
+        if (policy.isFollowLinks() && attributes != null) {
+            key = attributes.fileKey();
+            if (visited != null) {
+                // предки тоже в множестве, поэтому цикл распознаётся без прохода по цепочке
+                if (key != null && !visited.add(key)) {
+                    return null;
+                }
+            } else if (ancestor(parent, key) != null) {
+                return null;
+            }
+        }
+        if (rootDevice != null) {
+            try {
+                if (!rootDevice.equals(device(directory))) {
+                    return null;
+                }
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+        return new Level(key, parent.depth + 1, parent);
+    }
+
+    /**
+     * Глубина предка на цепочке {@code parent}, к которому замыкает цикл директория с атрибутами
+     * {@code attributes}, или -1, если цикла нет или ссылки не отслеживаются.
+     */
+    int cycleDepth(Level parent, BasicFileAttributes attributes) {
+        if (!policy.isFollowLinks() || attributes == null) {
+            return -1;
+        }
+        Level ancestor = ancestor(parent, attributes.fileKey());
+        return ancestor == null ? -1 : ancestor.depth;
+    }
+
+    private static Level ancestor(Level parent, Object key) {
+        for (Level ancestor = parent; key != null && ancestor != null; ancestor = ancestor.parent) {
+            if (key.equals(ancestor.key)) {
+                return ancestor;
+            }
+        }
+        return null;
+    }
+
+    private Object device(Path directory) throws IOException {
+        LinkOption[] options = policy.isFollowLinks() ? new LinkOption[0] : new LinkOption[] {LinkOption.NOFOLLOW_LINKS};
+        return unixDevices ? Files.getAttribute(directory, "unix:dev", options) : Files.getFileStore(directory);
+    }
+
+    /**
+     * Положение директории в обходе: глубина от корня и ключ для поиска циклов по цепочке предков.
+     */
+    static final class Level {
+        final Object key;
+        final int depth;
+        final Level parent;
+
+        Level(Object key, int depth, Level parent) {
+            this.key = key;
+            this.depth = depth;
+            this.parent = parent;
+        }
+    }
+}
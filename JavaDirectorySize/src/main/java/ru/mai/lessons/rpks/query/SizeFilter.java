@@ -0,0 +1,119 @@
+package ru.mai.lessons.rpks.query;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Данный класс описывает отбор файлов для подсчёта размера: шаблон пути, расширение, диапазон
+ * времени изменения и диапазон размера. Файл отбирается, если подходит под все заданные условия.
+ * Объект неизменяемый, методы {@code glob}, {@code extension}, {@code modifiedAfter},
+ * {@code modifiedBefore}, {@code minSize} и {@code maxSize} возвращают изменённую копию.
+ */
+public class SizeFilter {
+  private final String glob;
+  private final String extension;
+  private final Instant modifiedAfter;
+  private final Instant modifiedBefore;
+  private final long minSize;
+  private final long maxSize;
+
+  private SizeFilter(String glob, String extension, Instant modifiedAfter, Instant modifiedBefore, long minSize,
+                     long maxSize) {
+    this.glob = glob;
+    this.extension = extension;
+    this.modifiedAfter = modifiedAfter;
+    this.modifiedBefore = modifiedBefore;
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+  }
+
+  public static SizeFilter allFiles() {
+    return new SizeFilter(null, null, null, null, 0, Long.MAX_VALUE);
+  }
+
+  public SizeFilter glob(String glob) { // шаблон пути относительно проверяемой директории, например "**/*.log"
+    return new SizeFilter(glob, extension, modifiedAfter, modifiedBefore, minSize, maxSize);
+  }
+
+  public SizeFilter extension(String extension) { // расширение имени файла без точки, с учётом регистра
+    String withoutDot = extension != null && extension.startsWith(".") ? extension.substring(1) : extension;
+    return new SizeFilter(glob, withoutDot, modifiedAfter, modifiedBefore, minSize, maxSize);
+  }
+
+  public SizeFilter modifiedAfter(Instant modifiedAfter) { // изменён не раньше этого момента
+    return new SizeFilter(glob, extension, modifiedAfter, modifiedBefore, minSize, maxSize);
+  }
+
+  public SizeFilter modifiedBefore(Instant modifiedBefore) { // изменён раньше этого момента
+    return new SizeFilter(glob, extension, modifiedAfter, modifiedBefore, minSize, maxSize);
+  }
+
+  public SizeFilter minSize(long minSize) { // размер не меньше minSize байт
+    if (minSize < 0) {
+      throw new IllegalArgumentException("Min size shouldn't be negative.");
+    }
+    return new SizeFilter(glob, extension, modifiedAfter, modifiedBefore, minSize, maxSize);
+  }
+
+  public SizeFilter maxSize(long maxSize) { // размер не больше maxSize байт
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("Max size shouldn't be negative.");
+    }
+    return new SizeFilter(glob, extension, modifiedAfter, modifiedBefore, minSize, maxSize);
+  }
+
+  public String getGlob() {
+    return glob;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+
+  public Instant getModifiedAfter() {
+    return modifiedAfter;
+  }
+
+  public Instant getModifiedBefore() {
+    return modifiedBefore;
+  }
+
+  public long getMinSize() {
+    return minSize;
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SizeFilter that = (SizeFilter) o;
+    return minSize == that.minSize && maxSize == that.maxSize && Objects.equals(glob, that.glob)
+           && Objects.equals(extension, that.extension) && Objects.equals(modifiedAfter, that.modifiedAfter)
+           && Objects.equals(modifiedBefore, that.modifiedBefore);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(glob, extension, modifiedAfter, modifiedBefore, minSize, maxSize);
+  }
+
+  @Override
+  public String toString() {
+    return "SizeFilter{" +
+           "glob='" + glob + '\'' +
+           ", extension='" + extension + '\'' +
+           ", modifiedAfter=" + modifiedAfter +
+           ", modifiedBefore=" + modifiedBefore +
+           ", minSize=" + minSize +
+           ", maxSize=" + maxSize +
+           '}';
+  }
+}
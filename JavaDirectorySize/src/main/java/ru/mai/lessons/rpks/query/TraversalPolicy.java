@@ -0,0 +1,93 @@
+package ru.mai.lessons.rpks.query;
+
+import java.util.Objects;
+
+/**
+ * Данный класс описывает правила обхода дерева: переходить ли по символическим ссылкам на
+ * директории, обходить ли директорию, на которую ведут несколько ссылок, один раз, на какую
+ * глубину спускаться и можно ли выходить на другие файловые системы. Объект неизменяемый, методы
+ * {@code followLinks}, {@code visitOnce}, {@code maxDepth} и {@code sameFileSystem} возвращают
+ * изменённую копию.
+ */
+public class TraversalPolicy {
+  private static final TraversalPolicy DEFAULTS = new TraversalPolicy(true, false, Integer.MAX_VALUE, false);
+
+  private final boolean followLinks;
+  private final boolean visitOnce;
+  private final int maxDepth;
+  private final boolean sameFileSystem;
+
+  private TraversalPolicy(boolean followLinks, boolean visitOnce, int maxDepth, boolean sameFileSystem) {
+    this.followLinks = followLinks;
+    this.visitOnce = visitOnce;
+    this.maxDepth = maxDepth;
+    this.sameFileSystem = sameFileSystem;
+  }
+
+  public static TraversalPolicy defaults() { // по ссылкам, без ограничения глубины, на любые файловые системы
+    return DEFAULTS;
+  }
+
+  public TraversalPolicy followLinks(boolean followLinks) { // false — ссылка учитывается как файл своего размера
+    return new TraversalPolicy(followLinks, visitOnce, maxDepth, sameFileSystem);
+  }
+
+  public TraversalPolicy visitOnce(boolean visitOnce) { // true — директория под двумя ссылками учитывается один раз
+    return new TraversalPolicy(followLinks, visitOnce, maxDepth, sameFileSystem);
+  }
+
+  public TraversalPolicy maxDepth(int maxDepth) { // 0 — только файлы самой директории
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("Max depth shouldn't be negative.");
+    }
+    return new TraversalPolicy(followLinks, visitOnce, maxDepth, sameFileSystem);
+  }
+
+  public TraversalPolicy sameFileSystem(boolean sameFileSystem) { // не спускаться в точки монтирования
+    return new TraversalPolicy(followLinks, visitOnce, maxDepth, sameFileSystem);
+  }
+
+  public boolean isFollowLinks() {
+    return followLinks;
+  }
+
+  public boolean isVisitOnce() {
+    return visitOnce;
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  public boolean isSameFileSystem() {
+    return sameFileSystem;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    TraversalPolicy that = (TraversalPolicy) o;
+    return followLinks == that.followLinks && visitOnce == that.visitOnce && maxDepth == that.maxDepth
+           && sameFileSystem == that.sameFileSystem;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(followLinks, visitOnce, maxDepth, sameFileSystem);
+  }
+
+  @Override
+  public String toString() {
+    return "TraversalPolicy{" +
+           "followLinks=" + followLinks +
+           ", visitOnce=" + visitOnce +
+           ", maxDepth=" + maxDepth +
+           ", sameFileSystem=" + sameFileSystem +
+           '}';
+  }
+}
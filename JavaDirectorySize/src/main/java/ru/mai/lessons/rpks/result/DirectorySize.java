@@ -0,0 +1,67 @@
+package ru.mai.lessons.rpks.result;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Данный класс описывает размер одной директории в отчёте: суммарный размер и число файлов всего
+ * поддерева, а также такие же записи о поддиректориях, упорядоченные по убыванию размера.
+ */
+public class DirectorySize {
+  private final Path path;
+  private final long size;
+  private final long fileCount;
+  private final List<DirectorySize> children;
+
+  public DirectorySize(Path path, long size, long fileCount, List<DirectorySize> children) {
+    this.path = path;
+    this.size = size;
+    this.fileCount = fileCount;
+    this.children = List.copyOf(children);
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public long getSize() { // размер всех файлов поддерева в байтах
+    return size;
+  }
+
+  public long getFileCount() { // число файлов во всём поддереве
+    return fileCount;
+  }
+
+  public List<DirectorySize> getChildren() {
+    return children;
+  }
+
+  /**
+   * Запись поддиректории по пути относительно этой директории или {@code null}, если её нет.
+   */
+  public DirectorySize find(Path relativePath) {
+    DirectorySize current = this;
+    for (Path name : relativePath.normalize()) {
+      if (name.toString().isEmpty()) {
+        continue;
+      }
+      DirectorySize next = null;
+      for (DirectorySize child : current.children) {
+        if (child.path.getFileName().equals(name)) {
+          next = child;
+          break;
+        }
+      }
+      if (next == null) {
+        return null;
+      }
+      current = next;
+    }
+    return current;
+  }
+
+  @Override
+  public String toString() {
+    return size + "\t" + path;
+  }
+}
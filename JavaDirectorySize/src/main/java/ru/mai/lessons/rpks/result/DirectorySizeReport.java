@@ -0,0 +1,31 @@
+package ru.mai.lessons.rpks.result;
+
+import java.util.List;
+
+/**
+ * Данный класс описывает отчёт о заполнении директории: дерево размеров поддиректорий и списки
+ * самых больших файлов и директорий по убыванию размера.
+ */
+public class DirectorySizeReport {
+  private final DirectorySize root;
+  private final List<SizeEntry> largestFiles;
+  private final List<SizeEntry> largestDirectories;
+
+  public DirectorySizeReport(DirectorySize root, List<SizeEntry> largestFiles, List<SizeEntry> largestDirectories) {
+    this.root = root;
+    this.largestFiles = List.copyOf(largestFiles);
+    this.largestDirectories = List.copyOf(largestDirectories);
+  }
+
+  public DirectorySize getRoot() {
+    return root;
+  }
+
+  public List<SizeEntry> getLargestFiles() {
+    return largestFiles;
+  }
+
+  public List<SizeEntry> getLargestDirectories() { // поддиректории без самой проверяемой директории
+    return largestDirectories;
+  }
+}
@@ -0,0 +1,44 @@
+package ru.mai.lessons.rpks.result;
+
+/**
+ * Данный класс описывает занятое директорией место: логический размер файлов (как у
+ * {@code ls -l}) и оценку места на диске. Файл с несколькими жёсткими ссылками учтён один раз.
+ * <p>
+ * Оценка — это размер каждого файла, округлённый вверх до размера блока файловой системы, а не
+ * число занятых блоков ({@code st_blocks}), как у {@code du}: для разреженных файлов она завышена
+ * и равна их полному логическому размеру.
+ */
+public class DiskUsage {
+  private final long apparentSize;
+  private final long estimatedAllocatedSize;
+  private final long fileCount;
+  private final long skippedLinks;
+
+  public DiskUsage(long apparentSize, long estimatedAllocatedSize, long fileCount, long skippedLinks) {
+    this.apparentSize = apparentSize;
+    this.estimatedAllocatedSize = estimatedAllocatedSize;
+    this.fileCount = fileCount;
+    this.skippedLinks = skippedLinks;
+  }
+
+  public long getApparentSize() { // сумма размеров файлов в байтах
+    return apparentSize;
+  }
+
+  public long getEstimatedAllocatedSize() { // оценка байтов на диске, для разреженных файлов завышена
+    return estimatedAllocatedSize;
+  }
+
+  public long getFileCount() { // число разных файлов (inode)
+    return fileCount;
+  }
+
+  public long getSkippedLinks() { // повторные жёсткие ссылки на уже учтённые файлы
+    return skippedLinks;
+  }
+
+  @Override
+  public String toString() {
+    return apparentSize + " bytes apparent / " + estimatedAllocatedSize + " bytes allocated (estimated)";
+  }
+}
@@ -0,0 +1,35 @@
+package ru.mai.lessons.rpks.result;
+
+import ru.mai.lessons.rpks.query.SizeFilter;
+
+/**
+ * Данный класс описывает итог одного отбора: суммарный размер и число отобранных файлов.
+ */
+public class FilteredSize {
+  private final SizeFilter filter;
+  private final long size;
+  private final long fileCount;
+
+  public FilteredSize(SizeFilter filter, long size, long fileCount) {
+    this.filter = filter;
+    this.size = size;
+    this.fileCount = fileCount;
+  }
+
+  public SizeFilter getFilter() {
+    return filter;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public long getFileCount() {
+    return fileCount;
+  }
+
+  @Override
+  public String toString() {
+    return size + " bytes in " + fileCount + " files: " + filter;
+  }
+}
@@ -0,0 +1,47 @@
+package ru.mai.lessons.rpks.result;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Данный класс описывает одну запись списка самых больших файлов или директорий.
+ */
+public class SizeEntry {
+  private final Path path;
+  private final long size;
+
+  public SizeEntry(Path path, long size) {
+    this.path = path;
+    this.size = size;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SizeEntry sizeEntry = (SizeEntry) o;
+    return size == sizeEntry.size && Objects.equals(path, sizeEntry.path);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(path, size);
+  }
+
+  @Override
+  public String toString() {
+    return size + "\t" + path;
+  }
+}
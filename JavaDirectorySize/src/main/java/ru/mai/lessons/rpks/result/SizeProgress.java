@@ -0,0 +1,55 @@
+package ru.mai.lessons.rpks.result;
+
+import java.nio.file.Path;
+
+/**
+ * Данный класс описывает состояние подсчёта размера директории в некоторый момент: сколько байт и
+ * записей уже учтено, какая директория читается сейчас и завершён ли обход.
+ */
+public class SizeProgress {
+  private final Path directory;
+  private final long bytes;
+  private final long entries;
+  private final Path currentPath;
+  private final long elapsedNanos;
+  private final boolean complete;
+
+  public SizeProgress(Path directory, long bytes, long entries, Path currentPath, long elapsedNanos,
+                      boolean complete) {
+    this.directory = directory;
+    this.bytes = bytes;
+    this.entries = entries;
+    this.currentPath = currentPath;
+    this.elapsedNanos = elapsedNanos;
+    this.complete = complete;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  public long getBytes() { // размер уже учтённых файлов; до завершения — нижняя оценка
+    return bytes;
+  }
+
+  public long getEntries() { // число прочитанных записей: файлов и директорий
+    return entries;
+  }
+
+  public Path getCurrentPath() { // последняя начатая директория
+    return currentPath;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  public boolean isComplete() { // false, если обход остановлен по сроку
+    return complete;
+  }
+
+  @Override
+  public String toString() {
+    return (complete ? "" : ">= ") + bytes + " bytes, " + entries + " entries, at " + currentPath;
+  }
+}
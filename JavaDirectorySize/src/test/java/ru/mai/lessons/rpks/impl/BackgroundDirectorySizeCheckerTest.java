@@ -0,0 +1,132 @@
+package ru.mai.lessons.rpks.impl;
+
+import org.testng.annotations.Test;
+import ru.mai.lessons.rpks.exception.DirectoryAccessException;
+import ru.mai.lessons.rpks.query.TraversalPolicy;
+import ru.mai.lessons.rpks.result.SizeProgress;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class BackgroundDirectorySizeCheckerTest extends TreeTestBase {
+  private static final String THROTTLED_DIRECTORY = "throttled-tree";
+  private static final int DIRECTORIES = 8;
+  private static final int FILES_PER_DIRECTORY = 5;
+  private static final int ENTRIES = DIRECTORIES + DIRECTORIES * FILES_PER_DIRECTORY;
+
+  public BackgroundDirectorySizeCheckerTest() {
+    super(THROTTLED_DIRECTORY);
+  }
+
+  @Override
+  protected void fillTree(Path tree) throws IOException {
+    for (int directory = 0; directory < DIRECTORIES; directory++) {
+      Path path = Files.createDirectories(tree.resolve("dir" + directory));
+      for (int file = 0; file < FILES_PER_DIRECTORY; file++) {
+        Files.write(path.resolve("file" + file + ".bin"), new byte[100]);
+      }
+    }
+  }
+
+  @Test(description = "Проверка, что обход не быстрее предела записей в секунду и считает метрики")
+  public void testPositiveEntriesPerSecondLimit() throws DirectoryAccessException {
+    // GIVEN первые 20 записей проходят сразу, остальные 28 — по 20 в секунду
+    ScanThrottle throttle = new ScanThrottle(20, 4);
+    BackgroundDirectorySizeChecker checker = new BackgroundDirectorySizeChecker(4, TraversalPolicy.defaults(),
+        throttle);
+
+    // WHEN
+    long started = System.nanoTime();
+    String actualDirectorySize = checker.checkSize(THROTTLED_DIRECTORY);
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+    // THEN
+    assertEquals(actualDirectorySize, DIRECTORIES * FILES_PER_DIRECTORY * 100 + " bytes");
+    assertTrue(elapsedMillis >= 1000, "Scan took only " + elapsedMillis + " ms");
+    assertEquals(throttle.getEntries(), ENTRIES);
+    assertEquals(throttle.getDirectoryReads(), DIRECTORIES + 1);
+    assertEquals(throttle.getActiveDirectoryReads(), 0);
+    assertTrue(throttle.getThrottledMillis() > 0);
+    // первая секунда включает начальный запас маркеров
+    assertTrue(throttle.getEffectiveEntriesPerSecond() > 0);
+    assertTrue(throttle.getEffectiveEntriesPerSecond() < 60, "Rate " + throttle.getEffectiveEntriesPerSecond());
+  }
+
+  @Test(description = "Проверка, что одновременно читается не больше заданного числа директорий")
+  public void testPositiveConcurrentDirectoryReadsLimit() throws Exception {
+    // GIVEN
+    ScanThrottle throttle = new ScanThrottle(40, 1);
+    BackgroundDirectorySizeChecker checker = new BackgroundDirectorySizeChecker(4, TraversalPolicy.defaults(),
+        throttle);
+
+    // WHEN
+    CompletableFuture<SizeProgress> future = checker.checkSizeAsync(THROTTLED_DIRECTORY);
+    int maxActiveReads = 0;
+    while (!future.isDone()) {
+      maxActiveReads = Math.max(maxActiveReads, throttle.getActiveDirectoryReads());
+      Thread.sleep(1);
+    }
+
+    // THEN
+    assertEquals(future.get().getBytes(), DIRECTORIES * FILES_PER_DIRECTORY * 100);
+    assertEquals(maxActiveReads, 1);
+    assertEquals(throttle.getActiveDirectoryReads(), 0);
+  }
+
+  @Test(description = "Проверка, что снятый на ходу предел ускоряет уже идущий обход")
+  public void testPositiveLimitChangedAtRuntime() throws Exception {
+    // GIVEN при 2 записях в секунду обход занял бы больше 20 секунд
+    ScanThrottle throttle = new ScanThrottle(2, 2);
+    BackgroundDirectorySizeChecker checker = new BackgroundDirectorySizeChecker(throttle);
+    CompletableFuture<SizeProgress> future = checker.checkSizeAsync(THROTTLED_DIRECTORY);
+    Thread.sleep(300);
+
+    // WHEN
+    throttle.setEntriesPerSecond(0);
+    throttle.setMaxConcurrentDirectoryReads(4);
+
+    // THEN
+    SizeProgress progress = future.get(5, TimeUnit.SECONDS);
+    assertEquals(progress.getBytes(), DIRECTORIES * FILES_PER_DIRECTORY * 100);
+    assertEquals(throttle.getEntries(), ENTRIES);
+  }
+
+  @Test(description = "Проверка, что заторможенный обход не занимает пул: другая задача того же пула "
+      + "выполняется, пока обход ждёт разрешений")
+  public void testPositiveThrottledWalkDoesNotStarvePool() throws Exception {
+    // GIVEN единственный поток пула ждёт разрешений, обход занял бы больше 20 секунд
+    ScanThrottle throttle = new ScanThrottle(2, 1);
+    BackgroundDirectorySizeChecker checker = new BackgroundDirectorySizeChecker(1, TraversalPolicy.defaults(),
+        throttle);
+    CompletableFuture<SizeProgress> walk = checker.checkSizeAsync(THROTTLED_DIRECTORY);
+    Thread.sleep(300);
+
+    try {
+      // WHEN
+      Future<String> other = checker.getPool().submit(() -> "done");
+
+      // THEN
+      assertEquals(other.get(5, TimeUnit.SECONDS), "done");
+      assertFalse(walk.isDone());
+    } finally {
+      throttle.setEntriesPerSecond(0);
+      walk.get(5, TimeUnit.SECONDS);
+      checker.close();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class,
+        description = "Проверка валидации предела одновременно читаемых директорий")
+  public void testNegativeMaxConcurrentDirectoryReads() {
+    // WHEN
+    new ScanThrottle(100, 1).setMaxConcurrentDirectoryReads(0);
+
+    // THEN ожидаем получение исключения
+  }
+}
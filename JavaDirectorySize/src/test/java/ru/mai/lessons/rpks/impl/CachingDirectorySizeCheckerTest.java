@@ -0,0 +1,122 @@
+package ru.mai.lessons.rpks.impl;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import ru.mai.lessons.rpks.exception.DirectoryAccessException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.*;
+
+public class CachingDirectorySizeCheckerTest extends TreeTestBase {
+  private static final String CACHED_DIRECTORY = "cached-tree";
+  private static final Path TREE = Paths.get(DirectorySizeChecker.PREFIX, CACHED_DIRECTORY);
+
+  private Path cacheFile;
+  private long treeSize;
+
+  public CachingDirectorySizeCheckerTest() {
+    super(CACHED_DIRECTORY);
+  }
+
+  @Override
+  protected void fillTree(Path tree) throws IOException {
+    treeSize = createTree(tree, new Random(7), 3);
+    makeOld(tree);
+  }
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    cacheFile = Files.createTempFile("directorySizeCache", ".bin");
+    Files.delete(cacheFile);
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(cacheFile);
+  }
+
+  @Test(description = "Проверка, что кэш сохраняется в файл и повторная проверка другим экземпляром даёт тот же "
+      + "размер")
+  public void testPositiveCacheIsPersisted() throws DirectoryAccessException {
+    // WHEN
+    String firstSize = new CachingDirectorySizeChecker(cacheFile).checkSize(CACHED_DIRECTORY);
+    String secondSize = new CachingDirectorySizeChecker(cacheFile, 2).checkSize(CACHED_DIRECTORY);
+
+    // THEN
+    assertEquals(firstSize, treeSize + " bytes");
+    assertEquals(secondSize, firstSize);
+    assertTrue(Files.exists(cacheFile));
+  }
+
+  @Test(description = "Проверка, что заново читаются только директории с изменённым временем изменения")
+  public void testPositiveOnlyChangedDirectoriesAreReread() throws DirectoryAccessException, IOException {
+    // GIVEN
+    new CachingDirectorySizeChecker(cacheFile).checkSize(CACHED_DIRECTORY);
+    Path grownFile = findFiles(TREE).get(0);
+    Files.write(grownFile, new byte[100], StandardOpenOption.APPEND);
+    Path nestedDirectory = TREE.resolve("dir0").resolve("dir0");
+    Files.write(nestedDirectory.resolve("new.bin"), new byte[1000]);
+
+    // WHEN
+    String actualDirectorySize = new CachingDirectorySizeChecker(cacheFile).checkSize(CACHED_DIRECTORY);
+
+    // THEN дописанный файл в неизменной директории не замечен, новый файл — замечен
+    assertEquals(actualDirectorySize, (treeSize + 1000) + " bytes");
+    assertEquals(new DirectorySizeChecker().checkSize(CACHED_DIRECTORY), (treeSize + 1100) + " bytes");
+  }
+
+  @Test(description = "Проверка, что удалённая поддиректория исключается из размера")
+  public void testPositiveRemovedDirectory() throws DirectoryAccessException, IOException {
+    // GIVEN
+    new CachingDirectorySizeChecker(cacheFile).checkSize(CACHED_DIRECTORY);
+    TreeTestBase.deleteTree(TREE.resolve("dir0"));
+    String expectedDirectorySize = new DirectorySizeChecker().checkSize(CACHED_DIRECTORY);
+
+    // WHEN
+    String actualDirectorySize = new CachingDirectorySizeChecker(cacheFile).checkSize(CACHED_DIRECTORY);
+
+    // THEN
+    assertEquals(actualDirectorySize, expectedDirectorySize);
+  }
+
+  @Test(description = "Проверка, что повреждённый файл кэша не мешает проверке")
+  public void testPositiveCorruptedCacheIsIgnored() throws DirectoryAccessException, IOException {
+    // GIVEN
+    Files.write(cacheFile, new byte[] {1, 2, 3});
+
+    // WHEN
+    String actualDirectorySize = new CachingDirectorySizeChecker(cacheFile).checkSize(CACHED_DIRECTORY);
+
+    // THEN
+    assertEquals(actualDirectorySize, treeSize + " bytes");
+  }
+
+  /**
+   * Сдвигает время изменения всех директорий в прошлое, чтобы кэш им доверял.
+   */
+  private static void makeOld(Path tree) throws IOException {
+    FileTime old = FileTime.from(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1), TimeUnit.MILLISECONDS);
+    try (Stream<Path> paths = Files.walk(tree)) {
+      for (Path path : paths.filter(Files::isDirectory).toList()) {
+        Files.setLastModifiedTime(path, old);
+      }
+    }
+  }
+
+  private static List<Path> findFiles(Path tree) throws IOException {
+    try (Stream<Path> paths = Files.walk(tree)) {
+      return paths.filter(Files::isRegularFile).sorted().toList();
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package ru.mai.lessons.rpks.impl;
+
+import org.testng.annotations.Test;
+import ru.mai.lessons.rpks.exception.DirectoryAccessException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.testng.Assert.*;
+
+public class DirectorySizeWatcherTest extends TreeTestBase {
+  private static final String WATCHED_DIRECTORY = "watched-tree";
+  private static final Path TREE = Paths.get(DirectorySizeChecker.PREFIX, WATCHED_DIRECTORY);
+  private static final long TIMEOUT_MILLIS = 30_000;
+
+  private long treeSize;
+
+  public DirectorySizeWatcherTest() {
+    super(WATCHED_DIRECTORY);
+  }
+
+  @Override
+  protected void fillTree(Path tree) throws IOException {
+    treeSize = createTree(tree, new Random(11), 3);
+  }
+
+  @Test(description = "Проверка, что начальный размер совпадает с размером от DirectorySizeChecker")
+  public void testPositiveInitialSize() throws DirectoryAccessException, IOException {
+    // WHEN
+    try (DirectorySizeWatcher watcher = new DirectorySizeChecker().watch(WATCHED_DIRECTORY)) {
+
+      // THEN
+      assertEquals(watcher.getSize(), treeSize);
+      assertEquals(watcher.getSize(Paths.get("")), treeSize);
+      assertEquals(watcher.getSize(Paths.get("missing")), -1);
+    }
+  }
+
+  @Test(description = "Проверка, что созданные, изменённые и удалённые файлы учитываются при опросе событий")
+  public void testPositivePollTracksFiles() throws DirectoryAccessException, IOException, InterruptedException {
+    // GIVEN
+    try (DirectorySizeWatcher watcher = new DirectorySizeChecker().watch(WATCHED_DIRECTORY)) {
+      Path nestedDirectory = TREE.resolve("dir0").resolve("dir0");
+      long nestedSize = watcher.getSize(Paths.get("dir0", "dir0"));
+
+      // WHEN
+      Files.write(nestedDirectory.resolve("new.bin"), new byte[1000]);
+      Files.write(TREE.resolve("top.bin"), new byte[300]);
+      Files.write(TREE.resolve("top.bin"), new byte[200], StandardOpenOption.APPEND);
+
+      // THEN
+      awaitSize(() -> poll(watcher), treeSize + 1500);
+      assertEquals(watcher.getSize(Paths.get("dir0", "dir0")), nestedSize + 1000);
+
+      // WHEN
+      Files.delete(TREE.resolve("top.bin"));
+
+      // THEN
+      awaitSize(() -> poll(watcher), treeSize + 1000);
+    }
+  }
+
+  @Test(description = "Проверка, что поддиректория, удалённая и созданная заново за одно окно объединения, "
+                      + "обходится заново, а в новой директории отслеживаются файлы")
+  public void testPositivePollTracksReplacedDirectory()
+      throws DirectoryAccessException, IOException, InterruptedException {
+    // GIVEN
+    try (DirectorySizeWatcher watcher = new DirectorySizeChecker().watch(WATCHED_DIRECTORY)) {
+      long replacedSize = watcher.getSize(Paths.get("dir0"));
+
+      // WHEN
+      TreeTestBase.deleteTree(TREE.resolve("dir0"));
+      Files.createDirectories(TREE.resolve("dir0"));
+      Files.write(TREE.resolve("dir0").resolve("fresh.bin"), new byte[123]);
+      // все события должны попасть в один опрос
+      Thread.sleep(200);
+
+      // THEN
+      awaitSize(() -> poll(watcher), treeSize - replacedSize + 123);
+      assertEquals(watcher.getSize(Paths.get("dir0")), 123);
+
+      // WHEN
+      Files.write(TREE.resolve("dir0").resolve("later.bin"), new byte[77]);
+
+      // THEN
+      awaitSize(() -> poll(watcher), treeSize - replacedSize + 200);
+    }
+  }
+
+  @Test(description = "Проверка, что ссылка на предка не зацикливает обход и не учитывается")
+  public void testPositiveSymbolicLinkCycleSkipped() throws DirectoryAccessException, IOException {
+    // GIVEN
+    Files.createSymbolicLink(TREE.resolve("dir0").resolve("loop"), Paths.get(".."));
+
+    // WHEN
+    try (DirectorySizeWatcher watcher = new DirectorySizeChecker().watch(WATCHED_DIRECTORY)) {
+
+      // THEN
+      assertEquals(watcher.getSize(), treeSize);
+      assertEquals(watcher.getSize(Paths.get("dir0", "loop")), -1);
+    }
+  }
+
+  @Test(description = "Проверка, что созданная и удалённая поддиректория учитываются в фоновом слежении")
+  public void testPositiveWatchTracksDirectories() throws Exception {
+    // GIVEN
+    DirectorySizeChecker checker = new DirectorySizeChecker();
+    try (DirectorySizeWatcher watcher = checker.watch(WATCHED_DIRECTORY)) {
+      Thread thread = new Thread(() -> {
+        try {
+          watcher.watch(50);
+        } catch (IOException | InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      thread.start();
+
+      // WHEN
+      Path created = TREE.resolve("created");
+      Files.createDirectories(created.resolve("inner"));
+      Files.write(created.resolve("inner").resolve("a.bin"), new byte[700]);
+      Files.write(created.resolve("b.bin"), new byte[50]);
+      awaitSize(watcher::getSize, treeSize + 750);
+      Files.write(created.resolve("inner").resolve("c.bin"), new byte[25]);
+
+      // THEN
+      awaitSize(watcher::getSize, treeSize + 775);
+      assertEquals(watcher.getSize(Paths.get("created", "inner")), 725);
+
+      // WHEN
+      TreeTestBase.deleteTree(TREE.resolve("dir0"));
+      long expectedSize = Long.parseLong(checker.checkSize(WATCHED_DIRECTORY).split(" ")[0]);
+
+      // THEN
+      awaitSize(watcher::getSize, expectedSize);
+      assertEquals(watcher.getSize(Paths.get("dir0")), -1);
+
+      watcher.close();
+      thread.join(TIMEOUT_MILLIS);
+      assertFalse(thread.isAlive());
+    }
+  }
+
+  private static long poll(DirectorySizeWatcher watcher) {
+    try {
+      watcher.poll();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return watcher.getSize();
+  }
+
+  private static void awaitSize(LongSupplier size, long expected) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+    while (size.getAsLong() != expected && System.nanoTime() < deadline) {
+      Thread.sleep(20);
+    }
+    assertEquals(size.getAsLong(), expected);
+  }
+}
@@ -0,0 +1,67 @@
+package ru.mai.lessons.rpks.impl;
+
+import org.testng.annotations.Test;
+import ru.mai.lessons.rpks.exception.DirectoryAccessException;
+import ru.mai.lessons.rpks.result.DiskUsage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.testng.Assert.*;
+
+public class DiskUsageCheckerTest extends TreeTestBase {
+  private static final String LINKED_DIRECTORY = "linked-tree";
+  private static final Path TREE = Paths.get(DirectorySizeChecker.PREFIX, LINKED_DIRECTORY);
+
+  public DiskUsageCheckerTest() {
+    super(LINKED_DIRECTORY);
+  }
+
+  @Override
+  protected void fillTree(Path tree) throws IOException {
+    Files.createDirectories(tree.resolve("a"));
+    Files.createDirectories(tree.resolve("b"));
+    Files.write(tree.resolve("a").resolve("shared.bin"), new byte[10_000]);
+    Files.createLink(tree.resolve("b").resolve("shared-link.bin"), tree.resolve("a").resolve("shared.bin"));
+    Files.createLink(tree.resolve("shared-link.bin"), tree.resolve("a").resolve("shared.bin"));
+    Files.write(tree.resolve("b").resolve("small.bin"), new byte[1]);
+    Files.createSymbolicLink(tree.resolve("a").resolve("to-b"), Paths.get("..", "b"));
+  }
+
+  @Test(description = "Проверка, что файл с несколькими жёсткими ссылками учитывается один раз")
+  public void testPositiveHardLinksCountedOnce() throws DirectoryAccessException {
+    // WHEN
+    DiskUsage usage = new DiskUsageChecker(2).usage(LINKED_DIRECTORY);
+
+    // THEN символическая ссылка учтена своим размером, а не размером директории b
+    long linkSize = "../b".length();
+    assertEquals(usage.getApparentSize(), 10_000 + 1 + linkSize);
+    assertEquals(usage.getFileCount(), 3);
+    assertEquals(usage.getSkippedLinks(), 2);
+  }
+
+  @Test(description = "Проверка, что оценка места на диске округляется до целых блоков")
+  public void testPositiveEstimatedAllocatedSizeRoundedToBlocks() throws DirectoryAccessException, IOException {
+    // GIVEN
+    long blockSize = Files.getFileStore(TREE).getBlockSize();
+
+    // WHEN
+    DiskUsage usage = new DiskUsageChecker().usage(LINKED_DIRECTORY);
+
+    // THEN
+    long expectedEstimatedSize = (10_000 + blockSize - 1) / blockSize * blockSize + blockSize;
+    assertEquals(usage.getEstimatedAllocatedSize(), expectedEstimatedSize);
+    assertEquals(new DiskUsageChecker().checkSize(LINKED_DIRECTORY), usage.getApparentSize() + " bytes");
+  }
+
+  @Test(expectedExceptions = DirectoryAccessException.class,
+        description = "Проверка реакции на несуществующую директорию")
+  public void testNegativeUsageOfUnknownDirectory() throws DirectoryAccessException {
+    // WHEN
+    new DiskUsageChecker().usage("dragons");
+
+    // THEN ожидаем получение исключения
+  }
+}
@@ -0,0 +1,357 @@
+package ru.mai.lessons.rpks.impl;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import ru.mai.lessons.rpks.IDirectorySizeChecker;
+import ru.mai.lessons.rpks.exception.DirectoryAccessException;
+import ru.mai.lessons.rpks.query.SizeFilter;
+import ru.mai.lessons.rpks.result.DirectorySize;
+import ru.mai.lessons.rpks.result.DirectorySizeReport;
+import ru.mai.lessons.rpks.result.FilteredSize;
+import ru.mai.lessons.rpks.result.SizeEntry;
+import ru.mai.lessons.rpks.result.SizeProgress;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.*;
+
+public class ParallelDirectorySizeCheckerTest {
+  private static final String GENERATED_DIRECTORY = "generated-tree";
+
+  private long generatedSize;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    generatedSize = TreeTestBase.createTree(Paths.get(DirectorySizeChecker.PREFIX, GENERATED_DIRECTORY), new Random(42), 4);
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void tearDown() throws IOException {
+    TreeTestBase.deleteTree(Paths.get(DirectorySizeChecker.PREFIX, GENERATED_DIRECTORY));
+  }
+
+  @DataProvider(name = "parallelismCases")
+  private Object[][] getParallelismCases() {
+    return new Object[][] {
+        {"cats", 1},
+        {"dogs", 4},
+        {GENERATED_DIRECTORY, 1},
+        {GENERATED_DIRECTORY, 4},
+        {GENERATED_DIRECTORY, 32}
+    };
+  }
+
+  @Test(dataProvider = "parallelismCases",
+        description = "Проверка, что параллельный обход даёт тот же размер, что и последовательный")
+  public void testPositiveCheckSizeMatchesSequential(String directoryName, int parallelism)
+      throws DirectoryAccessException {
+    // GIVEN
+    IDirectorySizeChecker parallelChecker = new ParallelDirectorySizeChecker(parallelism);
+    String expectedDirectorySize = new DirectorySizeChecker().checkSize(directoryName);
+
+    // WHEN
+    String actualDirectorySize = parallelChecker.checkSize(directoryName);
+
+    // THEN
+    assertEquals(actualDirectorySize, expectedDirectorySize);
+    if (directoryName.equals(GENERATED_DIRECTORY)) {
+      assertEquals(actualDirectorySize, generatedSize + " bytes");
+    }
+  }
+
+  @Test(description = "Проверка, что дерево отчёта содержит размеры и число файлов каждой поддиректории")
+  public void testPositiveReportTree() throws DirectoryAccessException, IOException {
+    // GIVEN
+    Path root = Paths.get(DirectorySizeChecker.PREFIX, GENERATED_DIRECTORY);
+
+    // WHEN
+    DirectorySizeReport report = new ParallelDirectorySizeChecker(4).report(GENERATED_DIRECTORY, 5);
+
+    // THEN
+    assertEquals(report.getRoot().getSize(), generatedSize);
+    assertEquals(report.getRoot().getFileCount(), listFiles(root).size());
+    Path nested = Paths.get("dir0", "dir0");
+    DirectorySize nestedSize = report.getRoot().find(nested);
+    assertNotNull(nestedSize);
+    List<Path> nestedFiles = listFiles(root.resolve(nested));
+    assertEquals(nestedSize.getSize(), nestedFiles.stream().mapToLong(ParallelDirectorySizeCheckerTest::size).sum());
+    assertEquals(nestedSize.getFileCount(), nestedFiles.size());
+    assertNull(report.getRoot().find(Paths.get("dir0", "missing")));
+    List<DirectorySize> children = report.getRoot().getChildren();
+    for (int index = 1; index < children.size(); index++) {
+      assertTrue(children.get(index - 1).getSize() >= children.get(index).getSize());
+    }
+  }
+
+  @Test(description = "Проверка, что отчёт содержит самые большие файлы и директории по убыванию размера")
+  public void testPositiveReportLargest() throws DirectoryAccessException, IOException {
+    // GIVEN
+    Path root = Paths.get(DirectorySizeChecker.PREFIX, GENERATED_DIRECTORY);
+    List<SizeEntry> expectedFiles = listFiles(root).stream()
+        .map(file -> new SizeEntry(file, size(file)))
+        .sorted(Comparator.comparingLong(SizeEntry::getSize).reversed().thenComparing(SizeEntry::getPath))
+        .limit(7)
+        .toList();
+
+    // WHEN
+    DirectorySizeReport report = new ParallelDirectorySizeChecker(4).report(GENERATED_DIRECTORY, 7);
+
+    // THEN
+    assertEquals(report.getLargestFiles(), expectedFiles);
+    assertEquals(report.getLargestDirectories().size(), 7);
+    assertEquals(report.getLargestDirectories().get(0).getSize(), report.getRoot().getChildren().get(0).getSize());
+    for (SizeEntry directory : report.getLargestDirectories()) {
+      assertEquals(directory.getSize(), report.getRoot().find(root.relativize(directory.getPath())).getSize());
+    }
+  }
+
+  @Test(description = "Проверка, что пакетный подсчёт даёт размеры всех директорий, в том числе вложенных друг в "
+      + "друга")
+  public void testPositiveCheckSizes() throws DirectoryAccessException {
+    // GIVEN
+    List<String> directoryNames = List.of("cats", GENERATED_DIRECTORY + "/dir0/dir0", "dogs", GENERATED_DIRECTORY,
+        GENERATED_DIRECTORY + "/dir0", GENERATED_DIRECTORY + "/dir0/../dir0");
+    IDirectorySizeChecker sequentialChecker = new DirectorySizeChecker();
+
+    // WHEN
+    Map<String, Long> sizes = new ParallelDirectorySizeChecker(4).checkSizes(directoryNames);
+
+    // THEN
+    assertEquals(List.copyOf(sizes.keySet()), directoryNames);
+    for (String directoryName : directoryNames) {
+      assertEquals(sizes.get(directoryName) + " bytes", sequentialChecker.checkSize(directoryName));
+    }
+    assertEquals((long) sizes.get(GENERATED_DIRECTORY), generatedSize);
+  }
+
+  @Test(description = "Проверка, что вложенная директория со ссылкой на внешнюю получает в пакете тот же "
+      + "размер, что и при отдельном подсчёте")
+  public void testPositiveCheckSizesNestedLinkCycle() throws DirectoryAccessException, IOException {
+    // GIVEN ссылка up замыкает цикл на outer только при общем обходе от outer
+    Path tree = Paths.get(DirectorySizeChecker.PREFIX, "cycle-tree");
+    try {
+      Path inner = Files.createDirectories(tree.resolve("outer").resolve("inner"));
+      Files.write(tree.resolve("outer").resolve("outer.bin"), new byte[100]);
+      Files.write(inner.resolve("inner.bin"), new byte[7]);
+      Files.createSymbolicLink(inner.resolve("up"), Paths.get(".."));
+      List<String> directoryNames = List.of("cycle-tree/outer", "cycle-tree/outer/inner");
+      ParallelDirectorySizeChecker checker = new ParallelDirectorySizeChecker(2);
+
+      // WHEN
+      Map<String, Long> sizes = checker.checkSizes(directoryNames);
+
+      // THEN
+      assertEquals((long) sizes.get("cycle-tree/outer"), 107);
+      assertEquals((long) sizes.get("cycle-tree/outer/inner"), 107);
+      for (String directoryName : directoryNames) {
+        assertEquals(sizes.get(directoryName) + " bytes", checker.checkSize(directoryName));
+      }
+    } finally {
+      TreeTestBase.deleteTree(tree);
+    }
+  }
+
+  @Test(expectedExceptions = DirectoryAccessException.class,
+        description = "Проверка, что пакетный подсчёт отклоняет несуществующую директорию")
+  public void testNegativeCheckSizesUnknownDirectory() throws DirectoryAccessException {
+    // WHEN
+    new ParallelDirectorySizeChecker(2).checkSizes(List.of("cats", "dragons"));
+
+    // THEN ожидаем получение исключения
+  }
+
+  @Test(description = "Проверка, что размеры по отборам считаются за один обход и учитывают все условия")
+  public void testPositiveCheckFilteredSizes() throws DirectoryAccessException, IOException {
+    // GIVEN
+    Path tree = Paths.get(DirectorySizeChecker.PREFIX, "filtered-tree");
+    Instant now = Instant.now();
+    Instant monthAgo = now.minus(Duration.ofDays(30));
+    try {
+      writeFile(tree.resolve("a.log"), 100, now.minus(Duration.ofDays(40)));
+      writeFile(tree.resolve("b.log"), 200, now);
+      writeFile(tree.resolve("sub").resolve("c.log"), 300, now.minus(Duration.ofDays(31)));
+      writeFile(tree.resolve("sub").resolve("d.txt"), 5000, now.minus(Duration.ofDays(60)));
+      writeFile(tree.resolve("e.LOG"), 10, now);
+      List<SizeFilter> filters = List.of(
+          SizeFilter.allFiles(),
+          SizeFilter.allFiles().extension("log"),
+          SizeFilter.allFiles().extension(".log").modifiedBefore(monthAgo),
+          SizeFilter.allFiles().glob("sub/*"),
+          SizeFilter.allFiles().modifiedAfter(monthAgo).maxSize(100),
+          SizeFilter.allFiles().minSize(300).glob("**.{log,txt}"));
+
+      // WHEN
+      List<FilteredSize> sizes = new ParallelDirectorySizeChecker(2).checkFilteredSizes("filtered-tree", filters);
+
+      // THEN
+      assertEquals(sizes.size(), filters.size());
+      assertEquals(sizes.get(0).getSize(), 5610);
+      assertEquals(sizes.get(0).getFileCount(), 5);
+      assertEquals(sizes.get(1).getSize(), 600);
+      assertEquals(sizes.get(2).getSize(), 400);
+      assertEquals(sizes.get(2).getFileCount(), 2);
+      assertEquals(sizes.get(3).getSize(), 5300);
+      assertEquals(sizes.get(4).getSize(), 10);
+      assertEquals(sizes.get(5).getSize(), 5300);
+      assertEquals(sizes.get(5).getFilter(), filters.get(5));
+    } finally {
+      TreeTestBase.deleteTree(tree);
+    }
+  }
+
+  @Test(description = "Проверка, что отбор всех файлов даёт тот же размер, что и checkSize")
+  public void testPositiveCheckFilteredSizesAllFiles() throws DirectoryAccessException {
+    // WHEN
+    List<FilteredSize> sizes = new ParallelDirectorySizeChecker(4)
+        .checkFilteredSizes(GENERATED_DIRECTORY, List.of(SizeFilter.allFiles()));
+
+    // THEN
+    assertEquals(sizes.get(0).getSize(), generatedSize);
+  }
+
+  @Test(description = "Проверка, что асинхронный подсчёт даёт тот же размер и сообщает о ходе обхода")
+  public void testPositiveCheckSizeAsync() throws Exception {
+    // GIVEN
+    Path root = Paths.get(DirectorySizeChecker.PREFIX, GENERATED_DIRECTORY);
+    ConcurrentLinkedQueue<SizeProgress> updates = new ConcurrentLinkedQueue<>();
+    long entryCount;
+    try (Stream<Path> paths = Files.walk(root)) {
+      entryCount = paths.count() - 1;
+    }
+
+    // WHEN
+    SizeProgress result = new ParallelDirectorySizeChecker(4)
+        .checkSizeAsync(GENERATED_DIRECTORY, updates::add, Duration.ZERO, null)
+        .get(30, TimeUnit.SECONDS);
+
+    // THEN
+    assertTrue(result.isComplete());
+    assertEquals(result.getBytes(), generatedSize);
+    assertEquals(result.getEntries(), entryCount);
+    assertFalse(updates.isEmpty());
+    for (SizeProgress update : updates) {
+      assertFalse(update.isComplete());
+      assertTrue(update.getBytes() <= generatedSize);
+      assertTrue(update.getCurrentPath().startsWith(root));
+    }
+  }
+
+  @Test(description = "Проверка, что по истечении срока возвращается частичный итог")
+  public void testPositiveCheckSizeAsyncDeadline() throws Exception {
+    // GIVEN медленный получатель задерживает обход после каждой директории
+    ParallelDirectorySizeChecker checker = new ParallelDirectorySizeChecker(1);
+
+    // WHEN
+    SizeProgress result = checker
+        .checkSizeAsync(GENERATED_DIRECTORY, update -> sleep(50), Duration.ZERO, Duration.ofMillis(100))
+        .get(30, TimeUnit.SECONDS);
+
+    // THEN
+    assertFalse(result.isComplete());
+    assertTrue(result.getBytes() < generatedSize);
+  }
+
+  @Test(expectedExceptions = CancellationException.class,
+        description = "Проверка, что асинхронный подсчёт можно отменить")
+  public void testNegativeCheckSizeAsyncCancelled() throws Exception {
+    // GIVEN медленный получатель не даёт обходу закончиться до отмены
+    CompletableFuture<SizeProgress> future = new ParallelDirectorySizeChecker(1)
+        .checkSizeAsync(GENERATED_DIRECTORY, update -> sleep(50), Duration.ZERO, null);
+
+    // WHEN
+    future.cancel(true);
+
+    // THEN ожидаем получение исключения
+    future.get(30, TimeUnit.SECONDS);
+  }
+
+  @Test(expectedExceptions = DirectoryAccessException.class,
+        description = "Проверка реакции параллельного сервиса на несуществующую директорию")
+  public void testNegativeCheckUnknownDirectory() throws DirectoryAccessException {
+    // WHEN
+    new ParallelDirectorySizeChecker(2).checkSize("dragons");
+
+    // THEN ожидаем получение исключения
+  }
+
+  @Test(description = "Проверка, что закрытие дожидается начатого подсчёта и останавливает потоки пула")
+  public void testPositiveCloseShutsDownPool() throws Exception {
+    // GIVEN
+    ParallelDirectorySizeChecker checker = new ParallelDirectorySizeChecker(4);
+    CompletableFuture<SizeProgress> future = checker.checkSizeAsync(GENERATED_DIRECTORY);
+
+    // WHEN
+    checker.close();
+
+    // THEN
+    assertEquals(future.get(5, TimeUnit.SECONDS).getBytes(), generatedSize);
+    assertTrue(checker.getPool().awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test(expectedExceptions = DirectoryAccessException.class,
+        description = "Проверка, что закрытый экземпляр не начинает новых подсчётов")
+  public void testNegativeCheckSizeAfterClose() throws DirectoryAccessException {
+    // GIVEN
+    ParallelDirectorySizeChecker checker = new ParallelDirectorySizeChecker(2);
+    checker.close();
+
+    // WHEN
+    checker.checkSize("cats");
+
+    // THEN ожидаем получение исключения
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class,
+        description = "Проверка валидации степени параллельности")
+  public void testNegativeParallelism() {
+    // WHEN
+    new ParallelDirectorySizeChecker(0);
+
+    // THEN ожидаем получение исключения
+  }
+
+  private static List<Path> listFiles(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      return paths.filter(Files::isRegularFile).toList();
+    }
+  }
+
+  private static void writeFile(Path file, int size, Instant modified) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, new byte[size]);
+    Files.setLastModifiedTime(file, FileTime.from(modified));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static long size(Path file) {
+    try {
+      return Files.size(file);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package ru.mai.lessons.rpks.impl;
+
+import org.testng.SkipException;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import ru.mai.lessons.rpks.exception.DirectoryAccessException;
+import ru.mai.lessons.rpks.query.TraversalPolicy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public class TraversalTest extends TreeTestBase {
+  private static final String LINKED_DIRECTORY = "looped-tree";
+  private static final Path TREE = Paths.get(DirectorySizeChecker.PREFIX, LINKED_DIRECTORY);
+
+  public TraversalTest() {
+    super(LINKED_DIRECTORY);
+  }
+
+  @Override
+  protected void fillTree(Path tree) throws IOException {
+    Files.createDirectories(tree.resolve("a"));
+    Files.write(tree.resolve("a").resolve("file.bin"), new byte[100]);
+    Files.createSymbolicLink(tree.resolve("a").resolve("loop"), Paths.get(".."));
+    Files.createSymbolicLink(tree.resolve("b"), Paths.get("a"));
+    Files.createDirectories(tree.resolve("c").resolve("d"));
+    Files.write(tree.resolve("c").resolve("d").resolve("file.bin"), new byte[10]);
+  }
+
+  @DataProvider(name = "policyCases")
+  private Object[][] getPolicyCases() {
+    return new Object[][] {
+        {TraversalPolicy.defaults(), "210 bytes"},
+        {TraversalPolicy.defaults().followLinks(false), (100 + "..".length() + "a".length() + 10) + " bytes"},
+        {TraversalPolicy.defaults().maxDepth(1), "200 bytes"},
+        {TraversalPolicy.defaults().maxDepth(0), "0 bytes"},
+        {TraversalPolicy.defaults().visitOnce(true), "110 bytes"},
+        {TraversalPolicy.defaults().sameFileSystem(true), "210 bytes"}
+    };
+  }
+
+  @Test(dataProvider = "policyCases",
+        description = "Проверка, что обход не зацикливается на ссылках и соблюдает глубину и режим ссылок")
+  public void testPositivePolicy(TraversalPolicy policy, String expectedDirectorySize)
+      throws DirectoryAccessException {
+    // GIVEN
+    ParallelDirectorySizeChecker checker = new ParallelDirectorySizeChecker(2, policy);
+
+    // WHEN
+    String actualDirectorySize = checker.checkSize(LINKED_DIRECTORY);
+
+    // THEN все виды обхода, в том числе последовательный, подчиняются одной политике
+    assertEquals(actualDirectorySize, expectedDirectorySize);
+    assertEquals(new DirectorySizeChecker(policy).checkSize(LINKED_DIRECTORY), expectedDirectorySize);
+    assertEquals(checker.report(LINKED_DIRECTORY, 3).getRoot().getSize() + " bytes", expectedDirectorySize);
+    assertEquals(checker.checkSizes(List.of(LINKED_DIRECTORY, LINKED_DIRECTORY + "/c")).get(LINKED_DIRECTORY)
+        + " bytes", expectedDirectorySize);
+  }
+
+  @Test(timeOut = 10_000,
+        description = "Проверка, что при обходе каждой директории один раз сходящиеся ссылки не множат обход")
+  public void testPositiveVisitOnceLinkDag() throws DirectoryAccessException, IOException {
+    // GIVEN каждая директория цепочки дважды ссылается на следующую: 2^20 путей до последней
+    int levels = 20;
+    Path dag = TREE.resolve("dag");
+    for (int level = 0; level <= levels; level++) {
+      Path directory = Files.createDirectories(dag.resolve("l" + level));
+      Files.write(directory.resolve("file.bin"), new byte[1]);
+      if (level < levels) {
+        Files.createSymbolicLink(directory.resolve("x"), Paths.get("..", "l" + (level + 1)));
+        Files.createSymbolicLink(directory.resolve("y"), Paths.get("..", "l" + (level + 1)));
+      }
+    }
+    TraversalPolicy policy = TraversalPolicy.defaults().visitOnce(true);
+
+    // WHEN
+    String sequentialSize = new DirectorySizeChecker(policy).checkSize(LINKED_DIRECTORY + "/dag/l0");
+    String parallelSize = new ParallelDirectorySizeChecker(4, policy).checkSize(LINKED_DIRECTORY + "/dag/l0");
+
+    // THEN
+    assertEquals(sequentialSize, (levels + 1) + " bytes");
+    assertEquals(parallelSize, (levels + 1) + " bytes");
+  }
+
+  @Test(description = "Проверка, что кэширующий сервис тоже не зацикливается на ссылках")
+  public void testPositiveCachingCheckerSkipsLoops() throws DirectoryAccessException, IOException {
+    // GIVEN
+    Path cacheFile = Files.createTempFile("directorySizeCache", ".bin");
+    try {
+      // WHEN
+      String actualDirectorySize = new CachingDirectorySizeChecker(cacheFile).checkSize(LINKED_DIRECTORY);
+
+      // THEN
+      assertEquals(actualDirectorySize, "210 bytes");
+    } finally {
+      Files.deleteIfExists(cacheFile);
+    }
+  }
+
+  @Test(description = "Проверка, что обход не выходит на другую файловую систему")
+  public void testPositiveSameFileSystem() throws DirectoryAccessException, IOException {
+    // GIVEN
+    Path otherFileSystem = Paths.get("/dev/shm");
+    if (!Files.isDirectory(otherFileSystem)
+        || Files.getFileStore(otherFileSystem).equals(Files.getFileStore(TREE))) {
+      throw new SkipException("No other file system to link to");
+    }
+    Path mounted = Files.createTempDirectory(otherFileSystem, "mounted");
+    try {
+      Files.write(mounted.resolve("file.bin"), new byte[1000]);
+      Files.createSymbolicLink(TREE.resolve("mnt"), mounted);
+      TraversalPolicy policy = TraversalPolicy.defaults();
+
+      // WHEN
+      String crossingSize = new ParallelDirectorySizeChecker(2, policy).checkSize(LINKED_DIRECTORY);
+      String sameFileSystemSize = new ParallelDirectorySizeChecker(2, policy.sameFileSystem(true))
+          .checkSize(LINKED_DIRECTORY);
+
+      // THEN
+      assertEquals(crossingSize, "1210 bytes");
+      assertEquals(sameFileSystemSize, "210 bytes");
+    } finally {
+      TreeTestBase.deleteTree(mounted);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class,
+        description = "Проверка валидации глубины обхода")
+  public void testNegativeMaxDepth() {
+    // WHEN
+    TraversalPolicy.defaults().maxDepth(-1);
+
+    // THEN ожидаем получение исключения
+  }
+}
@@ -0,0 +1,70 @@
+package ru.mai.lessons.rpks.impl;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Основа тестов, которым нужно собственное дерево в {@link DirectorySizeChecker#PREFIX}: перед каждым
+ * тестом дерево строится заново методом {@link #fillTree(Path)}, после теста удаляется.
+ */
+abstract class TreeTestBase {
+  private final Path tree;
+
+  TreeTestBase(String directoryName) {
+    this.tree = Paths.get(DirectorySizeChecker.PREFIX, directoryName);
+  }
+
+  @BeforeMethod
+  public void createTestTree() throws IOException {
+    deleteTree(tree);
+    fillTree(tree);
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void deleteTestTree() throws IOException {
+    deleteTree(tree);
+  }
+
+  protected abstract void fillTree(Path tree) throws IOException;
+
+  /**
+   * Создаёт дерево из нескольких уровней директорий с файлами случайного размера и возвращает
+   * суммарный размер файлов.
+   */
+  static long createTree(Path directory, Random random, int depth) throws IOException {
+    Files.createDirectories(directory);
+    long size = 0;
+    int files = random.nextInt(6);
+    for (int index = 0; index < files; index++) {
+      byte[] content = new byte[random.nextInt(5000)];
+      Files.write(directory.resolve("file" + index + ".bin"), content);
+      size += content.length;
+    }
+    if (depth > 0) {
+      int subdirectories = 1 + random.nextInt(4);
+      for (int index = 0; index < subdirectories; index++) {
+        size += createTree(directory.resolve("dir" + index), random, depth - 1);
+      }
+    }
+    return size;
+  }
+
+  static void deleteTree(Path directory) throws IOException {
+    if (!Files.exists(directory)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package ru.mai.lessons.rpks.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение скалярного и векторного поиска ключевого слова по строкам, а также исходного подхода
+ * с декодированием каждой строки и {@code toLowerCase().contains}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KeywordMatcherBenchmark {
+
+    private static final String[] WORDS = {"корги", "пемброк", "кардиган", "порода", "Уэльс",
+        "собака", "error", "timeout", "request", "WARN", "INFO", "42", "-", "и", "в"};
+
+    @Param({"80", "400"})
+    private int lineLength;
+
+    @Param({"Кардиган", "timeout"})
+    private String keyWord;
+
+    private ByteBuffer buffer;
+    private int[] lineStarts;
+    private KeywordMatcher scalar;
+    private KeywordMatcher vector;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        int lines = (16 * 1024 * 1024) / lineLength;
+        for (int line = 0; line < lines; line++) {
+            int length = 0;
+            while (length < lineLength) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(word).append(' ');
+                length += word.length() + 1;
+            }
+            text.append('\n');
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+
+        lineStarts = new int[lines + 1];
+        for (int index = 0, line = 1; index < bytes.length; index++) {
+            if (bytes[index] == '\n') {
+                lineStarts[line++] = index + 1;
+            }
+        }
+
+        scalar = new KeywordMatcher(keyWord);
+        vector = new VectorKeywordMatcher(keyWord);
+    }
+
+    @Benchmark
+    public int scalar() {
+        return countMatches(scalar);
+    }
+
+    @Benchmark
+    public int vector() {
+        return countMatches(vector);
+    }
+
+    @Benchmark
+    public int decodeAndContains() {
+        String lowerKeyWord = keyWord.toLowerCase();
+        int matches = 0;
+        byte[] line = new byte[0];
+        for (int index = 0; index + 1 < lineStarts.length; index++) {
+            int length = lineStarts[index + 1] - lineStarts[index] - 1;
+            if (line.length < length) {
+                line = new byte[length];
+            }
+            buffer.get(lineStarts[index], line, 0, length);
+            if (new String(line, 0, length, StandardCharsets.UTF_8).toLowerCase().contains(lowerKeyWord)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private int countMatches(KeywordMatcher matcher) {
+        int matches = 0;
+        for (int index = 0; index + 1 < lineStarts.length; index++) {
+            if (matcher.matches(buffer, lineStarts[index], lineStarts[index + 1] - 1)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
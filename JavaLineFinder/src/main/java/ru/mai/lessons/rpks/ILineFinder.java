@@ -1,10 +1,29 @@
 package ru.mai.lessons.rpks;
 
 import ru.mai.lessons.rpks.exception.LineCountShouldBePositiveException;
+import ru.mai.lessons.rpks.query.SearchQuery;
+import ru.mai.lessons.rpks.result.KeywordMatch;
 
 import java.io.FileNotFoundException;
+import java.util.Collection;
+import java.util.function.Consumer;
 
 public interface ILineFinder {
   public void find(String inputFilename, String outputFilename, String keyWord,
                    int lineCount) throws LineCountShouldBePositiveException; // запускает поиск
+
+  public void find(String inputFilename, String outputFilename, Collection<String> keyWords,
+                   int lineCount, Consumer<KeywordMatch> matchListener)
+      throws LineCountShouldBePositiveException; // поиск нескольких ключевых слов за один проход, matchListener получает найденные строки по порядку
+
+  public default void find(String inputFilename, String outputFilename, Collection<String> keyWords,
+                           int lineCount) throws LineCountShouldBePositiveException {
+    find(inputFilename, outputFilename, keyWords, lineCount, null);
+  }
+
+  public void find(String inputFilename, String outputFilename, SearchQuery query,
+                   int lineCount) throws LineCountShouldBePositiveException; // поиск с параметрами: регистр, целое слово, регулярное выражение
+
+  public void findInDirectory(String directory, String glob, String outputFilename, SearchQuery query,
+                              int lineCount) throws LineCountShouldBePositiveException; // поиск во всех файлах каталога (glob может быть null), вывод сгруппирован по файлам
 }
@@ -0,0 +1,12 @@
+package ru.mai.lessons.rpks;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+public interface ILineMatcher {
+  public boolean matches(ByteBuffer buffer, int from, int to); // проверяет, подходит ли строка buffer[from, to) (UTF-8) под запрос
+
+  public default List<String> matchedKeywords(ByteBuffer buffer, int from, int to) { // ключевые слова, найденные в строке
+    return List.of();
+  }
+}
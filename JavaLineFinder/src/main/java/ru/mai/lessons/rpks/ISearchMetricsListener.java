@@ -0,0 +1,10 @@
+package ru.mai.lessons.rpks;
+
+import ru.mai.lessons.rpks.result.SearchStatistics;
+
+public interface ISearchMetricsListener {
+  public void onProgress(SearchStatistics statistics); // вызывается в потоке запроса после записи каждого фрагмента, по порядку
+
+  public default void onFinish(SearchStatistics statistics) { // итог запроса, в том числе прерванного ошибкой
+  }
+}
@@ -0,0 +1,19 @@
+package ru.mai.lessons.rpks;
+
+public interface ISearchMetricsMXBean {
+  public long getQueries(); // количество запущенных запросов
+
+  public long getBytesScanned(); // просмотрено байтов
+
+  public long getLinesScanned(); // просмотрено непустых строк
+
+  public long getMatches(); // записано найденных строк (не больше ограничения числа совпадений)
+
+  public long getScanMillis(); // суммарное время просмотра строк во всех потоках
+
+  public long getIoMillis(); // суммарное время чтения сжатых данных, индексов и записи вывода
+
+  public long getIndexFailures(); // индексов, которые не удалось открыть или записать; поиск шёл без них
+
+  public double getWorkerThroughputMbPerSecond(); // средняя скорость просмотра одним потоком
+}
@@ -3,6 +3,8 @@ package ru.mai.lessons.rpks;
 import lombok.extern.slf4j.Slf4j;
 import ru.mai.lessons.rpks.exception.LineCountShouldBePositiveException;
 import ru.mai.lessons.rpks.impl.LineFinder;
+import ru.mai.lessons.rpks.result.SearchStatistics;
+import ru.mai.lessons.rpks.result.WorkerStatistics;
 
 import java.util.Scanner;
 
@@ -18,7 +20,22 @@ public class Main {
             + "файл: ");
     int lineCount = in.nextInt();
 
-    ILineFinder service = new LineFinder(); // ваша реализация service
+    LineFinder service = new LineFinder(); // ваша реализация service
+    service.setMetricsListener(new ISearchMetricsListener() {
+      @Override
+      public void onProgress(SearchStatistics statistics) {
+        log.debug("Просмотрено строк: {}, найдено: {}", statistics.getLinesScanned(), statistics.getMatches());
+      }
+
+      @Override
+      public void onFinish(SearchStatistics statistics) {
+        log.info("Просмотрено строк: {}, найдено: {}, {} МБ/с на поток", statistics.getLinesScanned(),
+                statistics.getMatches(), String.format("%.1f", statistics.getWorkerThroughputMbPerSecond()));
+        for (WorkerStatistics worker : statistics.getWorkers()) {
+          log.debug("Поток {}: {} МБ/с", worker.getWorker(), String.format("%.1f", worker.getThroughputMbPerSecond()));
+        }
+      }
+    });
     long startTime = System.currentTimeMillis();
     service.find(args[0], args[1], keyWord, lineCount);
     log.info("Поиск отработал за {} ms.", System.currentTimeMillis() - startTime);
@@ -0,0 +1,12 @@
+package ru.mai.lessons.rpks.exception;
+
+/**
+ * Выбрасывается, если поиск не уложился в отведённое время
+ * (см. {@link ru.mai.lessons.rpks.impl.LineFinder#setQueryTimeout(long)}). Незавершённые задачи
+ * поиска к этому моменту уже отменены.
+ */
+public class SearchTimeoutException extends RuntimeException {
+  public SearchTimeoutException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,320 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.ILineMatcher;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Регистронезависимый поиск сразу нескольких ключевых слов за один проход по строке (автомат
+ * Ахо-Корасик). Автомат строится один раз по приведённым к нижнему регистру символам ключевых
+ * слов и затем переводится на байты UTF-8: переходы хранятся плотной таблицей
+ * {@code состояние × байт}, поэтому на каждый байт строки приходится одно обращение к массиву без
+ * декодирования символов.
+ * <p>
+ * Многобайтный символ проходится через промежуточные состояния — по одному на каждый начальный
+ * отрезок кодировки символов ключевых слов во всех регистрах ({@link CaseFolds}). Байты символов,
+ * которых нет в ключевых словах, и некорректные последовательности ведут в начальное состояние,
+ * как и при посимвольном сравнении. Одинаковые промежуточные состояния разных состояний автомата
+ * хранятся один раз.
+ */
+public class AhoCorasickMatcher implements ILineMatcher {
+
+    private static final int ROOT = 0;
+    private static final int[] NO_OUTPUTS = new int[0];
+
+    private final List<String> keyWords;
+    private final int[] transitions;
+    private final int[][] outputs;
+
+    public AhoCorasickMatcher(Collection<String> keyWords) {
+        this.keyWords = List.copyOf(keyWords);
+        Builder builder = new Builder();
+        builder.build();
+        this.transitions = builder.byteTransitions();
+        this.outputs = builder.byteOutputs();
+    }
+
+    public List<String> keyWords() {
+        return keyWords;
+    }
+
+    @Override
+    public boolean matches(ByteBuffer buffer, int from, int to) {
+        int state = ROOT;
+        for (int position = from; position < to; position++) {
+            state = transitions[(state << 8) | (buffer.get(position) & 0xFF)];
+            if (outputs[state].length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<String> matchedKeywords(ByteBuffer buffer, int from, int to) {
+        boolean[] found = new boolean[keyWords.size()];
+        int state = ROOT;
+        for (int position = from; position < to; position++) {
+            state = transitions[(state << 8) | (buffer.get(position) & 0xFF)];
+            for (int keyWordIndex : outputs[state]) {
+                found[keyWordIndex] = true;
+            }
+        }
+
+        List<String> result = new ArrayList<>();
+        for (int keyWordIndex = 0; keyWordIndex < found.length; keyWordIndex++) {
+            if (found[keyWordIndex]) {
+                result.add(keyWords.get(keyWordIndex));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Построение автомата: сначала по символам (символ 0 — любой символ не из ключевых слов), затем
+     * по байтам. Нужен только в конструкторе.
+     */
+    private class Builder {
+
+        private final Map<Integer, Integer> symbols = new HashMap<>();
+        private final List<Integer> symbolCodePoints = new ArrayList<>(List.of(-1));
+        private int[] symbolTransitions;
+        private int[][] symbolOutputs;
+        private int states;
+
+        private final List<int[]> decoderChildren = new ArrayList<>();
+        private final List<Integer> decoderSymbols = new ArrayList<>();
+        private final List<int[]> decoderLeaves = new ArrayList<>();
+
+        private final List<int[]> rows = new ArrayList<>();
+        private final Map<RowKey, Integer> rowIds = new HashMap<>();
+        private final Map<Long, Integer> intermediateIds = new HashMap<>();
+
+        void build() {
+            buildSymbolAutomaton();
+            buildDecoder();
+            for (int state = 0; state < states; state++) {
+                rows.add(null);
+            }
+            for (int state = 0; state < states; state++) {
+                rows.set(state, row(state, 0));
+            }
+        }
+
+        int[] byteTransitions() {
+            int[] result = new int[rows.size() << 8];
+            for (int state = 0; state < rows.size(); state++) {
+                System.arraycopy(rows.get(state), 0, result, state << 8, 256);
+            }
+            return result;
+        }
+
+        int[][] byteOutputs() {
+            int[][] result = new int[rows.size()][];
+            Arrays.fill(result, NO_OUTPUTS);
+            System.arraycopy(symbolOutputs, 0, result, 0, states);
+            return result;
+        }
+
+        private void buildSymbolAutomaton() {
+            List<Map<Integer, Integer>> trie = new ArrayList<>();
+            List<List<Integer>> trieOutputs = new ArrayList<>();
+            trie.add(new HashMap<>());
+            trieOutputs.add(new ArrayList<>());
+
+            for (int keyWordIndex = 0; keyWordIndex < keyWords.size(); keyWordIndex++) {
+                int state = 0;
+                for (int codePoint : keyWords.get(keyWordIndex).codePoints().map(Character::toLowerCase).toArray()) {
+                    int symbol = symbols.computeIfAbsent(codePoint, ignored -> {
+                        symbolCodePoints.add(codePoint);
+                        return symbolCodePoints.size() - 1;
+                    });
+                    Integer next = trie.get(state).get(symbol);
+                    if (next == null) {
+                        next = trie.size();
+                        trie.add(new HashMap<>());
+                        trieOutputs.add(new ArrayList<>());
+                        trie.get(state).put(symbol, next);
+                    }
+                    state = next;
+                }
+                trieOutputs.get(state).add(keyWordIndex);
+            }
+
+            int alphabetSize = symbolCodePoints.size();
+            states = trie.size();
+            symbolTransitions = new int[states * alphabetSize];
+            symbolOutputs = new int[states][];
+            int[] failure = new int[states];
+
+            Queue<Integer> queue = new ArrayDeque<>();
+            queue.add(0);
+            symbolOutputs[0] = NO_OUTPUTS;
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                    Integer child = trie.get(state).get(symbol);
+                    if (child == null) {
+                        symbolTransitions[state * alphabetSize + symbol] =
+                                state == 0 ? 0 : symbolTransitions[failure[state] * alphabetSize + symbol];
+                        continue;
+                    }
+                    failure[child] = state == 0 ? 0 : symbolTransitions[failure[state] * alphabetSize + symbol];
+                    List<Integer> childOutputs = trieOutputs.get(child);
+                    for (int inherited : symbolOutputs[failure[child]]) {
+                        childOutputs.add(inherited);
+                    }
+                    symbolOutputs[child] = childOutputs.stream().mapToInt(Integer::intValue).toArray();
+                    symbolTransitions[state * alphabetSize + symbol] = child;
+                    queue.add(child);
+                }
+            }
+        }
+
+        /**
+         * Префиксное дерево кодировок UTF-8 всех символов, которые в нижнем регистре совпадают с
+         * символами ключевых слов; в листьях — номер символа.
+         */
+        private void buildDecoder() {
+            addDecoderNode();
+            for (int symbol = 1; symbol < symbolCodePoints.size(); symbol++) {
+                for (int variant : CaseFolds.lowerCaseVariants(symbolCodePoints.get(symbol))) {
+                    if (Character.getType(variant) == Character.SURROGATE) {
+                        continue;
+                    }
+                    byte[] encoded = new String(Character.toChars(variant)).getBytes(StandardCharsets.UTF_8);
+                    int node = 0;
+                    for (byte value : encoded) {
+                        int[] children = decoderChildren.get(node);
+                        if (children[value & 0xFF] < 0) {
+                            children[value & 0xFF] = addDecoderNode();
+                        }
+                        node = children[value & 0xFF];
+                    }
+                    decoderSymbols.set(node, symbol);
+                }
+            }
+            for (int node = 0; node < decoderChildren.size(); node++) {
+                decoderLeaves.add(leaves(node).stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+
+        private List<Integer> leaves(int node) {
+            List<Integer> result = new ArrayList<>();
+            if (decoderSymbols.get(node) > 0) {
+                result.add(decoderSymbols.get(node));
+            }
+            for (int child : decoderChildren.get(node)) {
+                if (child >= 0) {
+                    result.addAll(leaves(child));
+                }
+            }
+            return result;
+        }
+
+        private int addDecoderNode() {
+            int[] children = new int[256];
+            Arrays.fill(children, -1);
+            decoderChildren.add(children);
+            decoderSymbols.add(0);
+            return decoderChildren.size() - 1;
+        }
+
+        /**
+         * Строка таблицы для состояния {@code state}, в котором уже прочитан начальный отрезок
+         * символа, соответствующий узлу {@code node} дерева кодировок (0 — символ не начат).
+         */
+        private int[] row(int state, int node) {
+            int[] row = new int[256];
+            for (int value = 0; value < 256; value++) {
+                row[value] = cell(state, node, value);
+            }
+            return row;
+        }
+
+        private int cell(int state, int node, int value) {
+            int alphabetSize = symbolCodePoints.size();
+            int child = decoderChildren.get(node)[value];
+            if (child >= 0) {
+                int symbol = decoderSymbols.get(child);
+                return symbol > 0 ? symbolTransitions[state * alphabetSize + symbol] : intermediate(state, child);
+            }
+            int other = symbolTransitions[state * alphabetSize];
+            if (node == 0 || (value & 0xC0) == 0x80) {
+                return other;
+            }
+            // Начатая последовательность оборвалась: её байты — некорректный символ, а текущий
+            // байт читается заново, как начало следующего символа.
+            return cell(other, 0, value);
+        }
+
+        private int intermediate(int state, int node) {
+            long key = (long) state * decoderChildren.size() + node;
+            Integer known = intermediateIds.get(key);
+            if (known != null) {
+                return known;
+            }
+            if (state != ROOT && leadsLikeRoot(state, node)) {
+                return intermediate(ROOT, node);
+            }
+            if (state == ROOT) {
+                // Оборванная последовательность читается заново из начального состояния, поэтому
+                // его промежуточные состояния ссылаются друг на друга: номер занимается заранее.
+                rows.add(null);
+                int id = rows.size() - 1;
+                intermediateIds.put(key, id);
+                rows.set(id, row(state, node));
+                return id;
+            }
+            int[] row = row(state, node);
+            int id = rowIds.computeIfAbsent(new RowKey(row), ignored -> {
+                rows.add(row);
+                return rows.size() - 1;
+            });
+            intermediateIds.put(key, id);
+            return id;
+        }
+
+        /**
+         * {@code true}, если все символы, кодировки которых начинаются отрезком {@code node}, ведут
+         * из {@code state} туда же, куда из начального состояния: тогда и строки промежуточных
+         * состояний у них одинаковые. Так у большинства состояний автомата.
+         */
+        private boolean leadsLikeRoot(int state, int node) {
+            int alphabetSize = symbolCodePoints.size();
+            for (int symbol : decoderLeaves.get(node)) {
+                if (symbolTransitions[state * alphabetSize + symbol] != symbolTransitions[symbol]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class RowKey {
+        private final int[] row;
+
+        RowKey(int[] row) {
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof RowKey && Arrays.equals(row, ((RowKey) other).row);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(row);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.util.Arrays;
+
+/**
+ * Регистровые соответствия символов без перебора всех кодовых точек: почти все символы, которые
+ * {@link Character#toLowerCase(int)} переводит в данный, получаются из него обратно через
+ * {@link Character#toUpperCase(int)} или {@link Character#toTitleCase(int)}, а немногие исключения
+ * перечислены в таблице. Таблица соответствует данным Unicode JDK 17; тесты сверяют её с полным
+ * перебором, так что расхождение после обновления JDK будет замечено.
+ */
+final class CaseFolds {
+
+    /**
+     * Символы, которые переводятся в нижний регистр, но не получаются из результата обратно:
+     * İ → i, ϴ → θ, ẞ → ß, Ω (знак ома) → ω, K (знак кельвина) → k, Å (знак ангстрема) → å.
+     */
+    private static final int[] IRREGULAR_LOWER_CASE = {0x0130, 0x03F4, 0x1E9E, 0x2126, 0x212A, 0x212B};
+
+    /**
+     * Символы, для которых перевод в верхний и затем в нижний регистр даёт не то же, что перевод
+     * сразу в нижний: ſ, ı, ς, µ, греческие символьные варианты (ϐ, ϑ, ϕ…), старые формы кириллицы
+     * (ᲀ–ᲈ) и т. п.
+     */
+    private static final int[] IRREGULAR_UPPER_CASE = {0x00B5, 0x0131, 0x017F, 0x0345, 0x03C2, 0x03D0, 0x03D1,
+        0x03D5, 0x03D6, 0x03F0, 0x03F1, 0x03F5, 0x1C80, 0x1C81, 0x1C82, 0x1C83, 0x1C84, 0x1C85, 0x1C86, 0x1C87,
+        0x1C88, 0x1E9B, 0x1FBE};
+
+    /**
+     * Символы в нижнем регистре, с которыми после перевода в верхний и затем в нижний регистр
+     * совпадают символы с разными формами в нижнем.
+     */
+    private static final int[] AMBIGUOUS_FOLDS = Arrays.stream(IRREGULAR_UPPER_CASE)
+            .map(codePoint -> Character.toLowerCase(Character.toUpperCase(codePoint)))
+            .distinct()
+            .sorted()
+            .toArray();
+
+    private CaseFolds() {
+    }
+
+    /**
+     * Все символы, которые {@link Character#toLowerCase(int)} переводит в {@code lower}.
+     */
+    static int[] lowerCaseVariants(int lower) {
+        int[] candidates = {lower, Character.toUpperCase(lower), Character.toTitleCase(lower)};
+        int[] variants = new int[candidates.length + IRREGULAR_LOWER_CASE.length];
+        int count = 0;
+        for (int candidate : candidates) {
+            count = addVariant(variants, count, candidate, lower);
+        }
+        for (int candidate : IRREGULAR_LOWER_CASE) {
+            count = addVariant(variants, count, candidate, lower);
+        }
+        return Arrays.copyOf(variants, count);
+    }
+
+    /**
+     * {@code true}, если {@link java.util.regex.Pattern#UNICODE_CASE}, сравнивающий символы после
+     * перевода в верхний и затем в нижний регистр, считает равными символу {@code codePoint}
+     * символы, которые {@link Character#toLowerCase(int)} переводит в разные: например, {@code 's'}
+     * и {@code 'ſ'}.
+     */
+    static boolean foldsAmbiguously(int codePoint) {
+        int folded = Character.toLowerCase(Character.toUpperCase(codePoint));
+        return Arrays.binarySearch(AMBIGUOUS_FOLDS, folded) >= 0;
+    }
+
+    private static int addVariant(int[] variants, int count, int candidate, int lower) {
+        if (Character.toLowerCase(candidate) != lower) {
+            return count;
+        }
+        for (int index = 0; index < count; index++) {
+            if (variants[index] == candidate) {
+                return count;
+            }
+        }
+        variants[count] = candidate;
+        return count + 1;
+    }
+}
@@ -0,0 +1,32 @@
+package ru.mai.lessons.rpks.impl;
+
+/**
+ * Разбиение файла на фрагменты фиксированного размера. Фрагменты отдаются {@link OrderedTasks}
+ * по порядку и просматриваются свободными потоками пула, поэтому быстрые потоки обрабатывают больше
+ * фрагментов, а каждый байт просматривается ровно один раз. Строка принадлежит тому фрагменту, в
+ * котором находится её первый байт.
+ */
+public class ChunkCursor {
+
+    private final long totalSize;
+    private final long chunkSize;
+    private final int chunkCount;
+
+    public ChunkCursor(long totalSize, long chunkSize) {
+        this.totalSize = totalSize;
+        this.chunkSize = chunkSize;
+        this.chunkCount = (int) ((totalSize + chunkSize - 1) / chunkSize);
+    }
+
+    public int chunkCount() {
+        return chunkCount;
+    }
+
+    public long start(int index) {
+        return index * chunkSize;
+    }
+
+    public long end(int index) {
+        return Math.min(totalSize, (index + 1) * chunkSize);
+    }
+}
@@ -0,0 +1,24 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.result.KeywordMatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Результат просмотра одного фрагмента файла: строки для вывода (совпадения вместе с контекстом)
+ * и, если нужно, описания найденных строк. {@code bytes} и {@code scanNanos} — объём и длительность
+ * просмотра для {@link SearchMetrics}; границы фрагмента нужны, чтобы повторить просмотр с меньшим
+ * ограничением числа совпадений (см. {@link ChunkScanner#limit}).
+ */
+public class ChunkResult {
+    final LineRanges ranges = new LineRanges();
+    final List<KeywordMatch> matches = new ArrayList<>();
+    long lines;
+    long matchCount;
+    long bytes;
+    long scanNanos;
+    long from;
+    long to;
+    long[] candidates;
+}
@@ -0,0 +1,217 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.ILineMatcher;
+import ru.mai.lessons.rpks.result.KeywordMatch;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Просматривает фрагмент файла строка за строкой и сразу собирает строки для вывода: последние
+ * {@code lineCount} строк держатся в {@link LineRing}, после совпадения выводятся следующие
+ * {@code lineCount} строк. Контекст может выходить за границы фрагмента; повторы на стыке
+ * фрагментов отбрасываются при записи.
+ */
+public class ChunkScanner {
+
+    private final MappedInput input;
+    private final ILineMatcher matcher;
+    private final int lineCount;
+    private final boolean reportKeywords;
+    private final LineIndex index;
+
+    public ChunkScanner(MappedInput input, ILineMatcher matcher, int lineCount, boolean reportKeywords) {
+        this(input, null, matcher, lineCount, reportKeywords);
+    }
+
+    /**
+     * @param index индекс границ строк; если он задан, переводы строк в файле не ищутся
+     */
+    public ChunkScanner(MappedInput input, LineIndex index, ILineMatcher matcher, int lineCount,
+                        boolean reportKeywords) {
+        this.input = input;
+        this.index = index;
+        this.matcher = matcher;
+        this.lineCount = lineCount;
+        this.reportKeywords = reportKeywords;
+    }
+
+    public ChunkResult scan(long startOffset, long endOffset) {
+        return scan(startOffset, endOffset, Long.MAX_VALUE);
+    }
+
+    /**
+     * Просматривает фрагмент до {@code maxMatches}-го совпадения включительно; строки контекста
+     * после него собираются как обычно.
+     */
+    public ChunkResult scan(long startOffset, long endOffset, long maxMatches) {
+        long started = System.nanoTime();
+        ChunkResult result = new ChunkResult();
+        result.from = startOffset;
+        result.to = endOffset;
+        result.bytes = endOffset - startOffset;
+        long line = index == null ? -1 : index.firstLineFrom(startOffset);
+        long lineStart = index == null ? input.alignToLine(startOffset) : lineStart(line);
+        LineRing before = new LineRing(lineCount);
+        seedBefore(before, lineStart, line);
+        int afterRemaining = 0;
+
+        while (lineStart < endOffset && result.matchCount < maxMatches) {
+            long lineEnd = lineEnd(lineStart, line++);
+            long contentEnd = input.contentEnd(lineStart, lineEnd);
+
+            if (contentEnd > lineStart) {
+                result.lines++;
+                if (matches(lineStart, contentEnd)) {
+                    result.matchCount++;
+                    before.drainTo(result.ranges);
+                    result.ranges.add(lineStart, contentEnd);
+                    afterRemaining = lineCount;
+                    if (reportKeywords) {
+                        result.matches.add(new KeywordMatch(lineStart, input.decode(lineStart, contentEnd),
+                                matchedKeywords(lineStart, contentEnd)));
+                    }
+                } else if (afterRemaining > 0) {
+                    result.ranges.add(lineStart, contentEnd);
+                    afterRemaining--;
+                } else {
+                    before.push(lineStart, contentEnd);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        while (afterRemaining > 0 && lineStart < input.size()) {
+            long lineEnd = lineEnd(lineStart, line++);
+            long contentEnd = input.contentEnd(lineStart, lineEnd);
+            if (contentEnd > lineStart) {
+                result.ranges.add(lineStart, contentEnd);
+                afterRemaining--;
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        result.scanNanos = System.nanoTime() - started;
+        return result;
+    }
+
+    /**
+     * Проверяет только строки-кандидаты {@code lines[from..to)} (номера по возрастанию, см.
+     * {@link NgramIndex}) и собирает контекст по индексу строк. Требует индекса строк. Просмотр
+     * прекращается после {@code maxMatches} совпадений.
+     */
+    public ChunkResult scanCandidates(long[] lines, int from, int to, long maxMatches) {
+        long started = System.nanoTime();
+        ChunkResult result = new ChunkResult();
+        result.candidates = lines;
+        result.from = from;
+        result.to = to;
+        long lastLine = -1;
+        for (int item = from; item < to && result.matchCount < maxMatches; item++) {
+            long line = lines[item];
+            long lineStart = index.lineStart(line);
+            long contentEnd = input.contentEnd(lineStart, index.lineEnd(line));
+            result.lines++;
+            result.bytes += contentEnd - lineStart;
+            if (contentEnd == lineStart || !matches(lineStart, contentEnd)) {
+                continue;
+            }
+            result.matchCount++;
+            if (reportKeywords) {
+                result.matches.add(new KeywordMatch(lineStart, input.decode(lineStart, contentEnd),
+                        matchedKeywords(lineStart, contentEnd)));
+            }
+
+            long first = contextLine(line, -1);
+            long last = contextLine(line, 1);
+            for (long contextLine = Math.max(first, lastLine + 1); contextLine <= last; contextLine++) {
+                long start = index.lineStart(contextLine);
+                long end = input.contentEnd(start, index.lineEnd(contextLine));
+                if (end > start) {
+                    result.ranges.add(start, end);
+                }
+            }
+            lastLine = Math.max(lastLine, last);
+        }
+        result.scanNanos = System.nanoTime() - started;
+        return result;
+    }
+
+    /**
+     * Возвращает результат, в котором не больше {@code maxMatches} совпадений: если их больше,
+     * фрагмент просматривается заново до {@code maxMatches}-го совпадения.
+     */
+    public ChunkResult limit(ChunkResult result, long maxMatches) {
+        if (result.matchCount <= maxMatches) {
+            return result;
+        }
+        return result.candidates == null
+                ? scan(result.from, result.to, maxMatches)
+                : scanCandidates(result.candidates, (int) result.from, (int) result.to, maxMatches);
+    }
+
+    /**
+     * Номер самой дальней строки контекста в направлении {@code step}: пропускает {@code lineCount}
+     * непустых строк, пустые строки не считаются.
+     */
+    private long contextLine(long line, int step) {
+        long current = line;
+        int found = 0;
+        while (found < lineCount && current + step >= 0 && current + step < index.lineCount()) {
+            current += step;
+            long start = index.lineStart(current);
+            if (input.contentEnd(start, index.lineEnd(current)) > start) {
+                found++;
+            }
+        }
+        return current;
+    }
+
+    private long lineStart(long line) {
+        return line < index.lineCount() ? index.lineStart(line) : input.size();
+    }
+
+    private long lineEnd(long lineStart, long line) {
+        return index == null ? input.lineEnd(lineStart) : index.lineEnd(line);
+    }
+
+    private void seedBefore(LineRing before, long chunkStart, long chunkLine) {
+        if (lineCount == 0) {
+            return;
+        }
+        LineRanges reversed = new LineRanges();
+        long lineStart = chunkStart;
+        long line = chunkLine;
+        int found = 0;
+        while (found < lineCount && lineStart > 0) {
+            long previousStart = index == null ? input.previousLineStart(lineStart) : index.lineStart(--line);
+            long contentEnd = input.contentEnd(previousStart, lineStart - 1);
+            if (contentEnd > previousStart) {
+                reversed.add(previousStart, contentEnd);
+                found++;
+            }
+            lineStart = previousStart;
+        }
+        for (int item = reversed.count() - 1; item >= 0; item--) {
+            before.push(reversed.start(item), reversed.end(item));
+        }
+    }
+
+    private boolean matches(long from, long to) {
+        if (input.contiguous(from, to)) {
+            int offset = input.offset(from);
+            return matcher.matches(input.buffer(from), offset, offset + (int) (to - from));
+        }
+        byte[] line = input.copy(from, to);
+        return matcher.matches(ByteBuffer.wrap(line), 0, line.length);
+    }
+
+    private List<String> matchedKeywords(long from, long to) {
+        if (input.contiguous(from, to)) {
+            int offset = input.offset(from);
+            return matcher.matchedKeywords(input.buffer(from), offset, offset + (int) (to - from));
+        }
+        byte[] line = input.copy(from, to);
+        return matcher.matchedKeywords(ByteBuffer.wrap(line), 0, line.length);
+    }
+}
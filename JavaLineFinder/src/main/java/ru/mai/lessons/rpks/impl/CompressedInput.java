@@ -0,0 +1,166 @@
+package ru.mai.lessons.rpks.impl;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Чтение сжатых входных файлов. Формат определяется по первым байтам файла, а не по расширению.
+ * <p>
+ * Файлы BGZF ({@code bgzip}) состоят из независимых gzip-блоков, размер каждого записан в его
+ * заголовке, поэтому границы блоков находятся без распаковки и блоки можно распаковывать
+ * параллельно. Обычный gzip (в том числе из нескольких частей) и zstd читаются последовательно.
+ */
+public final class CompressedInput {
+
+    public enum Format {
+        PLAIN, GZIP, ZSTD
+    }
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int FLAG_EXTRA = 0x04;
+
+    private CompressedInput() {
+    }
+
+    public static Format detect(Path path) throws IOException {
+        byte[] magic = new byte[4];
+        int read;
+        try (InputStream stream = Files.newInputStream(path)) {
+            read = stream.readNBytes(magic, 0, magic.length);
+        }
+        if (read >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return Format.GZIP;
+        }
+        if (read == 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5
+                && (magic[2] & 0xFF) == 0x2F && (magic[3] & 0xFF) == 0xFD) {
+            return Format.ZSTD;
+        }
+        return Format.PLAIN;
+    }
+
+    /**
+     * Открывает последовательный поток распакованных байтов.
+     */
+    public static InputStream open(Path path, Format format) throws IOException {
+        InputStream stream = new BufferedInputStream(Files.newInputStream(path), STREAM_BUFFER_SIZE);
+        try {
+            return switch (format) {
+                case GZIP -> new GZIPInputStream(stream, STREAM_BUFFER_SIZE);
+                case ZSTD -> new ZstdInputStream(stream);
+                case PLAIN -> stream;
+            };
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Возвращает смещения начал всех блоков BGZF и, последним элементом, размер файла или
+     * {@code null}, если файл не является BGZF целиком.
+     */
+    public static long[] bgzfBlocks(MappedInput input) {
+        long[] blocks = new long[64];
+        int count = 0;
+        long position = 0;
+        while (position < input.size()) {
+            int blockSize = bgzfBlockSize(input, position);
+            if (blockSize < 0 || position + blockSize > input.size()) {
+                return null;
+            }
+            if (count == blocks.length) {
+                blocks = Arrays.copyOf(blocks, count * 2);
+            }
+            blocks[count++] = position;
+            position += blockSize;
+        }
+        blocks = Arrays.copyOf(blocks, count + 1);
+        blocks[count] = position;
+        return blocks;
+    }
+
+    private static int bgzfBlockSize(MappedInput input, long position) {
+        if (position + GZIP_HEADER_SIZE + 2 > input.size() || (input.get(position) & 0xFF) != 0x1F
+                || (input.get(position + 1) & 0xFF) != 0x8B || input.get(position + 2) != 8
+                || (input.get(position + 3) & FLAG_EXTRA) == 0) {
+            return -1;
+        }
+        int extraLength = unsignedShort(input, position + GZIP_HEADER_SIZE);
+        long extraEnd = position + GZIP_HEADER_SIZE + 2 + extraLength;
+        long field = position + GZIP_HEADER_SIZE + 2;
+        while (field + 4 <= extraEnd && extraEnd <= input.size()) {
+            int fieldLength = unsignedShort(input, field + 2);
+            if (input.get(field) == 'B' && input.get(field + 1) == 'C' && fieldLength == 2) {
+                return unsignedShort(input, field + 4) + 1;
+            }
+            field += 4 + fieldLength;
+        }
+        return -1;
+    }
+
+    /**
+     * Распаковывает подряд идущие блоки BGZF {@code blocks[from..to)} в один массив и сверяет
+     * контрольные суммы блоков.
+     */
+    public static byte[] inflateBlocks(MappedInput input, long[] blocks, int from, int to) throws IOException {
+        int totalSize = 0;
+        for (int block = from; block < to; block++) {
+            totalSize += littleEndianInt(input, blocks[block + 1] - Integer.BYTES);
+        }
+
+        byte[] result = new byte[totalSize];
+        int written = 0;
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        try {
+            for (int block = from; block < to; block++) {
+                long start = blocks[block];
+                long end = blocks[block + 1];
+                long dataStart = start + GZIP_HEADER_SIZE + 2 + unsignedShort(input, start + GZIP_HEADER_SIZE);
+                int size = littleEndianInt(input, end - Integer.BYTES);
+
+                inflater.reset();
+                inflater.setInput(input.copy(dataStart, end - GZIP_TRAILER_SIZE));
+                int inflated = 0;
+                while (inflated < size && !inflater.finished()) {
+                    int count = inflater.inflate(result, written + inflated, size - inflated);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += count;
+                }
+                crc.reset();
+                crc.update(result, written, inflated);
+                if (inflated != size || (int) crc.getValue() != littleEndianInt(input, end - GZIP_TRAILER_SIZE)) {
+                    throw new IOException("Corrupted gzip block at offset " + start);
+                }
+                written += size;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted gzip block: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    private static int littleEndianInt(MappedInput input, long position) {
+        return unsignedShort(input, position) | unsignedShort(input, position + 2) << 16;
+    }
+
+    private static int unsignedShort(MappedInput input, long position) {
+        return (input.get(position) & 0xFF) | (input.get(position + 1) & 0xFF) << 8;
+    }
+}
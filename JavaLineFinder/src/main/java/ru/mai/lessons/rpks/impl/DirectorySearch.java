@@ -0,0 +1,350 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.ILineMatcher;
+import ru.mai.lessons.rpks.exception.SearchTimeoutException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Поиск по всем файлам дерева каталогов за один запуск. Работа разделена на три стадии:
+ * <ul>
+ *     <li>обход дерева — вызывающий поток находит файлы в порядке сортировки путей, отображает их
+ *     в память и режет на фрагменты;</li>
+ *     <li>просмотр — фрагменты всех файлов выполняются задачами на исполнителе запроса, поэтому
+ *     мелкие файлы обрабатываются параллельно друг с другом, а крупные делятся между ядрами;</li>
+ *     <li>запись — результаты выводятся файл за файлом по порядку в том же вызывающем потоке,
+ *     как только окно {@link OrderedTasks} заполнено.</li>
+ * </ul>
+ * Архив нельзя разрезать на независимые фрагменты, поэтому он просматривается частями по порядку
+ * (см. {@link ArchiveScan}): задача распаковывает архив, пока вывод части не заполнит буфер, а шаг
+ * записи копирует часть в вывод и отправляет задачу следующей части. Открыты только файлы,
+ * фрагменты или части которых ещё в работе, поэтому память и число открытых файлов ограничены
+ * окном запроса. Задачи просмотра ничего не ждут, и исполнитель может быть общим. Вывод каждого
+ * файла с совпадениями начинается строкой {@code ==> путь <==}.
+ * <p>
+ * Ограничение числа совпадений общее для всех файлов: когда оно достигнуто, обход дерева
+ * прекращается, а задачи ещё не записанных фрагментов отменяются. Файлы, последний фрагмент которых
+ * так и не записан, закрываются в конце {@link #run}.
+ */
+class DirectorySearch {
+
+    private final QueryContext context;
+    private final SearchMetrics metrics;
+    private final ILineMatcher matcher;
+    private final int lineCount;
+    private final MatchLimit limit;
+    private final long chunkSize;
+    private final int bufferSize;
+    private final List<Path> excluded;
+    private final List<Closeable> openFiles = new ArrayList<>();
+
+    DirectorySearch(QueryContext context, SearchMetrics metrics, ILineMatcher matcher, int lineCount,
+                    MatchLimit limit, long chunkSize, int bufferSize, List<Path> excluded) {
+        this.context = context;
+        this.metrics = metrics;
+        this.matcher = matcher;
+        this.lineCount = lineCount;
+        this.limit = limit;
+        this.chunkSize = chunkSize;
+        this.bufferSize = bufferSize;
+        this.excluded = excluded;
+    }
+
+    /**
+     * @param glob шаблон пути относительно {@code root} (синтаксис
+     *             {@link java.nio.file.FileSystem#getPathMatcher}) или {@code null} для всех файлов
+     */
+    void run(Path root, String glob, RangeOutput output) throws Exception {
+        PathMatcher pathMatcher = glob == null ? null : root.getFileSystem().getPathMatcher("glob:" + glob);
+        try (OrderedTasks<Step> tasks = context.orderedTasks(step -> {
+            step.write();
+            metrics.progress();
+        }, limit::reached)) {
+            walk(root, root, pathMatcher, tasks, output);
+            tasks.finish();
+        } finally {
+            closeFiles();
+        }
+    }
+
+    /**
+     * Закрывает файлы, последний фрагмент или последняя часть которых так и не были записаны: поиск
+     * остановлен ограничением числа совпадений, сроком запроса или ошибкой.
+     */
+    private void closeFiles() throws IOException {
+        IOException failure = null;
+        for (Closeable file : openFiles) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        openFiles.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Обходит каталог в глубину, каждый каталог — в порядке сортировки имён, поэтому порядок файлов
+     * в выводе не зависит от файловой системы.
+     */
+    private void walk(Path root, Path directory, PathMatcher pathMatcher, OrderedTasks<Step> tasks,
+                      RangeOutput output) throws Exception {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(entries::add);
+        }
+        entries.sort(null);
+
+        for (Path entry : entries) {
+            if (tasks.isStopped()) {
+                return;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Search interrupted");
+            }
+            if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                walk(root, entry, pathMatcher, tasks, output);
+            } else if (Files.isRegularFile(entry) && isSearched(root, entry, pathMatcher)) {
+                submitFile(entry, tasks, output);
+            }
+        }
+    }
+
+    private boolean isSearched(Path root, Path file, PathMatcher pathMatcher) throws IOException {
+        String name = file.getFileName().toString();
+        if (name.endsWith(LineIndex.SUFFIX) || name.endsWith(NgramIndex.SUFFIX)) {
+            return false;
+        }
+        for (Path path : excluded) {
+            if (Files.exists(path) && Files.isSameFile(path, file)) {
+                return false;
+            }
+        }
+        return pathMatcher == null || pathMatcher.matches(root.relativize(file));
+    }
+
+    private void submitFile(Path path, OrderedTasks<Step> tasks, RangeOutput output) throws Exception {
+        HeaderOutputStream fileOutput = new HeaderOutputStream(output, ("==> " + path + " <==\n")
+                .getBytes(StandardCharsets.UTF_8));
+        CompressedInput.Format format = CompressedInput.detect(path);
+        if (format != CompressedInput.Format.PLAIN) {
+            ArchiveScan archive = new ArchiveScan(path, format, fileOutput, tasks, limit.remaining());
+            tasks.submit(archive::scanPart);
+            return;
+        }
+
+        MappedInput input = new MappedInput(path);
+        ChunkScanner scanner = new ChunkScanner(input, matcher, lineCount, false);
+        ChunkCursor cursor = new ChunkCursor(input.size(), chunkSize);
+        if (cursor.chunkCount() == 0) {
+            input.close();
+            return;
+        }
+        openFiles.add(input);
+        long[] lastWritten = {-1};
+        for (int chunk = 0; chunk < cursor.chunkCount() && !tasks.isStopped(); chunk++) {
+            long start = cursor.start(chunk);
+            long end = cursor.end(chunk);
+            boolean last = chunk == cursor.chunkCount() - 1;
+            long maxMatches = limit.remaining();
+            tasks.submit(() -> {
+                ChunkResult scanned = metrics.scanned(scanner.scan(start, end, maxMatches));
+                return () -> {
+                    ChunkResult result = scanner.limit(scanned, limit.remaining());
+                    limit.confirm(result.matchCount);
+                    metrics.recordMatches(result.matchCount);
+                    lastWritten[0] = metrics.io(() -> fileOutput.writeRanges(input, result.ranges, lastWritten[0]));
+                    if (last) {
+                        openFiles.remove(input);
+                        input.close();
+                    }
+                };
+            });
+        }
+    }
+
+    /**
+     * Распаковывает и просматривает архив, записывая найденные строки в {@code output}; возвращает
+     * число совпадений. Как и просмотр архива в {@link LineFinder}, прекращается при прерывании
+     * потока (отмене задачи) и по истечении срока запроса.
+     */
+    private long scanCompressed(Path path, CompressedInput.Format format, OutputStream output, long maxMatches)
+            throws Exception {
+        StreamLineScanner scanner = new StreamLineScanner(matcher, lineCount, output, null, 0);
+        scanner.setMaxMatches(maxMatches);
+        byte[] buffer = new byte[bufferSize];
+        try (InputStream stream = CompressedInput.open(path, format)) {
+            for (int read = metrics.io(() -> stream.read(buffer)); read >= 0 && !scanner.isDone();
+                 read = metrics.io(() -> stream.read(buffer))) {
+                checkCancelled();
+                metrics.feed(scanner, buffer, read);
+            }
+        }
+        metrics.feed(scanner, null, 0);
+        return scanner.matchCount();
+    }
+
+    private void checkCancelled() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Search interrupted");
+        }
+        if (context.remainingNanos() == 0) {
+            throw new SearchTimeoutException("Search timed out after " + context.timeoutMillis() + " ms");
+        }
+    }
+
+    /**
+     * Запись результата одной задачи; выполняется в вызывающем потоке строго по порядку.
+     */
+    private interface Step {
+        void write() throws Exception;
+    }
+
+    /**
+     * Просмотр одного архива частями. Задача части ({@link #scanPart}) распаковывает архив, пока
+     * вывод части не дорастёт до размера буфера, и возвращает шаг записи. Шаг копирует часть в
+     * вывод и, если архив не закончен, отправляет задачу следующей части через
+     * {@link OrderedTasks#submitNext}, так что её результат записывается сразу следом. Части одного
+     * архива выполняются строго друг за другом, а в памяти держится только текущая часть.
+     * <p>
+     * Первая часть просматривается с ограничением числа совпадений, оставшимся на момент отправки.
+     * На шаге записи ограничение уточняется до оставшегося на этот момент, а совпадения архива
+     * подтверждаются все сразу после его последней части, чтобы контекст после последнего нужного
+     * совпадения не отменялся вместе с остальными задачами.
+     */
+    private class ArchiveScan {
+        private final Path path;
+        private final CompressedInput.Format format;
+        private final HeaderOutputStream fileOutput;
+        private final OrderedTasks<Step> tasks;
+        private final InputStream stream;
+        private final ByteArrayOutputStream part = new ByteArrayOutputStream();
+        private final StreamLineScanner scanner;
+        private final byte[] buffer = new byte[bufferSize];
+        private boolean ended;
+        private long writtenMatches;
+
+        ArchiveScan(Path path, CompressedInput.Format format, HeaderOutputStream fileOutput,
+                    OrderedTasks<Step> tasks, long maxMatches) throws Exception {
+            this.path = path;
+            this.format = format;
+            this.fileOutput = fileOutput;
+            this.tasks = tasks;
+            this.stream = metrics.io(() -> CompressedInput.open(path, format));
+            openFiles.add(stream);
+            this.scanner = new StreamLineScanner(matcher, lineCount, part, null, 0);
+            scanner.setMaxMatches(maxMatches);
+        }
+
+        /**
+         * Задача: просматривает следующую часть архива.
+         */
+        Step scanPart() throws Exception {
+            while (!ended && !scanner.isDone() && part.size() < bufferSize) {
+                checkCancelled();
+                int read = metrics.io(() -> stream.read(buffer));
+                if (read < 0) {
+                    metrics.feed(scanner, null, 0, false);
+                    ended = true;
+                } else {
+                    metrics.feed(scanner, buffer, read, false);
+                }
+            }
+            return this::writePart;
+        }
+
+        private void writePart() throws Exception {
+            long remaining = limit.remaining();
+            if (scanner.matchCount() > remaining) {
+                // Предел исчерпан предыдущими файлами уже после отправки первой части: её вывод
+                // нельзя обрезать по числу совпадений, поэтому архив просматривается заново.
+                close();
+                limit.confirm(scanCompressed(path, format, fileOutput, remaining));
+                return;
+            }
+            scanner.setMaxMatches(remaining);
+            if (part.size() > 0) {
+                metrics.io(() -> {
+                    part.writeTo(fileOutput);
+                    return null;
+                });
+                part.reset();
+            }
+            metrics.recordMatches(scanner.matchCount() - writtenMatches);
+            writtenMatches = scanner.matchCount();
+            if (ended || scanner.isDone()) {
+                close();
+                limit.confirm(scanner.matchCount());
+            } else {
+                tasks.submitNext(this::scanPart);
+            }
+        }
+
+        private void close() throws IOException {
+            openFiles.remove(stream);
+            stream.close();
+        }
+    }
+
+    /**
+     * Пишет заголовок файла перед первым байтом его вывода, поэтому файлы без совпадений в вывод
+     * не попадают.
+     */
+    private static class HeaderOutputStream extends OutputStream {
+        private final RangeOutput output;
+        private byte[] header;
+
+        HeaderOutputStream(RangeOutput output, byte[] header) {
+            this.output = output;
+            this.header = header;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            writeHeader();
+            output.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            writeHeader();
+            output.write(b, off, len);
+        }
+
+        long writeRanges(MappedInput input, LineRanges ranges, long lastWritten) throws IOException {
+            if (ranges.endsAfter(lastWritten)) {
+                writeHeader();
+            }
+            return ranges.writeTo(input, output, lastWritten);
+        }
+
+        private void writeHeader() throws IOException {
+            if (header != null) {
+                output.write(header);
+                header = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.ILineMatcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Поиск ключевого слова прямо в байтах UTF-8 без декодирования строки, по умолчанию
+ * регистронезависимый. Кандидаты отбираются по первому байту (с учётом всех регистров первого
+ * символа), после чего совпадение проверяется посимвольно. В режиме целого слова вхождение
+ * засчитывается, только если по обе стороны от него нет букв, цифр и {@code '_'}.
+ */
+public class KeywordMatcher implements ILineMatcher {
+
+    private static final boolean VECTOR_API_AVAILABLE =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    protected final int[] keyword;
+    protected final int[] firstVariants;
+    protected final boolean[] leadBytes = new boolean[256];
+    private final boolean caseSensitive;
+    private final boolean wholeWord;
+
+    public KeywordMatcher(String keyWord) {
+        this(keyWord, false, false);
+    }
+
+    public KeywordMatcher(String keyWord, boolean caseSensitive, boolean wholeWord) {
+        this.caseSensitive = caseSensitive;
+        this.wholeWord = wholeWord;
+        this.keyword = keyWord.codePoints().map(this::fold).toArray();
+        int first = keyword[0];
+        this.firstVariants = caseSensitive ? new int[] {first} : CaseFolds.lowerCaseVariants(first);
+        for (int variant : firstVariants) {
+            leadBytes[leadByte(variant)] = true;
+        }
+    }
+
+    /**
+     * Возвращает {@link VectorKeywordMatcher}, если модуль {@code jdk.incubator.vector} подключён к
+     * JVM, иначе скалярную реализацию.
+     */
+    public static KeywordMatcher create(String keyWord) {
+        return create(keyWord, false, false);
+    }
+
+    public static KeywordMatcher create(String keyWord, boolean caseSensitive, boolean wholeWord) {
+        if (VECTOR_API_AVAILABLE) {
+            return new VectorKeywordMatcher(keyWord, caseSensitive, wholeWord);
+        }
+        return new KeywordMatcher(keyWord, caseSensitive, wholeWord);
+    }
+
+    @Override
+    public boolean matches(ByteBuffer buffer, int from, int to) {
+        int position = indexOf(buffer, from, to);
+        while (wholeWord && position >= 0 && !isWholeWord(buffer, from, position, to)) {
+            position = indexOf(buffer, position + 1, to);
+        }
+        return position >= 0;
+    }
+
+    /**
+     * Возвращает позицию первого вхождения ключевого слова в buffer[from, to) или -1.
+     */
+    public int indexOf(ByteBuffer buffer, int from, int to) {
+        int last = to - keyword.length;
+        for (int position = from; position <= last; position++) {
+            if (leadBytes[buffer.get(position) & 0xFF] && matchesAt(buffer, position, to)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    protected boolean matchesAt(ByteBuffer buffer, int position, int to) {
+        return matchEnd(buffer, position, to) >= 0;
+    }
+
+    /**
+     * Возвращает конец вхождения ключевого слова, начинающегося в {@code position}, или -1.
+     */
+    private int matchEnd(ByteBuffer buffer, int position, int to) {
+        int current = position;
+        for (int expected : keyword) {
+            if (current >= to) {
+                return -1;
+            }
+            long decoded = Utf8.decode(buffer, current, to);
+            if (decoded < 0 || fold(Utf8.codePoint(decoded)) != expected) {
+                return -1;
+            }
+            current += Utf8.length(decoded);
+        }
+        return current;
+    }
+
+    private boolean isWholeWord(ByteBuffer buffer, int from, int position, int to) {
+        int previous = position - 1;
+        while (previous > from && (buffer.get(previous) & 0xC0) == 0x80) {
+            previous--;
+        }
+        if (previous >= from) {
+            long decoded = Utf8.decode(buffer, previous, position);
+            if (decoded >= 0 && isWordCharacter(Utf8.codePoint(decoded))) {
+                return false;
+            }
+        }
+        int end = matchEnd(buffer, position, to);
+        if (end < to) {
+            long decoded = Utf8.decode(buffer, end, to);
+            return decoded < 0 || !isWordCharacter(Utf8.codePoint(decoded));
+        }
+        return true;
+    }
+
+    static boolean isWordCharacter(int codePoint) {
+        return Character.isLetterOrDigit(codePoint) || codePoint == '_';
+    }
+
+    private int fold(int codePoint) {
+        return caseSensitive ? codePoint : Character.toLowerCase(codePoint);
+    }
+
+    protected static int leadByte(int codePoint) {
+        if (codePoint < 0x80) {
+            return codePoint;
+        } else if (codePoint < 0x800) {
+            return 0xC0 | (codePoint >>> 6);
+        } else if (codePoint < 0x10000) {
+            return 0xE0 | (codePoint >>> 12);
+        }
+        return 0xF0 | (codePoint >>> 18);
+    }
+}
@@ -1,219 +1,480 @@
 package ru.mai.lessons.rpks.impl;
 
 import ru.mai.lessons.rpks.ILineFinder;
+import ru.mai.lessons.rpks.ILineMatcher;
+import ru.mai.lessons.rpks.ISearchMetricsListener;
+import ru.mai.lessons.rpks.ISearchMetricsMXBean;
 import ru.mai.lessons.rpks.exception.LineCountShouldBePositiveException;
-
-import java.io.*;
-import java.nio.charset.StandardCharsets;
+import ru.mai.lessons.rpks.exception.SearchTimeoutException;
+import ru.mai.lessons.rpks.query.SearchQuery;
+import ru.mai.lessons.rpks.result.KeywordMatch;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class LineFinder implements ILineFinder {
 
     private final int THREADS_COUNT = Runtime.getRuntime().availableProcessors();
-    private static final int BUFF_SIZE = 1024;
+    private static final long CHUNK_SIZE = 4L * 1024 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final long COMPRESSED_BATCH_SIZE = 1024 * 1024;
+
+    private final ExecutorService executor;
+    private int parallelism = THREADS_COUNT;
+    private long queryTimeoutMillis;
+    private boolean lineIndexEnabled;
+    private boolean ngramIndexEnabled;
+    private ISearchMetricsListener metricsListener;
+
+    /**
+     * Каждый запрос создаёт и останавливает собственный пул из {@code parallelism} потоков.
+     */
+    public LineFinder() {
+        this(null);
+    }
 
-    private Set<Long> processFile(String filePath, String searchKeyword, int maxLines,
-                                  ExecutorService threadPool) throws Exception {
-        String searchKeywordLower = searchKeyword.toLowerCase();
-        long totalFileSize = getFileSize(filePath);
-        List<List<Long>> fileBlocks = createFileBlocks(totalFileSize);
+    /**
+     * Все запросы выполняются на переданном исполнителе, например {@link #sharedExecutor()} или
+     * {@link #newVirtualThreadExecutor()}. Исполнитель может быть общим для параллельных запросов;
+     * {@code LineFinder} его не останавливает.
+     */
+    public LineFinder(ExecutorService executor) {
+        this.executor = executor;
+    }
 
-        AtomicInteger progressCounter = new AtomicInteger(0);
-        AtomicInteger matchCounter = new AtomicInteger(0);
-        List<Future<Set<Long>>> futureResults = new ArrayList<>();
+    /**
+     * Общий для всего процесса пул из daemon-потоков по числу ядер, создаётся при первом обращении.
+     */
+    public static ExecutorService sharedExecutor() {
+        return SharedExecutorHolder.EXECUTOR;
+    }
 
-        for (int threadIndex = 0; threadIndex < THREADS_COUNT; threadIndex++) {
-            futureResults.add(threadPool.submit(() -> processFileBlock(fileBlocks, filePath, searchKeywordLower, progressCounter, matchCounter, maxLines)));
+    /**
+     * Исполнитель «виртуальный поток на задачу» (Java 21+), удобный для поиска по множеству мелких
+     * файлов, когда время уходит на ввод-вывод. На более старых JVM возвращает пул daemon-потоков,
+     * растущий по мере надобности. Останавливать исполнитель должен вызывающий.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(LineFinder::newDaemonThread);
         }
+    }
 
-        return consolidateResults(futureResults);
+    private static Thread newDaemonThread(Runnable task) {
+        Thread thread = new Thread(task, "line-finder");
+        thread.setDaemon(true);
+        return thread;
     }
 
-    private List<List<Long>> createFileBlocks(long totalSize) {
-        List<List<Long>> blocks = new ArrayList<>();
+    private static class SharedExecutorHolder {
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), LineFinder::newDaemonThread);
+    }
 
-        for (long position = 0; position < totalSize; position += BUFF_SIZE) {
-            long blockEnd = Math.min(position + BUFF_SIZE, totalSize);
-            blocks.add(List.of(position, blockEnd));
+    /**
+     * Сколько задач одного запроса выполняются одновременно; в работе держится вдвое больше.
+     * По умолчанию — число ядер; для исполнителя на виртуальных потоках и медленного диска имеет
+     * смысл больше.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism should be positive.");
         }
-
-        return blocks;
+        this.parallelism = parallelism;
     }
 
-    private Set<Long> processFileBlock(List<List<Long>> blocks, String filePath, String searchKeyword,
-                                       AtomicInteger progress, AtomicInteger matchedCount, int maxLines) throws Exception {
-        Set<Long> foundLinePositions = new TreeSet<>();
-
-        for (List<Long> block : blocks) {
-            long startPosition = block.get(0);
-            long endPosition = block.get(1);
-            Set<Long> currentLines = findKeywordInLines(progress, matchedCount, filePath, searchKeyword, startPosition, endPosition, maxLines);
-            foundLinePositions.addAll(currentLines);
+    /**
+     * Наибольшая длительность одного запроса в миллисекундах, 0 — без ограничения. По истечении
+     * срока незавершённые задачи отменяются и выбрасывается {@link SearchTimeoutException}. Запрос
+     * также отменяется прерыванием вызвавшего его потока.
+     */
+    public void setQueryTimeout(long queryTimeoutMillis) {
+        if (queryTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Query timeout shouldn't be negative.");
         }
+        this.queryTimeoutMillis = queryTimeoutMillis;
+    }
 
-        synchronized (System.out) {
-            printProgress(progress.get(), matchedCount.get());
-        }
+    /**
+     * Включает индекс границ строк рядом с входным файлом (см. {@link LineIndex}). Полезно при
+     * повторных запросах к одному и тому же большому файлу, который только дописывается. Если
+     * индекс нельзя прочитать или записать, файл просматривается без него.
+     */
+    public void setLineIndexEnabled(boolean lineIndexEnabled) {
+        this.lineIndexEnabled = lineIndexEnabled;
+    }
 
-        return foundLinePositions;
+    /**
+     * Включает индекс триграмм рядом с входным файлом (см. {@link NgramIndex}); вместе с ним всегда
+     * используется индекс границ строк. Для одного ключевого слова из трёх и более символов
+     * проверяются только строки-кандидаты, остальные запросы просматривают файл целиком.
+     */
+    public void setNgramIndexEnabled(boolean ngramIndexEnabled) {
+        this.ngramIndexEnabled = ngramIndexEnabled;
     }
 
-    private void printProgress(int processed, int matchesFound) {
-        System.out.printf("Processed: %d, matches found %d\n", processed,  matchesFound);
+    /**
+     * Получатель статистики запросов (см. {@link ISearchMetricsListener}) или {@code null}.
+     * Вызывается в потоке запроса после записи каждого фрагмента и по завершении запроса.
+     */
+    public void setMetricsListener(ISearchMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
     }
 
-    private Set<Long> consolidateResults(List<Future<Set<Long>>> futures) throws Exception {
-        Set<Long> aggregatedResults = new TreeSet<>();
+    /**
+     * Общие для процесса счётчики всех запросов.
+     */
+    public static ISearchMetricsMXBean totalMetrics() {
+        return SearchMetrics.total();
+    }
 
-        for (Future<Set<Long>> future : futures) {
-            try {
-                aggregatedResults.addAll(future.get());
-            } catch (InterruptedException | ExecutionException e) {
-                throw new Exception("Error combining results: " + e.getMessage(), e);
-            }
+    /**
+     * Публикует {@link #totalMetrics()} в платформенном MBeanServer под именем
+     * {@code ru.mai.lessons.rpks:type=LineFinder}; повторный вызов ничего не делает.
+     */
+    public static ObjectName registerMXBean() {
+        try {
+            return SearchMetrics.register();
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register MXBean: " + e.getMessage(), e);
         }
-
-        return aggregatedResults;
     }
 
-    private Set<Long> findKeywordInLines(AtomicInteger progressTracker, AtomicInteger matchCounter,
-                                          String path, String searchTerm, long startOffset, long endOffset, int limitLines) throws Exception {
-        Set<Long> matchedLines = new TreeSet<>();
-
-        try (RandomAccessFile accessFile = new RandomAccessFile(path, "r")) {
-            accessFile.seek(startOffset);
-            if (startOffset != 0) {
-                accessFile.readLine();
-            }
-
-            List<Long> lineOffsets = new ArrayList<>();
-
-            while (accessFile.getFilePointer() < endOffset) {
-                long currentOffset = accessFile.getFilePointer();
-                String lineContent = accessFile.readLine();
-                String decodedLine = lineContent != null ? new String(lineContent.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8) : "";
-
-                if (!decodedLine.isEmpty()) {
-                    lineOffsets.add(currentOffset);
-                    if (decodedLine.toLowerCase().contains(searchTerm)) {
-                        matchCounter.incrementAndGet();
-                        Set<Long> positions = addResultInSet(limitLines, lineOffsets, accessFile, currentOffset);
-                        matchedLines.addAll(positions);
-                    }
-                    progressTracker.incrementAndGet();
-                }
-            }
-        } catch (IOException e) {
-            throw new Exception("error: " + e.getMessage(), e);
+    private QueryContext newQueryContext() {
+        if (executor != null) {
+            return new QueryContext(executor, false, parallelism, queryTimeoutMillis);
         }
-
-        return matchedLines;
+        return new QueryContext(Executors.newFixedThreadPool(parallelism), true, parallelism, queryTimeoutMillis);
     }
 
-    private long getFileSize(String filename) throws Exception {
+    private void writeInformationInEmptyFile(String file) {
         try {
-            File file = new File(filename);
-            return file.length();
-        } catch (SecurityException e) {
-            throw new Exception("Access to the file is denied: " + e.getMessage(), e);
-        } catch (Exception e) {
-            throw new Exception("An error occurred while accessing the file: " + e.getMessage(), e);
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.write(" ");
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to write information in file: " + e.getMessage(), e);
         }
     }
 
-    private Set<Long> addResultInSet(int limit, List<Long> recordedPositions, RandomAccessFile accessFile, long currentPosition) throws IOException {
-        Set<Long> accumulatedResults = new TreeSet<>();
-
-        for (int index = recordedPositions.size() - 1; index >= Math.max(0, recordedPositions.size() - limit - 1); index--) {
-            accumulatedResults.add(recordedPositions.get(index));
+    @Override
+    public void find(String inputFilename, String outputFilename, String keyWord, int lineCount) throws LineCountShouldBePositiveException {
+        if (lineCount < 0) {
+            throw new LineCountShouldBePositiveException("Line count should be positive.");
         }
+        if (keyWord == null || keyWord.isEmpty()) {
+            writeInformationInEmptyFile(outputFilename);
+            return;
+        }
+        validateFilenames(inputFilename, outputFilename);
 
-        accumulatedResults.add(currentPosition);
-
-        long filePointer = accessFile.getFilePointer();
+        search(inputFilename, outputFilename, keyWord, KeywordMatcher.create(keyWord), lineCount, null, 0);
+    }
 
-        for (int index = 0; index < limit; index++) {
-            if (accessFile.readLine() != null) {
-                accumulatedResults.add(filePointer);
-                filePointer = accessFile.getFilePointer();
-            }
+    @Override
+    public void find(String inputFilename, String outputFilename, Collection<String> keyWords, int lineCount,
+                     Consumer<KeywordMatch> matchListener) throws LineCountShouldBePositiveException {
+        if (lineCount < 0) {
+            throw new LineCountShouldBePositiveException("Line count should be positive.");
         }
+        List<String> distinctKeyWords = keyWords == null ? List.of() : keyWords.stream()
+                .filter(keyWord -> keyWord != null && !keyWord.isEmpty())
+                .distinct()
+                .toList();
+        if (distinctKeyWords.isEmpty()) {
+            writeInformationInEmptyFile(outputFilename);
+            return;
+        }
+        validateFilenames(inputFilename, outputFilename);
 
-        accessFile.seek(filePointer);
-
-        return accumulatedResults;
+        String singleKeyWord = distinctKeyWords.size() == 1 ? distinctKeyWords.get(0) : null;
+        search(inputFilename, outputFilename, singleKeyWord, new AhoCorasickMatcher(distinctKeyWords), lineCount,
+                matchListener, 0);
     }
 
-    private void writeInformationInFile(String filename, List<String> lines) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            for (String line : lines) {
-                writer.write(line);
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Failed to write information in file: " + e.getMessage(), e);
+    /**
+     * Для регулярного выражения индекс триграмм (если включён) строится по его литеральному
+     * префиксу, см. {@link RegexMatcher#literalPrefix()}. При ограничении
+     * {@link SearchQuery#maxMatches(int)} просмотр прекращается, как только подтверждено нужное
+     * число совпадений, а задачи дальнейших фрагментов отменяются.
+     */
+    @Override
+    public void find(String inputFilename, String outputFilename, SearchQuery query, int lineCount)
+            throws LineCountShouldBePositiveException {
+        if (lineCount < 0) {
+            throw new LineCountShouldBePositiveException("Line count should be positive.");
+        }
+        if (query == null || query.getPattern() == null || query.getPattern().isEmpty()) {
+            writeInformationInEmptyFile(outputFilename);
+            return;
         }
+        validateFilenames(inputFilename, outputFilename);
+
+        ILineMatcher matcher = createMatcher(query);
+        String requiredLiteral = matcher instanceof RegexMatcher regexMatcher
+                ? regexMatcher.literalPrefix() : query.getPattern();
+        search(inputFilename, outputFilename, requiredLiteral, matcher, lineCount, null, query.getMaxMatches());
     }
 
-    private void writeInformationInEmptyFile(String file) {
-        try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-            writer.write(" ");
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Failed to write information in file: " + e.getMessage(), e);
+    /**
+     * Ищет во всех файлах каталога {@code directory} и его подкаталогов (см. {@link DirectorySearch}).
+     * Результаты записываются в один выходной файл, сгруппированными по файлам в порядке сортировки
+     * путей; группа начинается строкой {@code ==> путь <==}. Индексы строк и триграмм не используются.
+     * Ограничение {@link SearchQuery#maxMatches(int)} действует на все файлы вместе.
+     *
+     * @param glob шаблон пути относительно каталога, например {@code **.log}, или {@code null}
+     */
+    @Override
+    public void findInDirectory(String directory, String glob, String outputFilename, SearchQuery query,
+                                int lineCount) throws LineCountShouldBePositiveException {
+        if (lineCount < 0) {
+            throw new LineCountShouldBePositiveException("Line count should be positive.");
+        }
+        if (query == null || query.getPattern() == null || query.getPattern().isEmpty()) {
+            writeInformationInEmptyFile(outputFilename);
+            return;
+        }
+        validateFilenames(directory, outputFilename);
+        Path root = Path.of(directory);
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException("Input should be a directory: " + directory);
+        }
+
+        ILineMatcher matcher = createMatcher(query);
+        SearchMetrics metrics = SearchMetrics.start(directory, metricsListener);
+        try (QueryContext context = newQueryContext();
+             RangeOutput output = new RangeOutput(Path.of(outputFilename), false, OUTPUT_BUFFER_SIZE)) {
+            new DirectorySearch(context, metrics, matcher, lineCount, new MatchLimit(query.getMaxMatches()),
+                    CHUNK_SIZE, OUTPUT_BUFFER_SIZE, List.of(Path.of(outputFilename))).run(root, glob, output);
+        } catch (SearchTimeoutException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error processing directory", e);
+        } finally {
+            metrics.finish();
         }
     }
 
-    private List<String> doStringsTogether(String filename, Set<Long> positions) throws Exception {
-        List<String> result = new ArrayList<>();
-        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
-            for (Long start : positions) {
-                file.seek(start);
-                String scan = file.readLine();
-                String line = scan != null ? new String(scan.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8) : "";
-                if (!line.isEmpty()) {
-                    result.add(line);
-                }
-            }
-        } catch (IOException e) {
-            throw new Exception("Error with read file: " + e.getMessage(), e);
+    private ILineMatcher createMatcher(SearchQuery query) {
+        if (query.isRegex()) {
+            return new RegexMatcher(query.getPattern(), query.isCaseSensitive(), query.isWholeWord());
         }
-        return result;
+        return KeywordMatcher.create(query.getPattern(), query.isCaseSensitive(), query.isWholeWord());
     }
 
-    @Override
-    public void find(String inputFilename, String outputFilename, String keyWord, int lineCount) throws LineCountShouldBePositiveException {
+    /**
+     * Создаёт слежение за дописываемым файлом (см. {@link LineFollower}): строки с ключевым словом и
+     * их контекст записываются в выходной файл по мере появления. Для запуска вызовите
+     * {@link LineFollower#follow(long)} или периодически {@link LineFollower#poll()}.
+     *
+     * @param startOffset 0, чтобы сначала обработать весь файл, или {@link LineFollower#offset()}
+     *                    прошлого слежения, чтобы продолжить с того же места
+     */
+    public LineFollower follow(String inputFilename, String outputFilename, String keyWord, int lineCount,
+                               long startOffset) throws LineCountShouldBePositiveException {
         if (lineCount < 0) {
             throw new LineCountShouldBePositiveException("Line count should be positive.");
         }
         if (keyWord == null || keyWord.isEmpty()) {
-            writeInformationInEmptyFile(outputFilename);
-            return;
+            throw new IllegalArgumentException("Key word shouldn't be empty.");
         }
+        validateFilenames(inputFilename, outputFilename);
+
+        try {
+            return new LineFollower(inputFilename, outputFilename, KeywordMatcher.create(keyWord), lineCount, null,
+                    startOffset);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to open output file: " + e.getMessage(), e);
+        }
+    }
+
+    private void validateFilenames(String inputFilename, String outputFilename) {
         if (inputFilename == null || inputFilename.isEmpty()) {
             throw new IllegalArgumentException("Input filename shouldn't be empty.");
         }
         if (outputFilename == null || outputFilename.isEmpty()) {
             throw new IllegalArgumentException("Output filename shouldn't be empty.");
         }
+    }
 
-        ExecutorService executor = Executors.newFixedThreadPool(THREADS_COUNT);
-
-        try {
-            Set<Long> result = processFile(inputFilename, keyWord, lineCount, executor);
-            executor.shutdown();
+    /**
+     * Фрагменты просматриваются параллельно, а записываются строго по порядку по мере готовности
+     * (см. {@link OrderedTasks}). Одновременно в работе не больше {@code 2 * parallelism} фрагментов,
+     * поэтому расход памяти не зависит ни от размера файла, ни от числа совпадений.
+     * <p>
+     * С индексом триграмм первыми идут сегменты индекса: задача сегмента выбирает его строки-кандидаты
+     * и проверяет их, так что в памяти держатся кандидаты только сегментов в работе. За ними идут
+     * обычные фрагменты непроиндексированного хвоста.
+     * <p>
+     * При ограничении числа совпадений каждый фрагмент просматривается не дальше нужного числа
+     * совпадений. Фрагмент, в котором их больше, чем осталось вывести, перед записью просматривается
+     * заново до последнего нужного совпадения; после него задачи остальных фрагментов отменяются.
+     *
+     * @param keyWord строка, которую обязательно содержит каждая найденная строка (для индекса
+     *                триграмм), или {@code null}
+     * @param maxMatches наибольшее число выводимых совпадений или 0 без ограничения
+     */
+    private void search(String inputFilename, String outputFilename, String keyWord, ILineMatcher matcher,
+                        int lineCount, Consumer<KeywordMatch> matchListener, long maxMatches) {
+        Path inputPath = Path.of(inputFilename);
+        SearchMetrics metrics = SearchMetrics.start(inputFilename, metricsListener);
+        try (QueryContext context = newQueryContext()) {
+            CompressedInput.Format format = CompressedInput.detect(inputPath);
+            if (format != CompressedInput.Format.PLAIN) {
+                searchCompressed(context, metrics, inputPath, outputFilename, format, matcher, lineCount,
+                        matchListener, maxMatches);
+            } else {
+                searchMapped(context, metrics, inputPath, outputFilename, keyWord, matcher, lineCount, matchListener,
+                        new MatchLimit(maxMatches));
+            }
+        } catch (SearchTimeoutException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error processing file", e);
+        } finally {
+            metrics.finish();
+        }
+    }
 
-            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
-                executor.shutdownNow();
+    private void searchMapped(QueryContext context, SearchMetrics metrics, Path inputPath, String outputFilename,
+                              String keyWord, ILineMatcher matcher, int lineCount,
+                              Consumer<KeywordMatch> matchListener, MatchLimit limit) throws Exception {
+        try (MappedInput input = new MappedInput(inputPath);
+             LineIndex index = lineIndexEnabled || ngramIndexEnabled ? openLineIndex(metrics, inputPath, input) : null;
+             NgramIndex ngramIndex = ngramIndexEnabled && index != null
+                     ? openNgramIndex(metrics, inputPath, input, index, context) : null;
+             RangeOutput output = new RangeOutput(Path.of(outputFilename), false, OUTPUT_BUFFER_SIZE)) {
+            ChunkScanner scanner = new ChunkScanner(input, index, matcher, lineCount, matchListener != null);
+            boolean useNgrams = ngramIndex != null && keyWord != null && NgramIndex.supports(keyWord);
+            long scanStart = useNgrams ? index.lineStart(ngramIndex.indexedLines()) : 0;
+            int segmentCount = useNgrams ? ngramIndex.segmentCount() : 0;
+            ChunkCursor chunks = new ChunkCursor(input.size() - scanStart, CHUNK_SIZE);
+
+            long[] lastWritten = {-1};
+            try (OrderedTasks<ChunkResult> tasks = context.orderedTasks(scanned -> {
+                ChunkResult result = scanner.limit(scanned, limit.remaining());
+                limit.confirm(result.matchCount);
+                metrics.recordMatches(result.matchCount);
+                lastWritten[0] = metrics.io(() -> result.ranges.writeTo(input, output, lastWritten[0]));
+                if (matchListener != null) {
+                    result.matches.forEach(matchListener);
+                }
+                metrics.progress();
+            }, limit::reached)) {
+                for (int segment = 0; segment < segmentCount && !tasks.isStopped(); segment++) {
+                    int current = segment;
+                    long maxMatches = limit.remaining();
+                    tasks.submit(() -> {
+                        long[] candidates = ngramIndex.candidates(current, keyWord);
+                        return metrics.scanned(scanner.scanCandidates(candidates, 0, candidates.length, maxMatches));
+                    });
+                }
+                for (int chunk = 0; chunk < chunks.chunkCount() && !tasks.isStopped(); chunk++) {
+                    long start = scanStart + chunks.start(chunk);
+                    long end = scanStart + chunks.end(chunk);
+                    long maxMatches = limit.remaining();
+                    tasks.submit(() -> metrics.scanned(scanner.scan(start, end, maxMatches)));
+                }
+                tasks.finish();
             }
+            metrics.io(() -> {
+                output.flush();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Индекс границ строк или {@code null}, если его не удалось открыть или записать (например,
+     * каталог файла доступен только для чтения). Индекс лишь ускоряет поиск, поэтому файл тогда
+     * просматривается целиком, а сбой учитывается в {@link ISearchMetricsMXBean#getIndexFailures()}.
+     */
+    private static LineIndex openLineIndex(SearchMetrics metrics, Path inputPath, MappedInput input) throws Exception {
+        try {
+            return metrics.io(() -> LineIndex.open(inputPath, input));
+        } catch (IOException e) {
+            metrics.recordIndexFailure();
+            return null;
+        }
+    }
 
-            List<String> resultListString = doStringsTogether(inputFilename, result);
-            writeInformationInFile(outputFilename, resultListString);
+    /**
+     * Индекс триграмм или {@code null}, если его не удалось открыть или записать; см.
+     * {@link #openLineIndex(SearchMetrics, Path, MappedInput)}.
+     */
+    private static NgramIndex openNgramIndex(SearchMetrics metrics, Path inputPath, MappedInput input,
+                                             LineIndex index, QueryContext context) throws Exception {
+        try {
+            return metrics.io(() -> NgramIndex.open(inputPath, input, index, context));
+        } catch (IOException e) {
+            metrics.recordIndexFailure();
+            return null;
+        }
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException("Error processing file", e);
+    /**
+     * Сжатый файл просматривается как поток байтов {@link StreamLineScanner} в вызывающем потоке.
+     * Блоки BGZF распаковываются параллельно пачками по {@link #COMPRESSED_BATCH_SIZE} сжатых байтов
+     * и подаются на просмотр по порядку; остальные форматы распаковываются последовательно.
+     * Индексы строк и триграмм для сжатых файлов не используются. Распаковка учитывается в
+     * статистике как ввод-вывод, просмотр распакованных байтов (вместе с записью) — как просмотр.
+     */
+    private void searchCompressed(QueryContext context, SearchMetrics metrics, Path inputPath,
+                                  String outputFilename, CompressedInput.Format format, ILineMatcher matcher,
+                                  int lineCount, Consumer<KeywordMatch> matchListener, long maxMatches)
+            throws Exception {
+        try (MappedInput input = new MappedInput(inputPath);
+             RangeOutput output = new RangeOutput(Path.of(outputFilename), false, OUTPUT_BUFFER_SIZE)) {
+            StreamLineScanner scanner = new StreamLineScanner(matcher, lineCount, output, matchListener, 0);
+            if (maxMatches > 0) {
+                scanner.setMaxMatches(maxMatches);
+            }
+            long[] blocks = format == CompressedInput.Format.GZIP ? CompressedInput.bgzfBlocks(input) : null;
+
+            if (blocks != null) {
+                try (OrderedTasks<byte[]> tasks = context.orderedTasks(data -> {
+                    metrics.feed(scanner, data, data.length);
+                    metrics.progress();
+                }, scanner::isDone)) {
+                    int batchStart = 0;
+                    for (int block = 1; block < blocks.length && !tasks.isStopped(); block++) {
+                        if (block == blocks.length - 1 || blocks[block] - blocks[batchStart] >= COMPRESSED_BATCH_SIZE) {
+                            int from = batchStart;
+                            int to = block;
+                            tasks.submit(() -> metrics.io(() -> CompressedInput.inflateBlocks(input, blocks, from, to)));
+                            batchStart = block;
+                        }
+                    }
+                    tasks.finish();
+                }
+            } else {
+                try (InputStream stream = CompressedInput.open(inputPath, format)) {
+                    byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+                    for (int read = metrics.io(() -> stream.read(buffer)); read >= 0 && !scanner.isDone();
+                         read = metrics.io(() -> stream.read(buffer))) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedException("Search interrupted");
+                        }
+                        if (context.remainingNanos() == 0) {
+                            throw new SearchTimeoutException("Search timed out after " + context.timeoutMillis()
+                                    + " ms");
+                        }
+                        metrics.feed(scanner, buffer, read);
+                    }
+                }
+            }
+            metrics.feed(scanner, null, 0);
+            metrics.progress();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,177 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.ILineMatcher;
+import ru.mai.lessons.rpks.result.KeywordMatch;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Режим слежения за дописываемым файлом, как {@code tail -F | grep -C}. Запоминает смещение
+ * первой необработанной строки и при каждом {@link #poll()} читает только новые байты; найденные
+ * строки вместе с контекстом сразу записываются в вывод.
+ * <p>
+ * Если файл подменили (ротация журнала — у пути другой {@code fileKey}), сначала дочитывается
+ * старый файл, затем новый читается с начала. Если файл стал короче запомненного смещения, он
+ * считается усечённым и тоже читается с начала. Контекст до совпадения переходит через ротацию.
+ */
+public class LineFollower implements Closeable {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final Path inputPath;
+    private final OutputStream output;
+    private final StreamLineScanner scanner;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    private FileChannel channel;
+    private Object fileKey;
+    private long readPosition;
+    private volatile boolean closed;
+    private volatile WatchService watcher;
+
+    /**
+     * @param startOffset смещение начала строки, с которой продолжить чтение: 0 — весь файл,
+     *                    значение {@link #offset()} прошлого запуска — только новые строки
+     *                    (вывод тогда дописывается)
+     */
+    public LineFollower(String inputFilename, String outputFilename, ILineMatcher matcher, int lineCount,
+                        Consumer<KeywordMatch> matchListener, long startOffset) throws IOException {
+        this.inputPath = Path.of(inputFilename);
+        this.output = new BufferedOutputStream(new FileOutputStream(outputFilename, startOffset > 0),
+                OUTPUT_BUFFER_SIZE);
+        this.scanner = new StreamLineScanner(matcher, lineCount, output, matchListener, startOffset);
+        this.readPosition = startOffset;
+    }
+
+    /**
+     * Обрабатывает всё, что появилось в файле с прошлого вызова, и сбрасывает вывод на диск.
+     *
+     * @return количество найденных за этот вызов строк
+     */
+    public synchronized long poll() throws IOException {
+        long matchesBefore = scanner.matchCount();
+        if (channel == null && !reopen()) {
+            return 0;
+        }
+
+        if (channel.size() < readPosition) {
+            readPosition = 0;
+            scanner.restart(0);
+        }
+        readAvailable();
+
+        BasicFileAttributes attributes = attributes();
+        if (attributes != null && !Objects.equals(attributes.fileKey(), fileKey)) {
+            scanner.finish();
+            channel.close();
+            channel = null;
+            if (reopen()) {
+                readPosition = 0;
+                scanner.restart(0);
+                readAvailable();
+            }
+        }
+
+        output.flush();
+        return scanner.matchCount() - matchesBefore;
+    }
+
+    /**
+     * Следит за файлом, пока не будет вызван {@link #close()} или прерван поток. Изменения в
+     * каталоге файла отслеживаются через {@link WatchService}; {@code pollIntervalMillis} —
+     * наибольшая пауза между проверками на случай, когда события не приходят (сетевые ФС).
+     */
+    public void follow(long pollIntervalMillis) throws IOException, InterruptedException {
+        Path directory = inputPath.toAbsolutePath().getParent();
+        try (WatchService service = directory.getFileSystem().newWatchService()) {
+            watcher = service;
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            while (!closed && !Thread.currentThread().isInterrupted()) {
+                poll();
+                WatchKey key = service.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // слежение остановлено через close()
+        } finally {
+            watcher = null;
+        }
+    }
+
+    /**
+     * Смещение начала первой необработанной строки; его можно передать в конструктор, чтобы
+     * продолжить слежение после перезапуска.
+     */
+    public synchronized long offset() {
+        return scanner.position();
+    }
+
+    private void readAvailable() throws IOException {
+        while (true) {
+            readBuffer.clear();
+            int read = channel.read(readBuffer, readPosition);
+            if (read <= 0) {
+                return;
+            }
+            readPosition += read;
+            scanner.feed(readBuffer.array(), 0, read);
+        }
+    }
+
+    private boolean reopen() throws IOException {
+        try {
+            channel = FileChannel.open(inputPath, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        BasicFileAttributes attributes = attributes();
+        fileKey = attributes == null ? null : attributes.fileKey();
+        return true;
+    }
+
+    private BasicFileAttributes attributes() throws IOException {
+        try {
+            return Files.readAttributes(inputPath, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        WatchService service = watcher;
+        if (service != null) {
+            service.close();
+        }
+        synchronized (this) {
+            if (channel != null) {
+                channel.close();
+            }
+            output.close();
+        }
+    }
+}
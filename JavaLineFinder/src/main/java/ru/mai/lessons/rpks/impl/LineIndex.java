@@ -0,0 +1,272 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Индекс границ строк, сохраняемый рядом с входным файлом ({@code <файл>.lidx}). Хранит позиции
+ * всех {@code '\n'} массивом long, отображённым в память, поэтому начало и конец строки по её
+ * номеру получаются без просмотра файла.
+ * <p>
+ * Индекс проверяется по размеру и времени изменения файла. Если файл вырос, а байты перед прежним
+ * концом не изменились, индекс дополняется новыми строками. Если размер прежний, а время изменения
+ * другое, или прежний конец не совпадает, индекс строится заново.
+ * <p>
+ * Файл индекса не меняется на месте: новый индекс записывается во временный файл, отображается в
+ * память и атомарно переименовывается поверх прежнего ({@link #replace(Path, IndexWriter)}).
+ * Запросы, уже отобразившие прежний индекс, дочитывают его, а параллельные запросы, одновременно
+ * перестраивающие индекс, не портят друг другу файл — остаётся записанный последним.
+ */
+public class LineIndex implements Closeable {
+
+    public static final String SUFFIX = ".lidx";
+
+    static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC = 0x4C494458;
+    private static final int VERSION = 1;
+    private static final int FINGERPRINT_SIZE = 4096;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int COPY_SIZE = 1024 * 1024;
+
+    private final MappedInput input;
+    private final MappedInput entries;
+    private final long newlineCount;
+
+    private LineIndex(MappedInput input, MappedInput entries, long newlineCount) {
+        this.input = input;
+        this.entries = entries;
+        this.newlineCount = newlineCount;
+    }
+
+    /**
+     * Запись содержимого нового файла индекса.
+     */
+    interface IndexWriter<E extends Exception> {
+        void write(FileChannel channel) throws E;
+    }
+
+    /**
+     * Открывает индекс для уже отображённого файла, при необходимости дополняя или перестраивая его.
+     */
+    public static LineIndex open(Path inputPath, MappedInput input) throws IOException {
+        Path indexPath = inputPath.resolveSibling(inputPath.getFileName() + SUFFIX);
+        long modified = Files.getLastModifiedTime(inputPath).toMillis();
+
+        MappedInput existing = map(indexPath);
+        try {
+            long indexedSize = 0;
+            long indexedNewlines = 0;
+            if (isValid(existing, MAGIC, VERSION, input, modified)
+                    && existing.size() >= HEADER_SIZE + existing.getLong(32) * Long.BYTES) {
+                indexedSize = existing.getLong(8);
+                indexedNewlines = existing.getLong(32);
+                if (input.indexOf((byte) '\n', indexedSize, input.size()) < 0) {
+                    LineIndex index = new LineIndex(input, existing, indexedNewlines);
+                    existing = null;
+                    return index;
+                }
+            }
+
+            MappedInput previous = existing;
+            long from = indexedSize;
+            long keptEnd = HEADER_SIZE + indexedNewlines * Long.BYTES;
+            long[] newlineCount = {indexedNewlines};
+            MappedInput entries = replace(indexPath, channel -> {
+                copy(previous, channel, HEADER_SIZE, keptEnd);
+                newlineCount[0] += appendNewlines(channel, input, from, keptEnd);
+                writeHeader(channel, input, modified, newlineCount[0]);
+            });
+            return new LineIndex(input, entries, newlineCount[0]);
+        } finally {
+            if (existing != null) {
+                existing.close();
+            }
+        }
+    }
+
+    /**
+     * Отображает файл индекса в память или возвращает {@code null}, если его нет или он короче
+     * заголовка.
+     */
+    static MappedInput map(Path indexPath) throws IOException {
+        MappedInput mapped;
+        try {
+            mapped = new MappedInput(indexPath);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (mapped.size() < HEADER_SIZE) {
+            mapped.close();
+            return null;
+        }
+        return mapped;
+    }
+
+    /**
+     * Проверяет заголовок индекса: формат, размер проиндексированной части не больше размера файла и
+     * совпадение её последних байтов. Индекс файла, размер которого не изменился, а время изменения
+     * изменилось, недействителен: файл перезаписан на месте.
+     */
+    static boolean isValid(MappedInput index, int magic, int version, MappedInput input, long modified) {
+        if (index == null || index.getInt(0) != magic || index.getInt(4) != version) {
+            return false;
+        }
+        long indexedSize = index.getLong(8);
+        if (indexedSize > input.size() || indexedSize == input.size() && index.getLong(16) != modified) {
+            return false;
+        }
+        return index.getLong(24) == fingerprint(input, indexedSize);
+    }
+
+    static long fingerprint(MappedInput input, long end) {
+        long start = Math.max(0, end - FINGERPRINT_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(input.copy(start, end));
+        return crc.getValue();
+    }
+
+    /**
+     * Записывает новый файл индекса во временный файл рядом с {@code indexPath}, отображает его в
+     * память и атомарно переименовывает поверх прежнего.
+     */
+    static <E extends Exception> MappedInput replace(Path indexPath, IndexWriter<E> writer) throws IOException, E {
+        Path directory = indexPath.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, indexPath.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                writer.write(channel);
+                channel.force(false);
+            }
+            MappedInput mapped = new MappedInput(temporary);
+            try {
+                Files.move(temporary, indexPath, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                mapped.close();
+                throw e;
+            }
+            return mapped;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Копирует байты [from, to) прежнего индекса на те же позиции нового.
+     */
+    static void copy(MappedInput source, FileChannel channel, long from, long to) throws IOException {
+        for (long position = from; position < to; ) {
+            long end = Math.min(to, (position / COPY_SIZE + 1) * COPY_SIZE);
+            ByteBuffer buffer = source.slice(position, end);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    private static long appendNewlines(FileChannel channel, MappedInput input, long from, long position)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        long count = 0;
+        long writePosition = position;
+        for (long newline = input.indexOf((byte) '\n', from, input.size()); newline >= 0;
+             newline = input.indexOf((byte) '\n', newline + 1, input.size())) {
+            if (!buffer.hasRemaining()) {
+                writePosition += flush(channel, buffer, writePosition);
+            }
+            buffer.putLong(newline);
+            count++;
+        }
+        flush(channel, buffer, writePosition);
+        return count;
+    }
+
+    private static int flush(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    private static void writeHeader(FileChannel channel, MappedInput input, long modified, long newlineCount)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putLong(8, input.size());
+        header.putLong(16, modified);
+        header.putLong(24, fingerprint(input, input.size()));
+        header.putLong(32, newlineCount);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * Количество переводов строки, то есть число строк, завершённых {@code '\n'}.
+     */
+    public long newlineCount() {
+        return newlineCount;
+    }
+
+    /**
+     * Количество строк в файле, включая последнюю строку без завершающего перевода строки.
+     */
+    public long lineCount() {
+        return newlineCount + (lineStart(newlineCount) < input.size() ? 1 : 0);
+    }
+
+    public long lineStart(long line) {
+        return line == 0 ? 0 : newline(line - 1) + 1;
+    }
+
+    public long lineEnd(long line) {
+        return line < newlineCount ? newline(line) : input.size();
+    }
+
+    /**
+     * Возвращает номер строки, содержащей байт {@code offset}.
+     */
+    public long lineOf(long offset) {
+        long low = 0;
+        long high = newlineCount;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (newline(middle) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Возвращает номер первой строки, начинающейся не раньше {@code offset}.
+     */
+    public long firstLineFrom(long offset) {
+        long line = lineOf(offset);
+        return lineStart(line) >= offset ? line : line + 1;
+    }
+
+    private long newline(long index) {
+        return entries.getLong(HEADER_SIZE + index * Long.BYTES);
+    }
+
+    @Override
+    public void close() throws IOException {
+        entries.close();
+    }
+}
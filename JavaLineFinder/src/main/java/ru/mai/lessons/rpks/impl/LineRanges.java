@@ -0,0 +1,69 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Упорядоченный список диапазонов строк [start, end) в примитивном массиве. Соседние строки,
+ * разделённые одним {@code '\n'}, склеиваются в один диапазон, поэтому плотные совпадения занимают
+ * память пропорционально числу разрывов, а не числу строк.
+ */
+public class LineRanges {
+
+    private long[] bounds = new long[16];
+    private int size;
+
+    public void add(long start, long end) {
+        if (size > 0 && bounds[size - 1] + 1 == start) {
+            bounds[size - 1] = end;
+            return;
+        }
+        if (size == bounds.length) {
+            bounds = Arrays.copyOf(bounds, size * 2);
+        }
+        bounds[size++] = start;
+        bounds[size++] = end;
+    }
+
+    public int count() {
+        return size / 2;
+    }
+
+    public long start(int index) {
+        return bounds[2 * index];
+    }
+
+    public long end(int index) {
+        return bounds[2 * index + 1];
+    }
+
+    /**
+     * Проверяет, есть ли диапазоны, заканчивающиеся после {@code position}.
+     */
+    public boolean endsAfter(long position) {
+        return size > 0 && bounds[size - 1] > position;
+    }
+
+    /**
+     * Записывает строки диапазонов в вывод, каждую с {@code '\n'}, без копирования (см.
+     * {@link RangeOutput#writeRange}). Диапазоны соседних фрагментов могут перекрываться: всё, что
+     * заканчивается не позже {@code lastWritten}, пропускается.
+     *
+     * @return конец последней записанной строки
+     */
+    public long writeTo(MappedInput input, RangeOutput output, long lastWritten) throws IOException {
+        for (int index = 0; index < count(); index++) {
+            long start = start(index);
+            long end = end(index);
+            if (end <= lastWritten) {
+                continue;
+            }
+            if (start < lastWritten) {
+                start = lastWritten + 1;
+            }
+            output.writeRange(input, start, end);
+            lastWritten = end;
+        }
+        return lastWritten;
+    }
+}
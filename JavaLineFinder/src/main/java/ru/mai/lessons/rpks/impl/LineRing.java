@@ -0,0 +1,66 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.util.Arrays;
+
+/**
+ * Кольцевой буфер последних {@code capacity} непустых строк, которые ещё не попали в вывод.
+ * Массивы растут по мере надобности, поэтому большое значение lineCount не занимает память заранее.
+ */
+public class LineRing {
+
+    private final int capacity;
+    private long[] starts;
+    private long[] ends;
+    private int head;
+    private int size;
+
+    public LineRing(int capacity) {
+        this.capacity = capacity;
+        int initial = Math.max(1, Math.min(capacity, 64));
+        this.starts = new long[initial];
+        this.ends = new long[initial];
+    }
+
+    public void push(long start, long end) {
+        if (capacity == 0) {
+            return;
+        }
+        if (size == starts.length && size < capacity) {
+            grow();
+        }
+        int tail = (head + size) % starts.length;
+        starts[tail] = start;
+        ends[tail] = end;
+        if (size == starts.length) {
+            head = (head + 1) % starts.length;
+        } else {
+            size++;
+        }
+    }
+
+    /**
+     * Переносит содержимое буфера в {@code ranges} от старых строк к новым и очищает буфер.
+     */
+    public void drainTo(LineRanges ranges) {
+        for (int index = 0; index < size; index++) {
+            int slot = (head + index) % starts.length;
+            ranges.add(starts[slot], ends[slot]);
+        }
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        int length = (int) Math.min(capacity, starts.length * 2L);
+        long[] newStarts = new long[length];
+        long[] newEnds = new long[length];
+        for (int index = 0; index < size; index++) {
+            int slot = (head + index) % starts.length;
+            newStarts[index] = starts[slot];
+            newEnds[index] = ends[slot];
+        }
+        starts = newStarts;
+        ends = newEnds;
+        head = 0;
+    }
+}
@@ -0,0 +1,185 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Входной файл, отображённый в память сегментами по {@link #SEGMENT_SIZE} байт. Позволяет читать
+ * байты по абсолютному смещению без системных вызовов и без создания промежуточных строк.
+ */
+public class MappedInput implements Closeable {
+
+    static final int SEGMENT_SHIFT = 30;
+    static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    public MappedInput(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            int segmentCount = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            this.segments = new MappedByteBuffer[segmentCount];
+            for (int index = 0; index < segmentCount; index++) {
+                long position = (long) index << SEGMENT_SHIFT;
+                segments[index] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(SEGMENT_SIZE, size - position));
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public byte get(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+    }
+
+    public int getInt(long position) {
+        if (contiguous(position, position + Integer.BYTES)) {
+            return buffer(position).getInt(offset(position));
+        }
+        return ByteBuffer.wrap(copy(position, position + Integer.BYTES)).getInt();
+    }
+
+    public long getLong(long position) {
+        if (contiguous(position, position + Long.BYTES)) {
+            return buffer(position).getLong(offset(position));
+        }
+        return ByteBuffer.wrap(copy(position, position + Long.BYTES)).getLong();
+    }
+
+    /**
+     * Возвращает сегмент, содержащий байт {@code position}. Смещение внутри сегмента вычисляется
+     * методом {@link #offset(long)}.
+     */
+    public ByteBuffer buffer(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)];
+    }
+
+    public int offset(long position) {
+        return (int) (position & SEGMENT_MASK);
+    }
+
+    /**
+     * Возвращает диапазон [from, to) без копирования; диапазон должен лежать в одном сегменте
+     * (см. {@link #contiguous(long, long)}).
+     */
+    public ByteBuffer slice(long from, long to) {
+        return buffer(from).slice(offset(from), (int) (to - from));
+    }
+
+    /**
+     * Проверяет, что диапазон [from, to) целиком лежит в одном сегменте.
+     */
+    public boolean contiguous(long from, long to) {
+        return to <= from || (from >>> SEGMENT_SHIFT) == ((to - 1) >>> SEGMENT_SHIFT);
+    }
+
+    /**
+     * Возвращает позицию первого вхождения байта {@code value} в диапазоне [from, to) или -1.
+     */
+    public long indexOf(byte value, long from, long to) {
+        long position = from;
+        while (position < to) {
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+            int offset = (int) (position & SEGMENT_MASK);
+            int limit = (int) Math.min(segment.limit(), offset + (to - position));
+            for (int index = offset; index < limit; index++) {
+                if (segment.get(index) == value) {
+                    return position + (index - offset);
+                }
+            }
+            position += limit - offset;
+        }
+        return -1;
+    }
+
+    /**
+     * Возвращает позицию последнего вхождения байта {@code value} в диапазоне [from, to) или -1.
+     */
+    public long lastIndexOf(byte value, long from, long to) {
+        for (long position = to - 1; position >= from; position--) {
+            if (get(position) == value) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Возвращает начало первой строки, начинающейся не раньше {@code offset}.
+     */
+    public long alignToLine(long offset) {
+        if (offset == 0 || offset >= size || get(offset - 1) == '\n') {
+            return Math.min(offset, size);
+        }
+        long newline = indexOf((byte) '\n', offset, size);
+        return newline < 0 ? size : newline + 1;
+    }
+
+    /**
+     * Возвращает позицию перевода строки, завершающего строку, или размер файла для последней строки.
+     */
+    public long lineEnd(long lineStart) {
+        long newline = indexOf((byte) '\n', lineStart, size);
+        return newline < 0 ? size : newline;
+    }
+
+    /**
+     * Возвращает конец содержимого строки без завершающего {@code '\r'}.
+     */
+    public long contentEnd(long lineStart, long lineEnd) {
+        return lineEnd > lineStart && get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+    }
+
+    /**
+     * Возвращает начало строки, предшествующей строке {@code lineStart}, или -1 для первой строки.
+     */
+    public long previousLineStart(long lineStart) {
+        if (lineStart == 0) {
+            return -1;
+        }
+        return lastIndexOf((byte) '\n', 0, lineStart - 1) + 1;
+    }
+
+    public byte[] copy(long from, long to) {
+        byte[] bytes = new byte[(int) (to - from)];
+        get(from, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    public void get(long from, byte[] destination, int destinationOffset, int length) {
+        int copied = 0;
+        while (copied < length) {
+            long position = from + copied;
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+            int offset = (int) (position & SEGMENT_MASK);
+            int part = Math.min(length - copied, segment.limit() - offset);
+            segment.get(offset, destination, destinationOffset + copied, part);
+            copied += part;
+        }
+    }
+
+    public String decode(long from, long to) {
+        return new String(copy(from, to), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,30 @@
+package ru.mai.lessons.rpks.impl;
+
+/**
+ * Ограничение числа выводимых совпадений одного запроса. Совпадения подтверждаются в вызывающем
+ * потоке по мере записи результатов по порядку, поэтому синхронизация не нужна.
+ */
+class MatchLimit {
+
+    private final long limit;
+    private long confirmed;
+
+    /**
+     * @param limit наибольшее число совпадений или 0 без ограничения
+     */
+    MatchLimit(long limit) {
+        this.limit = limit;
+    }
+
+    long remaining() {
+        return limit == 0 ? Long.MAX_VALUE : limit - confirmed;
+    }
+
+    void confirm(long matches) {
+        confirmed += matches;
+    }
+
+    boolean reached() {
+        return limit != 0 && confirmed >= limit;
+    }
+}
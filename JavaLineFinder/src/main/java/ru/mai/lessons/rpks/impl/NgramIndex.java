@@ -0,0 +1,370 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Инвертированный индекс триграмм ({@code <файл>.tri}): для каждой триграммы символов, приведённых
+ * к нижнему регистру, хранится список номеров строк, в которых она встречается. Запрос пересекает
+ * списки триграмм ключевого слова, и проверять приходится только строки-кандидаты.
+ * <p>
+ * Индекс состоит из сегментов, каждый из которых описывает строки одного фрагмента файла размером
+ * {@link #SEGMENT_INPUT_SIZE}. Сегменты строятся параллельно по тем же фрагментам, что и поиск, а при
+ * дописывании файла к индексу добавляются только новые сегменты. В индекс попадают лишь строки,
+ * завершённые {@code '\n'}: незавершённый хвост файла может ещё измениться и просматривается при
+ * каждом запросе.
+ * <p>
+ * Формат сегмента: первая строка (long), число строк (int), число триграмм (int), отсортированные
+ * ключи триграмм (int[]), смещения списков (int[]) и сами списки — разности соседних номеров строк
+ * в кодировке varint.
+ * <p>
+ * Заголовок проверяется и файл индекса заменяется так же, как у {@link LineIndex}: индекс файла,
+ * перезаписанного без изменения размера, строится заново, а новый индекс записывается во временный
+ * файл и атомарно переименовывается поверх прежнего.
+ */
+public class NgramIndex implements Closeable {
+
+    public static final String SUFFIX = ".tri";
+    static final long SEGMENT_INPUT_SIZE = 16L * 1024 * 1024;
+
+    private static final int MAGIC = 0x54524947;
+    private static final int VERSION = 1;
+    private static final int NGRAM = 3;
+
+    private final MappedInput entries;
+    private final long[] segments;
+    private final long indexedLines;
+
+    private NgramIndex(MappedInput entries, long[] segments, long indexedLines) {
+        this.entries = entries;
+        this.segments = segments;
+        this.indexedLines = indexedLines;
+    }
+
+    /**
+     * Открывает индекс для уже отображённого файла, при необходимости дополняя или перестраивая его.
+     */
+    public static NgramIndex open(Path inputPath, MappedInput input, LineIndex lines, QueryContext context)
+            throws Exception {
+        Path indexPath = inputPath.resolveSibling(inputPath.getFileName() + SUFFIX);
+        long modified = Files.getLastModifiedTime(inputPath).toMillis();
+
+        MappedInput existing = LineIndex.map(indexPath);
+        try {
+            long indexedLines = 0;
+            long segmentsEnd = LineIndex.HEADER_SIZE;
+            if (LineIndex.isValid(existing, MAGIC, VERSION, input, modified)
+                    && existing.getLong(40) <= existing.size()) {
+                indexedLines = existing.getLong(32);
+                segmentsEnd = existing.getLong(40);
+                if (indexedLines == lines.newlineCount()) {
+                    NgramIndex index = new NgramIndex(existing, segmentPositions(existing), indexedLines);
+                    existing = null;
+                    return index;
+                }
+            }
+
+            MappedInput previous = existing;
+            long firstLine = indexedLines;
+            long keptEnd = segmentsEnd;
+            MappedInput entries = LineIndex.replace(indexPath, channel -> {
+                LineIndex.copy(previous, channel, LineIndex.HEADER_SIZE, keptEnd);
+                long end = appendSegments(channel, input, lines, firstLine, keptEnd, context);
+                writeHeader(channel, input, modified, lines.newlineCount(), end);
+            });
+            return new NgramIndex(entries, segmentPositions(entries), lines.newlineCount());
+        } finally {
+            if (existing != null) {
+                existing.close();
+            }
+        }
+    }
+
+    private static long[] segmentPositions(MappedInput entries) {
+        List<Long> segments = new ArrayList<>();
+        long segmentsEnd = entries.getLong(40);
+        for (long position = LineIndex.HEADER_SIZE; position < segmentsEnd;
+             position += Long.BYTES + entries.getLong(position)) {
+            segments.add(position + Long.BYTES);
+        }
+        return segments.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static void writeHeader(FileChannel channel, MappedInput input, long modified, long indexedLines,
+                                    long segmentsEnd) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LineIndex.HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putLong(8, input.size());
+        header.putLong(16, modified);
+        header.putLong(24, LineIndex.fingerprint(input, input.size()));
+        header.putLong(32, indexedLines);
+        header.putLong(40, segmentsEnd);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static long appendSegments(FileChannel channel, MappedInput input, LineIndex lines, long firstLine,
+                                       long position, QueryContext context) throws Exception {
+        long from = lines.lineStart(firstLine);
+        long to = lines.lineStart(lines.newlineCount());
+        ChunkCursor cursor = new ChunkCursor(to - from, SEGMENT_INPUT_SIZE);
+
+        long[] writePosition = {position};
+        try (OrderedTasks<byte[]> tasks = context.orderedTasks(segment -> {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + segment.length);
+            buffer.putLong(segment.length).put(segment).flip();
+            while (buffer.hasRemaining()) {
+                writePosition[0] += channel.write(buffer, writePosition[0]);
+            }
+        })) {
+            for (int chunk = 0; chunk < cursor.chunkCount(); chunk++) {
+                long startLine = lines.firstLineFrom(from + cursor.start(chunk));
+                long endLine = Math.min(lines.newlineCount(), lines.firstLineFrom(from + cursor.end(chunk)));
+                tasks.submit(() -> buildSegment(input, lines, startLine, endLine));
+            }
+            tasks.finish();
+        }
+        return writePosition[0];
+    }
+
+    private static byte[] buildSegment(MappedInput input, LineIndex lines, long startLine, long endLine) {
+        long[] pairs = new long[1024];
+        int count = 0;
+        for (long line = startLine; line < endLine; line++) {
+            long start = lines.lineStart(line);
+            long end = lines.lineEnd(line);
+            ByteBuffer buffer;
+            int from;
+            int to;
+            if (input.contiguous(start, end)) {
+                buffer = input.buffer(start);
+                from = input.offset(start);
+                to = from + (int) (end - start);
+            } else {
+                buffer = ByteBuffer.wrap(input.copy(start, end));
+                from = 0;
+                to = buffer.limit();
+            }
+
+            long localLine = line - startLine;
+            int first = -1;
+            int second = -1;
+            for (int position = from; position < to; ) {
+                long decoded = Utf8.decode(buffer, position, to);
+                int codePoint = decoded < 0 ? -1 : Character.toLowerCase(Utf8.codePoint(decoded));
+                position += decoded < 0 ? 1 : Utf8.length(decoded);
+                if (first >= 0 && second >= 0 && codePoint >= 0) {
+                    if (count == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, count * 2);
+                    }
+                    pairs[count++] = ((long) key(first, second, codePoint) << 32) | localLine;
+                }
+                first = second;
+                second = codePoint;
+            }
+        }
+        Arrays.sort(pairs, 0, count);
+
+        try {
+            ByteArrayOutputStream keys = new ByteArrayOutputStream();
+            ByteArrayOutputStream offsets = new ByteArrayOutputStream();
+            ByteArrayOutputStream postings = new ByteArrayOutputStream();
+            DataOutputStream keysOut = new DataOutputStream(keys);
+            DataOutputStream offsetsOut = new DataOutputStream(offsets);
+            int keyCount = 0;
+            long previous = -1;
+            int previousLine = 0;
+            for (int index = 0; index < count; index++) {
+                long pair = pairs[index];
+                if (pair == previous) {
+                    continue;
+                }
+                int key = (int) (pair >> 32);
+                int localLine = (int) pair;
+                if (index == 0 || key != (int) (previous >> 32)) {
+                    keysOut.writeInt(key);
+                    offsetsOut.writeInt(postings.size());
+                    keyCount++;
+                    previousLine = 0;
+                }
+                writeVarint(postings, localLine - previousLine);
+                previousLine = localLine;
+                previous = pair;
+            }
+            offsetsOut.writeInt(postings.size());
+
+            ByteArrayOutputStream segment = new ByteArrayOutputStream();
+            DataOutputStream segmentOut = new DataOutputStream(segment);
+            segmentOut.writeLong(startLine);
+            segmentOut.writeInt((int) (endLine - startLine));
+            segmentOut.writeInt(keyCount);
+            keys.writeTo(segmentOut);
+            offsets.writeTo(segmentOut);
+            postings.writeTo(segmentOut);
+            return segment.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream output, int value) {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            output.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        output.write(remaining);
+    }
+
+    private static int key(int first, int second, int third) {
+        int hash = first * 0x9E3779B1;
+        hash = (hash ^ second) * 0x85EBCA6B;
+        hash = (hash ^ third) * 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Количество строк, описанных индексом. Строки с большими номерами нужно просматривать напрямую.
+     */
+    public long indexedLines() {
+        return indexedLines;
+    }
+
+    /**
+     * Проверяет, можно ли искать ключевое слово по индексу: оно должно содержать хотя бы одну триграмму.
+     */
+    public static boolean supports(String keyWord) {
+        return keyWord.codePointCount(0, keyWord.length()) >= NGRAM;
+    }
+
+    /**
+     * Количество сегментов индекса; кандидаты выбираются по сегментам.
+     */
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Возвращает отсортированные номера строк сегмента {@code segment}, которые могут содержать
+     * ключевое слово. Каждую строку-кандидата нужно проверить: разные триграммы могут иметь
+     * одинаковый ключ. Кандидаты одного сегмента описывают не больше {@link #SEGMENT_INPUT_SIZE}
+     * байтов файла, поэтому память на них не зависит от размера файла.
+     */
+    public long[] candidates(int segment, String keyWord) {
+        int[] codePoints = keyWord.codePoints().map(Character::toLowerCase).toArray();
+        int[] keys = new int[codePoints.length - NGRAM + 1];
+        for (int index = 0; index < keys.length; index++) {
+            keys[index] = key(codePoints[index], codePoints[index + 1], codePoints[index + 2]);
+        }
+        keys = Arrays.stream(keys).distinct().toArray();
+
+        int[] common = segmentCandidates(segments[segment], keys);
+        long firstLine = entries.getLong(segments[segment]);
+        long[] result = new long[common.length];
+        for (int index = 0; index < common.length; index++) {
+            result[index] = firstLine + common[index];
+        }
+        return result;
+    }
+
+    private int[] segmentCandidates(long segment, int[] keys) {
+        int keyCount = entries.getInt(segment + Long.BYTES + Integer.BYTES);
+        long keysPosition = segment + Long.BYTES + 2 * Integer.BYTES;
+        long offsetsPosition = keysPosition + (long) keyCount * Integer.BYTES;
+        long postingsPosition = offsetsPosition + (long) (keyCount + 1) * Integer.BYTES;
+
+        int[][] lists = new int[keys.length][];
+        for (int index = 0; index < keys.length; index++) {
+            int found = binarySearch(keysPosition, keyCount, keys[index]);
+            if (found < 0) {
+                return new int[0];
+            }
+            long from = postingsPosition + entries.getInt(offsetsPosition + (long) found * Integer.BYTES);
+            long to = postingsPosition + entries.getInt(offsetsPosition + (long) (found + 1) * Integer.BYTES);
+            lists[index] = readPostings(from, to);
+        }
+
+        Arrays.sort(lists, (left, right) -> Integer.compare(left.length, right.length));
+        int[] common = lists[0];
+        for (int index = 1; index < lists.length && common.length > 0; index++) {
+            common = intersect(common, lists[index]);
+        }
+        return common;
+    }
+
+    private int binarySearch(long keysPosition, int keyCount, int key) {
+        int low = 0;
+        int high = keyCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = entries.getInt(keysPosition + (long) middle * Integer.BYTES);
+            if (value < key) {
+                low = middle + 1;
+            } else if (value > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int[] readPostings(long from, long to) {
+        int[] lines = new int[16];
+        int count = 0;
+        int line = 0;
+        long position = from;
+        while (position < to) {
+            int value = 0;
+            int shift = 0;
+            byte current;
+            do {
+                current = entries.get(position++);
+                value |= (current & 0x7F) << shift;
+                shift += 7;
+            } while ((current & 0x80) != 0);
+            line += value;
+            if (count == lines.length) {
+                lines = Arrays.copyOf(lines, count * 2);
+            }
+            lines[count++] = line;
+        }
+        return Arrays.copyOf(lines, count);
+    }
+
+    private static int[] intersect(int[] left, int[] right) {
+        int[] result = new int[Math.min(left.length, right.length)];
+        int count = 0;
+        int leftIndex = 0;
+        int rightIndex = 0;
+        while (leftIndex < left.length && rightIndex < right.length) {
+            if (left[leftIndex] < right[rightIndex]) {
+                leftIndex++;
+            } else if (left[leftIndex] > right[rightIndex]) {
+                rightIndex++;
+            } else {
+                result[count++] = left[leftIndex];
+                leftIndex++;
+                rightIndex++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    @Override
+    public void close() throws IOException {
+        entries.close();
+    }
+}
@@ -0,0 +1,121 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.exception.SearchTimeoutException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Запускает задачи на исполнителе запроса и передаёт их результаты обработчику в вызывающем потоке
+ * строго в порядке отправки. Одновременно в работе не больше {@code window} задач: при заполненном
+ * окне {@link #submit} сначала дожидается и обрабатывает самый старый результат.
+ * <p>
+ * Задачи не ждут друг друга и не блокируются, поэтому исполнитель может быть общим для многих
+ * запросов. Ожидание прекращается при прерывании вызывающего потока или по истечении срока
+ * запроса; незавершённые задачи при этом отменяются.
+ * <p>
+ * Если задано условие остановки, оно проверяется после обработки каждого результата; когда оно
+ * выполнено, незавершённые задачи отменяются, а дальнейшие {@link #submit} и {@link #finish}
+ * ничего не делают.
+ */
+public class OrderedTasks<T> implements AutoCloseable {
+
+    public interface ResultHandler<T> {
+        void accept(T result) throws Exception;
+    }
+
+    private final QueryContext context;
+    private final int window;
+    private final ResultHandler<T> handler;
+    private final BooleanSupplier stopCondition;
+    private final Deque<Future<T>> pending = new ArrayDeque<>();
+    private boolean stopped;
+
+    OrderedTasks(QueryContext context, int window, ResultHandler<T> handler, BooleanSupplier stopCondition) {
+        this.context = context;
+        this.window = window;
+        this.handler = handler;
+        this.stopCondition = stopCondition;
+    }
+
+    public void submit(Callable<T> task) throws Exception {
+        while (!stopped && pending.size() >= window) {
+            handleOldest();
+        }
+        if (!stopped) {
+            pending.addLast(context.executor().submit(task));
+        }
+    }
+
+    /**
+     * Отправляет задачу, результат которой будет обработан сразу после текущего, раньше уже
+     * отправленных. Вызывается из обработчика результата, чтобы продолжить работу, которую нельзя
+     * заранее разделить на независимые задачи. Задача занимает место только что обработанной,
+     * поэтому окно не растёт.
+     */
+    public void submitNext(Callable<T> task) {
+        if (!stopped) {
+            pending.addFirst(context.executor().submit(task));
+        }
+    }
+
+    /**
+     * Выполнено ли условие остановки: тогда новые задачи отправлять незачем.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Дожидается и обрабатывает все отправленные задачи.
+     */
+    public void finish() throws Exception {
+        while (!stopped && !pending.isEmpty()) {
+            handleOldest();
+        }
+    }
+
+    private void handleOldest() throws Exception {
+        Future<T> future = pending.peekFirst();
+        T result;
+        try {
+            result = future.get(context.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            close();
+            throw new SearchTimeoutException("Search timed out after " + context.timeoutMillis() + " ms");
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            close();
+            Throwable cause = e.getCause();
+            if (cause instanceof SearchTimeoutException) {
+                throw (SearchTimeoutException) cause;
+            }
+            throw new Exception("Error combining results: " + cause.getMessage(), cause);
+        }
+        pending.removeFirst();
+        handler.accept(result);
+        if (stopCondition.getAsBoolean()) {
+            stopped = true;
+            close();
+        }
+    }
+
+    /**
+     * Отменяет задачи, результаты которых ещё не обработаны.
+     */
+    @Override
+    public void close() {
+        for (Future<T> future = pending.pollFirst(); future != null; future = pending.pollFirst()) {
+            future.cancel(true);
+        }
+    }
+}
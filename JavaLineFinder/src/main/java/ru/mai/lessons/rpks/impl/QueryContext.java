@@ -0,0 +1,67 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Исполнитель, степень параллельности и срок одного запроса. Собственный пул запроса (если
+ * исполнитель не был передан в {@link LineFinder}) останавливается в {@link #close()}; внешний
+ * исполнитель не останавливается никогда.
+ */
+public class QueryContext implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int parallelism;
+    private final long timeoutMillis;
+    private final long deadline;
+
+    /**
+     * @param timeoutMillis наибольшая длительность запроса или 0 без ограничения
+     */
+    public QueryContext(ExecutorService executor, boolean ownsExecutor, int parallelism, long timeoutMillis) {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.parallelism = parallelism;
+        this.timeoutMillis = timeoutMillis;
+        this.deadline = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1_000_000 : Long.MAX_VALUE;
+    }
+
+    public ExecutorService executor() {
+        return executor;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public long timeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public long remainingNanos() {
+        return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * Очередь задач, в которой одновременно работает не больше {@code 2 * parallelism} задач.
+     */
+    public <T> OrderedTasks<T> orderedTasks(OrderedTasks.ResultHandler<T> handler) {
+        return orderedTasks(handler, () -> false);
+    }
+
+    /**
+     * То же, но задачи отменяются, как только после обработки очередного результата выполнено
+     * {@code stopCondition}.
+     */
+    public <T> OrderedTasks<T> orderedTasks(OrderedTasks.ResultHandler<T> handler, BooleanSupplier stopCondition) {
+        return new OrderedTasks<>(this, 2 * parallelism, handler, stopCondition);
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+}
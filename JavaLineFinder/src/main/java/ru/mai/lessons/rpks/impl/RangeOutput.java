@@ -0,0 +1,137 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Выходной файл, в который диапазоны строк входного файла пишутся без копирования: в очередь
+ * ставятся срезы отображённых в память сегментов {@link MappedInput}, и очередь записывается одним
+ * вызовом {@link FileChannel#write(ByteBuffer[], int, int)}. Если за строкой в файле идёт
+ * {@code '\n'}, он пишется тем же срезом, поэтому склеенные {@link LineRanges} соседние строки
+ * занимают один элемент очереди.
+ * <p>
+ * Обычные записи {@link OutputStream} (заголовки, вывод потокового просмотра) копируются в
+ * собственный буфер и встают в ту же очередь, порядок вывода сохраняется.
+ */
+public class RangeOutput extends OutputStream {
+
+    private static final int MAX_PENDING_BUFFERS = 512;
+    private static final long MAX_PENDING_BYTES = 16L * 1024 * 1024;
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final FileChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer[] pending = new ByteBuffer[MAX_PENDING_BUFFERS + 1];
+    private int pendingCount;
+    private long pendingBytes;
+    private int bufferLength;
+    private int bufferQueued;
+
+    /**
+     * @param append дописывать в конец файла вместо перезаписи
+     */
+    public RangeOutput(Path path, boolean append, int bufferSize) throws IOException {
+        this.channel = append
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Ставит в очередь строки [start, end) входного файла и перевод строки после них.
+     */
+    public void writeRange(MappedInput input, long start, long end) throws IOException {
+        boolean newlineInInput = end < input.size() && input.get(end) == '\n';
+        long sliceEnd = newlineInInput ? end + 1 : end;
+        long position = start;
+        while (position < sliceEnd) {
+            long segmentEnd = Math.min(sliceEnd, (position | (MappedInput.SEGMENT_SIZE - 1)) + 1);
+            queue(input.slice(position, segmentEnd));
+            position = segmentEnd;
+        }
+        if (!newlineInInput) {
+            write(NEWLINE, 0, 1);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (bufferLength == buffer.length) {
+            flushPending();
+        }
+        buffer[bufferLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (bufferLength == buffer.length) {
+                flushPending();
+            }
+            int part = Math.min(len, buffer.length - bufferLength);
+            System.arraycopy(b, off, buffer, bufferLength, part);
+            bufferLength += part;
+            off += part;
+            len -= part;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushPending();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushPending();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void queue(ByteBuffer slice) throws IOException {
+        if (pendingCount + 2 > MAX_PENDING_BUFFERS) {
+            flushPending();
+        }
+        queueBuffered();
+        pending[pendingCount++] = slice;
+        pendingBytes += slice.remaining();
+        if (pendingBytes >= MAX_PENDING_BYTES) {
+            flushPending();
+        }
+    }
+
+    /**
+     * Ставит в очередь байты буфера, записанные после последнего среза. Место в очереди для них
+     * всегда остаётся: {@link #queue} оставляет свободным последний элемент.
+     */
+    private void queueBuffered() {
+        if (bufferLength == bufferQueued) {
+            return;
+        }
+        pending[pendingCount++] = ByteBuffer.wrap(buffer, bufferQueued, bufferLength - bufferQueued);
+        pendingBytes += bufferLength - bufferQueued;
+        bufferQueued = bufferLength;
+    }
+
+    private void flushPending() throws IOException {
+        queueBuffered();
+        int first = 0;
+        while (first < pendingCount) {
+            channel.write(pending, first, pendingCount - first);
+            while (first < pendingCount && !pending[first].hasRemaining()) {
+                pending[first++] = null;
+            }
+        }
+        pendingCount = 0;
+        pendingBytes = 0;
+        bufferLength = 0;
+        bufferQueued = 0;
+    }
+}
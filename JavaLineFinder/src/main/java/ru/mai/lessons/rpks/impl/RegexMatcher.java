@@ -0,0 +1,138 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.ILineMatcher;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Поиск по регулярному выражению {@link Pattern}. Из выражения извлекается литеральный префикс —
+ * строка, с которой обязано начинаться любое совпадение. Строки без этого префикса отсеиваются
+ * {@link KeywordMatcher} прямо в байтах, и только оставшиеся декодируются и проверяются
+ * {@link java.util.regex.Matcher}.
+ */
+public class RegexMatcher implements ILineMatcher {
+
+    private static final String METACHARACTERS = ".[]{}()*+?^$|\\";
+    private static final String WORD_CHARACTER = "[\\p{L}\\p{Nd}_]";
+
+    private final Pattern pattern;
+    private final String literalPrefix;
+    private final KeywordMatcher prefilter;
+
+    public RegexMatcher(String regex, boolean caseSensitive, boolean wholeWord) {
+        String expression = wholeWord
+                ? "(?<!" + WORD_CHARACTER + ")(?:" + regex + ")(?!" + WORD_CHARACTER + ")"
+                : regex;
+        this.pattern = Pattern.compile(expression,
+                caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        String prefix = literalPrefix(regex);
+        if (!caseSensitive) {
+            prefix = caselessSafePrefix(prefix);
+        }
+        this.literalPrefix = prefix;
+        this.prefilter = prefix.isEmpty() ? null : KeywordMatcher.create(prefix, caseSensitive, false);
+    }
+
+    /**
+     * Литерал, с которого начинается любое совпадение, или пустая строка. Ищет его и
+     * {@link NgramIndex}: для регистронезависимого поиска префикс обрезан так, чтобы сравнение в
+     * нижнем регистре не отбросило подходящих строк.
+     */
+    public String literalPrefix() {
+        return literalPrefix;
+    }
+
+    @Override
+    public boolean matches(ByteBuffer buffer, int from, int to) {
+        if (prefilter != null && !prefilter.matches(buffer, from, to)) {
+            return false;
+        }
+        return pattern.matcher(decode(buffer, from, to)).find();
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int to) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+        }
+        byte[] line = new byte[to - from];
+        buffer.get(from, line);
+        return new String(line, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Собирает литеральные символы от начала выражения до первого метасимвола. Символ перед
+     * квантификаторами ?, * и {n,m} необязателен и в префикс не входит; при альтернативе на верхнем
+     * уровне префикса нет.
+     */
+    static String literalPrefix(String regex) {
+        if (hasTopLevelAlternation(regex)) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int position = regex.startsWith("^") ? 1 : 0;
+        while (position < regex.length()) {
+            int codePoint = regex.codePointAt(position);
+            int next = position + Character.charCount(codePoint);
+            if (codePoint == '\\') {
+                if (next >= regex.length()) {
+                    break;
+                }
+                codePoint = regex.codePointAt(next);
+                if (Character.isLetterOrDigit(codePoint)) {
+                    break;
+                }
+                next += Character.charCount(codePoint);
+            } else if (METACHARACTERS.indexOf(codePoint) >= 0) {
+                break;
+            }
+
+            if (next < regex.length() && "?*{".indexOf(regex.charAt(next)) >= 0) {
+                break;
+            }
+            prefix.appendCodePoint(codePoint);
+            if (next < regex.length() && regex.charAt(next) == '+') {
+                break;
+            }
+            position = next;
+        }
+        return prefix.toString();
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int position = 0; position < regex.length(); position++) {
+            char current = regex.charAt(position);
+            if (current == '\\') {
+                position++;
+            } else if (inClass) {
+                inClass = current != ']';
+            } else if (current == '[') {
+                inClass = true;
+            } else if (current == '(') {
+                depth++;
+            } else if (current == ')') {
+                depth--;
+            } else if (current == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@link Pattern#UNICODE_CASE} сравнивает символы после перевода в верхний и затем в нижний
+     * регистр, а {@link KeywordMatcher} — только в нижнем. Префикс обрезается перед первым
+     * символом, для которого эти правила расходятся (например, {@code 'ſ'} и {@code 's'}).
+     */
+    static String caselessSafePrefix(String prefix) {
+        int[] codePoints = prefix.codePoints().toArray();
+        int safeLength = 0;
+        while (safeLength < codePoints.length && !CaseFolds.foldsAmbiguously(codePoints[safeLength])) {
+            safeLength++;
+        }
+        return new String(codePoints, 0, safeLength);
+    }
+}
@@ -0,0 +1,247 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.ISearchMetricsListener;
+import ru.mai.lessons.rpks.ISearchMetricsMXBean;
+import ru.mai.lessons.rpks.result.SearchStatistics;
+import ru.mai.lessons.rpks.result.WorkerStatistics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики одного запроса. Задачи просмотра пополняют их из разных потоков, поэтому счётчики —
+ * {@link LongAdder}: запись не требует общей блокировки, а суммирование происходит только при
+ * чтении. Каждое значение добавляется и в общие счётчики процесса {@link #total()}, доступные
+ * через JMX.
+ * <p>
+ * Объём и время просмотра запроса учитываются ещё и по потокам, в которых он шёл, чтобы был виден
+ * отстающий поток. Общие счётчики процесса по потокам не делятся: при виртуальных потоках их
+ * число не ограничено.
+ */
+class SearchMetrics implements ISearchMetricsMXBean {
+
+    static final String OBJECT_NAME = "ru.mai.lessons.rpks:type=LineFinder";
+
+    private static final SearchMetrics TOTAL = new SearchMetrics(null, null, null);
+
+    private final String input;
+    private final ISearchMetricsListener listener;
+    private final SearchMetrics parent;
+    private final long startedNanos = System.nanoTime();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder bytesScanned = new LongAdder();
+    private final LongAdder linesScanned = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder scanNanos = new LongAdder();
+    private final LongAdder ioNanos = new LongAdder();
+    private final LongAdder indexFailures = new LongAdder();
+    private final Map<Long, Worker> workers = new ConcurrentHashMap<>();
+
+    private SearchMetrics(String input, ISearchMetricsListener listener, SearchMetrics parent) {
+        this.input = input;
+        this.listener = listener;
+        this.parent = parent;
+    }
+
+    /**
+     * @param listener получатель статистики запроса или {@code null}
+     */
+    static SearchMetrics start(String input, ISearchMetricsListener listener) {
+        TOTAL.queries.increment();
+        return new SearchMetrics(input, listener, TOTAL);
+    }
+
+    static SearchMetrics total() {
+        return TOTAL;
+    }
+
+    /**
+     * Регистрирует общие счётчики в платформенном {@link MBeanServer} под именем
+     * {@link #OBJECT_NAME}; повторный вызов ничего не делает.
+     */
+    static synchronized ObjectName register() throws JMException {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (!server.isRegistered(name)) {
+            server.registerMBean(TOTAL, name);
+        }
+        return name;
+    }
+
+    void recordScan(long bytes, long lines, long nanos) {
+        bytesScanned.add(bytes);
+        linesScanned.add(lines);
+        scanNanos.add(nanos);
+        if (parent != null) {
+            Thread thread = Thread.currentThread();
+            workers.computeIfAbsent(thread.getId(), id -> new Worker(thread.getName().isEmpty()
+                    ? "thread-" + id : thread.getName())).record(bytes, nanos);
+            parent.recordScan(bytes, lines, nanos);
+        }
+    }
+
+    /**
+     * Учитывает совпадения, записанные в вывод. Просмотр может найти больше, чем разрешает
+     * ограничение числа совпадений, поэтому совпадения считаются при записи, а не при просмотре.
+     */
+    void recordMatches(long matchCount) {
+        matches.add(matchCount);
+        if (parent != null) {
+            parent.recordMatches(matchCount);
+        }
+    }
+
+    void recordIo(long nanos) {
+        ioNanos.add(nanos);
+        if (parent != null) {
+            parent.recordIo(nanos);
+        }
+    }
+
+    void recordIndexFailure() {
+        indexFailures.increment();
+        if (parent != null) {
+            parent.recordIndexFailure();
+        }
+    }
+
+    /**
+     * Учитывает просмотр фрагмента и возвращает результат без изменений. Его совпадения
+     * учитываются через {@link #recordMatches(long)} после ограничения их числа.
+     */
+    ChunkResult scanned(ChunkResult result) {
+        recordScan(result.bytes, result.lines, result.scanNanos);
+        return result;
+    }
+
+    /**
+     * Подаёт {@code data[0..length)} потоковому просмотру, который сразу пишет в вывод, и учитывает
+     * его вместе с совпадениями; {@code data == null} завершает поток. Время записи вывода при этом
+     * считается временем просмотра.
+     */
+    void feed(StreamLineScanner scanner, byte[] data, int length) throws IOException {
+        feed(scanner, data, length, true);
+    }
+
+    /**
+     * То же, но при {@code countMatches == false} вывод просмотра копится и может быть отброшен, а
+     * совпадения учитываются при записи через {@link #recordMatches(long)}.
+     */
+    void feed(StreamLineScanner scanner, byte[] data, int length, boolean countMatches) throws IOException {
+        long started = System.nanoTime();
+        long lines = scanner.lines();
+        long matchCount = scanner.matchCount();
+        if (data == null) {
+            scanner.finish();
+        } else {
+            scanner.feed(data, 0, length);
+        }
+        recordScan(length, scanner.lines() - lines, System.nanoTime() - started);
+        if (countMatches) {
+            recordMatches(scanner.matchCount() - matchCount);
+        }
+    }
+
+    /**
+     * Выполняет операцию ввода-вывода и учитывает её длительность.
+     */
+    <T> T io(Callable<T> action) throws Exception {
+        long started = System.nanoTime();
+        try {
+            return action.call();
+        } finally {
+            recordIo(System.nanoTime() - started);
+        }
+    }
+
+    void progress() {
+        if (listener != null) {
+            listener.onProgress(statistics());
+        }
+    }
+
+    void finish() {
+        if (listener != null) {
+            listener.onFinish(statistics());
+        }
+    }
+
+    SearchStatistics statistics() {
+        return new SearchStatistics(input, bytesScanned.sum(), linesScanned.sum(), matches.sum(), scanNanos.sum(),
+                ioNanos.sum(), System.nanoTime() - startedNanos, workers.values().stream()
+                .map(Worker::statistics)
+                .sorted(Comparator.comparing(WorkerStatistics::getWorker))
+                .toList());
+    }
+
+    @Override
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    @Override
+    public long getBytesScanned() {
+        return bytesScanned.sum();
+    }
+
+    @Override
+    public long getLinesScanned() {
+        return linesScanned.sum();
+    }
+
+    @Override
+    public long getMatches() {
+        return matches.sum();
+    }
+
+    @Override
+    public long getScanMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(scanNanos.sum());
+    }
+
+    @Override
+    public long getIoMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ioNanos.sum());
+    }
+
+    @Override
+    public long getIndexFailures() {
+        return indexFailures.sum();
+    }
+
+    @Override
+    public double getWorkerThroughputMbPerSecond() {
+        return statistics().getWorkerThroughputMbPerSecond();
+    }
+
+    /**
+     * Счётчики одного потока; пополняются только им самим.
+     */
+    private static final class Worker {
+        private final String name;
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        Worker(String name) {
+            this.name = name;
+        }
+
+        void record(long bytesScanned, long scanNanos) {
+            bytes.add(bytesScanned);
+            nanos.add(scanNanos);
+        }
+
+        WorkerStatistics statistics() {
+            return new WorkerStatistics(name, bytes.sum(), nanos.sum());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package ru.mai.lessons.rpks.impl;
+
+import ru.mai.lessons.rpks.ILineMatcher;
+import ru.mai.lessons.rpks.result.KeywordMatch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * Просмотр потока байтов, который нельзя отобразить в память целиком: дописываемого файла или
+ * распакованного архива. Байты подаются кусками произвольного размера, строки собираются по
+ * {@code '\n'} и сразу пишутся в вывод вместе с контекстом — по тем же правилам, что и в
+ * {@link ChunkScanner}. Строки контекста до совпадения хранятся копиями, не больше {@code lineCount}.
+ */
+public class StreamLineScanner {
+
+    private final ILineMatcher matcher;
+    private final int lineCount;
+    private final OutputStream output;
+    private final Consumer<KeywordMatch> matchListener;
+    private final Deque<byte[]> before = new ArrayDeque<>();
+
+    private byte[] partial = new byte[256];
+    private int partialLength;
+    private long position;
+    private int afterRemaining;
+    private long lines;
+    private long matchCount;
+    private long maxMatches = Long.MAX_VALUE;
+
+    /**
+     * @param position смещение первого подаваемого байта в исходном файле
+     */
+    public StreamLineScanner(ILineMatcher matcher, int lineCount, OutputStream output,
+                             Consumer<KeywordMatch> matchListener, long position) {
+        this.matcher = matcher;
+        this.lineCount = lineCount;
+        this.output = output;
+        this.matchListener = matchListener;
+        this.position = position;
+    }
+
+    public void feed(byte[] data, int from, int to) throws IOException {
+        int lineStart = from;
+        for (int newline = indexOf(data, lineStart, to); newline >= 0; newline = indexOf(data, lineStart, to)) {
+            if (partialLength == 0) {
+                line(data, lineStart, newline);
+                position += newline + 1 - lineStart;
+            } else {
+                append(data, lineStart, newline);
+                line(partial, 0, partialLength);
+                position += partialLength + 1;
+                partialLength = 0;
+            }
+            lineStart = newline + 1;
+        }
+        append(data, lineStart, to);
+    }
+
+    /**
+     * Обрабатывает незавершённую последнюю строку как обычную (конец файла или архива).
+     */
+    public void finish() throws IOException {
+        if (partialLength > 0) {
+            line(partial, 0, partialLength);
+            position += partialLength;
+            partialLength = 0;
+        }
+    }
+
+    /**
+     * Смещение начала первой ещё не обработанной строки.
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Начинает новый поток с указанного смещения, например после ротации или усечения файла.
+     * Незавершённая строка отбрасывается, контекст сохраняется.
+     */
+    public void restart(long position) {
+        this.position = position;
+        partialLength = 0;
+    }
+
+    /**
+     * После {@code maxMatches} совпадений строки больше не проверяются: выводится только контекст
+     * после последнего совпадения, затем {@link #isDone()} возвращает {@code true}.
+     */
+    public void setMaxMatches(long maxMatches) {
+        this.maxMatches = maxMatches;
+    }
+
+    /**
+     * Достигнуто ограничение числа совпадений и выведен контекст после последнего из них.
+     */
+    public boolean isDone() {
+        return matchCount >= maxMatches && afterRemaining == 0;
+    }
+
+    public long lines() {
+        return lines;
+    }
+
+    public long matchCount() {
+        return matchCount;
+    }
+
+    private void line(byte[] data, int from, int to) throws IOException {
+        int end = to > from && data[to - 1] == '\r' ? to - 1 : to;
+        if (end == from) {
+            return;
+        }
+        if (matchCount >= maxMatches) {
+            if (afterRemaining > 0) {
+                output.write(data, from, end - from);
+                output.write('\n');
+                afterRemaining--;
+            }
+            return;
+        }
+        lines++;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (matcher.matches(buffer, from, end)) {
+            matchCount++;
+            while (!before.isEmpty()) {
+                write(before.pollFirst());
+            }
+            output.write(data, from, end - from);
+            output.write('\n');
+            afterRemaining = lineCount;
+            if (matchListener != null) {
+                matchListener.accept(new KeywordMatch(position, new String(data, from, end - from, StandardCharsets.UTF_8),
+                        matcher.matchedKeywords(buffer, from, end)));
+            }
+        } else if (afterRemaining > 0) {
+            output.write(data, from, end - from);
+            output.write('\n');
+            afterRemaining--;
+        } else if (lineCount > 0) {
+            if (before.size() == lineCount) {
+                before.pollFirst();
+            }
+            before.addLast(Arrays.copyOfRange(data, from, end));
+        }
+    }
+
+    private void write(byte[] line) throws IOException {
+        output.write(line);
+        output.write('\n');
+    }
+
+    private void append(byte[] data, int from, int to) {
+        int length = to - from;
+        if (partialLength + length > partial.length) {
+            partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + length));
+        }
+        System.arraycopy(data, from, partial, partialLength, length);
+        partialLength += length;
+    }
+
+    private static int indexOf(byte[] data, int from, int to) {
+        for (int index = from; index < to; index++) {
+            if (data[index] == '\n') {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
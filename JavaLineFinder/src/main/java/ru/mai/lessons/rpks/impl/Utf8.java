@@ -0,0 +1,52 @@
+package ru.mai.lessons.rpks.impl;
+
+import java.nio.ByteBuffer;
+
+final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * Декодирует символ, начинающийся в позиции {@code position}. Возвращает длину символа в байтах
+     * в старших 32 битах и код символа в младших или -1, если последовательность некорректна.
+     */
+    static long decode(ByteBuffer buffer, int position, int to) {
+        int lead = buffer.get(position) & 0xFF;
+        int length;
+        int codePoint;
+        if (lead < 0x80) {
+            return (1L << 32) | lead;
+        } else if (lead >= 0xC0 && lead < 0xE0) {
+            length = 2;
+            codePoint = lead & 0x1F;
+        } else if (lead >= 0xE0 && lead < 0xF0) {
+            length = 3;
+            codePoint = lead & 0x0F;
+        } else if (lead >= 0xF0 && lead < 0xF8) {
+            length = 4;
+            codePoint = lead & 0x07;
+        } else {
+            return -1;
+        }
+        if (position + length > to) {
+            return -1;
+        }
+        for (int index = 1; index < length; index++) {
+            int continuation = buffer.get(position + index) & 0xFF;
+            if ((continuation & 0xC0) != 0x80) {
+                return -1;
+            }
+            codePoint = (codePoint << 6) | (continuation & 0x3F);
+        }
+        return ((long) length << 32) | codePoint;
+    }
+
+    static int length(long decoded) {
+        return (int) (decoded >>> 32);
+    }
+
+    static int codePoint(long decoded) {
+        return (int) decoded;
+    }
+}
@@ -0,0 +1,97 @@
+package ru.mai.lessons.rpks.impl;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Вариант {@link KeywordMatcher}, который ищет кандидатов сразу по 32/64 байта с помощью
+ * Vector API: начало первого символа ключевого слова во всех регистрах сравнивается со всеми
+ * байтами блока, и посимвольная проверка выполняется только для найденных позиций.
+ * Требует запуска JVM с {@code --add-modules jdk.incubator.vector}.
+ */
+public class VectorKeywordMatcher extends KeywordMatcher {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private final byte[] leadValues;
+    private final byte[] secondValues;
+    private final boolean[] hasSecond;
+    private final int tailBytes;
+
+    public VectorKeywordMatcher(String keyWord) {
+        this(keyWord, false, false);
+    }
+
+    public VectorKeywordMatcher(String keyWord, boolean caseSensitive, boolean wholeWord) {
+        super(keyWord, caseSensitive, wholeWord);
+        Set<Integer> prefixes = new LinkedHashSet<>();
+        for (int variant : firstVariants) {
+            prefixes.add(variant < 0x80 ? variant : (leadByte(variant) << 8) | secondByte(variant));
+        }
+        leadValues = new byte[prefixes.size()];
+        secondValues = new byte[prefixes.size()];
+        hasSecond = new boolean[prefixes.size()];
+        int index = 0;
+        boolean anySecond = false;
+        for (int prefix : prefixes) {
+            hasSecond[index] = prefix > 0xFF;
+            leadValues[index] = (byte) (hasSecond[index] ? prefix >>> 8 : prefix);
+            secondValues[index] = (byte) prefix;
+            anySecond |= hasSecond[index];
+            index++;
+        }
+        tailBytes = anySecond ? 1 : 0;
+    }
+
+    /**
+     * Кандидаты отбираются по первым двум байтам первого символа: у кириллицы и других
+     * многобайтовых алфавитов первый байт общий для всего алфавита и сам по себе почти ничего не
+     * отсекает.
+     */
+    @Override
+    public int indexOf(ByteBuffer buffer, int from, int to) {
+        int last = to - keyword.length;
+        int step = SPECIES.length();
+        int position = from;
+
+        for (; position <= last && position + step + tailBytes <= to; position += step) {
+            ByteVector block = ByteVector.fromByteBuffer(SPECIES, buffer, position, ByteOrder.nativeOrder());
+            ByteVector next = tailBytes == 0 ? block
+                    : ByteVector.fromByteBuffer(SPECIES, buffer, position + 1, ByteOrder.nativeOrder());
+            VectorMask<Byte> candidates = candidates(block, next, 0);
+            for (int index = 1; index < leadValues.length; index++) {
+                candidates = candidates.or(candidates(block, next, index));
+            }
+            long bits = candidates.toLong();
+            while (bits != 0) {
+                int candidate = position + Long.numberOfTrailingZeros(bits);
+                if (matchesAt(buffer, candidate, to)) {
+                    return candidate;
+                }
+                bits &= bits - 1;
+            }
+        }
+
+        return super.indexOf(buffer, position, to);
+    }
+
+    private VectorMask<Byte> candidates(ByteVector block, ByteVector next, int index) {
+        VectorMask<Byte> lead = block.eq(leadValues[index]);
+        return hasSecond[index] ? lead.and(next.eq(secondValues[index])) : lead;
+    }
+
+    private static int secondByte(int codePoint) {
+        if (codePoint < 0x800) {
+            return 0x80 | (codePoint & 0x3F);
+        } else if (codePoint < 0x10000) {
+            return 0x80 | ((codePoint >>> 6) & 0x3F);
+        }
+        return 0x80 | ((codePoint >>> 12) & 0x3F);
+    }
+}
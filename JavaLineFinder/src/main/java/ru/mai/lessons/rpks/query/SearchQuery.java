@@ -0,0 +1,97 @@
+package ru.mai.lessons.rpks.query;
+
+import java.util.Objects;
+
+/**
+ * Данный класс описывает запрос поиска: ключевое слово или регулярное выражение
+ * ({@link java.util.regex.Pattern}), параметры сравнения и ограничение числа совпадений. Объект
+ * неизменяемый, методы {@code caseSensitive}, {@code wholeWord} и {@code maxMatches} возвращают
+ * изменённую копию.
+ */
+public class SearchQuery {
+  private final String pattern;
+  private final boolean regex;
+  private final boolean caseSensitive;
+  private final boolean wholeWord;
+  private final int maxMatches;
+
+  private SearchQuery(String pattern, boolean regex, boolean caseSensitive, boolean wholeWord, int maxMatches) {
+    this.pattern = pattern;
+    this.regex = regex;
+    this.caseSensitive = caseSensitive;
+    this.wholeWord = wholeWord;
+    this.maxMatches = maxMatches;
+  }
+
+  public static SearchQuery keyWord(String keyWord) { // поиск подстроки, по умолчанию без учёта регистра
+    return new SearchQuery(keyWord, false, false, false, 0);
+  }
+
+  public static SearchQuery regex(String regex) { // поиск по регулярному выражению, по умолчанию без учёта регистра
+    return new SearchQuery(regex, true, false, false, 0);
+  }
+
+  public SearchQuery caseSensitive(boolean caseSensitive) {
+    return new SearchQuery(pattern, regex, caseSensitive, wholeWord, maxMatches);
+  }
+
+  public SearchQuery wholeWord(boolean wholeWord) { // совпадение не должно граничить с буквой, цифрой или '_'
+    return new SearchQuery(pattern, regex, caseSensitive, wholeWord, maxMatches);
+  }
+
+  public SearchQuery maxMatches(int maxMatches) { // вывести только первые maxMatches совпадений с контекстом, 0 — все
+    if (maxMatches < 0) {
+      throw new IllegalArgumentException("Max matches shouldn't be negative.");
+    }
+    return new SearchQuery(pattern, regex, caseSensitive, wholeWord, maxMatches);
+  }
+
+  public String getPattern() {
+    return pattern;
+  }
+
+  public boolean isRegex() {
+    return regex;
+  }
+
+  public boolean isCaseSensitive() {
+    return caseSensitive;
+  }
+
+  public boolean isWholeWord() {
+    return wholeWord;
+  }
+
+  public int getMaxMatches() {
+    return maxMatches;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SearchQuery that = (SearchQuery) o;
+    return regex == that.regex && caseSensitive == that.caseSensitive && wholeWord == that.wholeWord
+           && maxMatches == that.maxMatches && Objects.equals(pattern, that.pattern);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(pattern, regex, caseSensitive, wholeWord, maxMatches);
+  }
+
+  @Override
+  public String toString() {
+    return "SearchQuery{" +
+           "pattern='" + pattern + '\'' +
+           ", regex=" + regex +
+           ", caseSensitive=" + caseSensitive +
+           ", wholeWord=" + wholeWord +
+           ", maxMatches=" + maxMatches +
+           '}';
+  }
+}
@@ -0,0 +1,58 @@
+package ru.mai.lessons.rpks.result;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Данный класс описывает найденную строку: смещение её начала в файле, текст строки и ключевые
+ * слова, которые в ней встретились.
+ */
+public class KeywordMatch {
+  private final long lineOffset;
+  private final String line;
+  private final List<String> keyWords;
+
+  public KeywordMatch(long lineOffset, String line, List<String> keyWords) {
+    this.lineOffset = lineOffset;
+    this.line = line;
+    this.keyWords = List.copyOf(keyWords);
+  }
+
+  public long getLineOffset() {
+    return lineOffset;
+  }
+
+  public String getLine() {
+    return line;
+  }
+
+  public List<String> getKeyWords() {
+    return keyWords;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    KeywordMatch that = (KeywordMatch) o;
+    return lineOffset == that.lineOffset && line.equals(that.line) && keyWords.equals(that.keyWords);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(lineOffset, line, keyWords);
+  }
+
+  @Override
+  public String toString() {
+    return "KeywordMatch{" +
+           "lineOffset=" + lineOffset +
+           ", line='" + line + '\'' +
+           ", keyWords=" + keyWords +
+           '}';
+  }
+}
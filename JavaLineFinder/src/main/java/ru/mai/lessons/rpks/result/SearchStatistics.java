@@ -0,0 +1,112 @@
+package ru.mai.lessons.rpks.result;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Данный класс описывает состояние одного запроса поиска: сколько просмотрено и найдено, сколько
+ * времени ушло на просмотр строк (суммарно во всех потоках) и на ввод-вывод, и то же по каждому
+ * потоку, участвовавшему в просмотре.
+ */
+public class SearchStatistics {
+  private static final double BYTES_IN_MB = 1024 * 1024;
+  private static final double NANOS_IN_SECOND = 1_000_000_000;
+
+  private final String input;
+  private final long bytesScanned;
+  private final long linesScanned;
+  private final long matches;
+  private final long scanNanos;
+  private final long ioNanos;
+  private final long elapsedNanos;
+  private final List<WorkerStatistics> workers;
+
+  public SearchStatistics(String input, long bytesScanned, long linesScanned, long matches, long scanNanos,
+                          long ioNanos, long elapsedNanos, List<WorkerStatistics> workers) {
+    this.input = input;
+    this.bytesScanned = bytesScanned;
+    this.linesScanned = linesScanned;
+    this.matches = matches;
+    this.scanNanos = scanNanos;
+    this.ioNanos = ioNanos;
+    this.elapsedNanos = elapsedNanos;
+    this.workers = List.copyOf(workers);
+  }
+
+  public String getInput() {
+    return input;
+  }
+
+  public long getBytesScanned() {
+    return bytesScanned;
+  }
+
+  public long getLinesScanned() {
+    return linesScanned;
+  }
+
+  public long getMatches() {
+    return matches;
+  }
+
+  public long getScanNanos() {
+    return scanNanos;
+  }
+
+  public long getIoNanos() {
+    return ioNanos;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  public List<WorkerStatistics> getWorkers() {
+    return workers;
+  }
+
+  public double getThroughputMbPerSecond() { // скорость всего запроса
+    return rate(bytesScanned, elapsedNanos);
+  }
+
+  public double getWorkerThroughputMbPerSecond() { // средняя скорость просмотра одним потоком
+    return rate(bytesScanned, scanNanos);
+  }
+
+  static double rate(long bytes, long nanos) {
+    return nanos == 0 ? 0 : bytes / BYTES_IN_MB / (nanos / NANOS_IN_SECOND);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SearchStatistics that = (SearchStatistics) o;
+    return bytesScanned == that.bytesScanned && linesScanned == that.linesScanned && matches == that.matches
+           && scanNanos == that.scanNanos && ioNanos == that.ioNanos && elapsedNanos == that.elapsedNanos
+           && Objects.equals(input, that.input) && workers.equals(that.workers);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(input, bytesScanned, linesScanned, matches, scanNanos, ioNanos, elapsedNanos, workers);
+  }
+
+  @Override
+  public String toString() {
+    return "SearchStatistics{" +
+           "input='" + input + '\'' +
+           ", bytesScanned=" + bytesScanned +
+           ", linesScanned=" + linesScanned +
+           ", matches=" + matches +
+           ", scanNanos=" + scanNanos +
+           ", ioNanos=" + ioNanos +
+           ", elapsedNanos=" + elapsedNanos +
+           ", workers=" + workers +
+           '}';
+  }
+}
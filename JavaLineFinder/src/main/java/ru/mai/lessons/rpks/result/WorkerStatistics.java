@@ -0,0 +1,61 @@
+package ru.mai.lessons.rpks.result;
+
+import java.util.Objects;
+
+/**
+ * Данный класс описывает долю одного потока в запросе поиска: сколько байтов он просмотрел и
+ * сколько времени на это ушло.
+ */
+public class WorkerStatistics {
+  private final String worker;
+  private final long bytesScanned;
+  private final long scanNanos;
+
+  public WorkerStatistics(String worker, long bytesScanned, long scanNanos) {
+    this.worker = worker;
+    this.bytesScanned = bytesScanned;
+    this.scanNanos = scanNanos;
+  }
+
+  public String getWorker() { // имя потока
+    return worker;
+  }
+
+  public long getBytesScanned() {
+    return bytesScanned;
+  }
+
+  public long getScanNanos() {
+    return scanNanos;
+  }
+
+  public double getThroughputMbPerSecond() {
+    return SearchStatistics.rate(bytesScanned, scanNanos);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    WorkerStatistics that = (WorkerStatistics) o;
+    return bytesScanned == that.bytesScanned && scanNanos == that.scanNanos && worker.equals(that.worker);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(worker, bytesScanned, scanNanos);
+  }
+
+  @Override
+  public String toString() {
+    return "WorkerStatistics{" +
+           "worker='" + worker + '\'' +
+           ", bytesScanned=" + bytesScanned +
+           ", scanNanos=" + scanNanos +
+           '}';
+  }
+}
@@ -0,0 +1,78 @@
+package ru.mai.lessons.rpks.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class AhoCorasickMatcherTest {
+
+  private static final String[] WORDS = {"Корги", "корги", "КОРГИ", "кор", "гик", "corgi", "k", "K", "K",
+      "İ", "i", "ſ", "s", "ß", "ẞ", "Σ", "ς", "σ", " ", "日本語", "日本", "本", "🐶", "🐕", "ᲂ", "о"};
+
+  @DataProvider(name = "keyWordSets")
+  private Object[][] getKeyWordSets() {
+    return new Object[][]{
+        {List.of("корги", "кор", "гик")},
+        {List.of("k", "ss", "ß")},
+        {List.of("日本語", "本", "🐶")},
+        {List.of("İ", "σς", "о")},
+        {List.of("Корги", "ГИКК", "日本", "🐕🐶")}
+    };
+  }
+
+  @Test(dataProvider = "keyWordSets",
+      description = "Проверяем, что побайтный автомат находит те же слова, что и посимвольное сравнение")
+  public void testPositiveMatchedKeywordsLikeString(List<String> keyWords) {
+    // GIVEN
+    Random random = new Random(17);
+    AhoCorasickMatcher matcher = new AhoCorasickMatcher(keyWords);
+
+    for (int attempt = 0; attempt < 2_000; attempt++) {
+      StringBuilder line = new StringBuilder();
+      int words = random.nextInt(20);
+      for (int index = 0; index < words; index++) {
+        line.append(WORDS[random.nextInt(WORDS.length)]);
+      }
+      byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+      String text = lowerCodePoints(line.toString());
+
+      // WHEN
+      List<String> actual = matcher.matchedKeywords(ByteBuffer.wrap(bytes), 0, bytes.length);
+
+      // THEN
+      List<String> expected = keyWords.stream()
+          .filter(keyWord -> text.contains(lowerCodePoints(keyWord)))
+          .toList();
+      assertEquals(actual, expected, line.toString());
+      assertEquals(matcher.matches(ByteBuffer.wrap(bytes), 0, bytes.length), !expected.isEmpty(),
+          line.toString());
+    }
+  }
+
+  @Test(description = "Проверяем, что оборванный многобайтный символ не мешает найти слово сразу за ним")
+  public void testPositiveMatchesAfterBrokenSequence() {
+    // GIVEN начало символа 'к' (0xD0), за которым сразу идёт слово
+    byte[] word = "кот".getBytes(StandardCharsets.UTF_8);
+    byte[] bytes = new byte[word.length + 1];
+    bytes[0] = (byte) 0xD0;
+    System.arraycopy(word, 0, bytes, 1, word.length);
+
+    // WHEN
+    boolean actual = new AhoCorasickMatcher(List.of("кот")).matches(ByteBuffer.wrap(bytes), 0, bytes.length);
+
+    // THEN
+    assertTrue(actual);
+  }
+
+  private static String lowerCodePoints(String line) {
+    StringBuilder result = new StringBuilder();
+    line.codePoints().map(Character::toLowerCase).forEach(result::appendCodePoint);
+    return result.toString();
+  }
+}
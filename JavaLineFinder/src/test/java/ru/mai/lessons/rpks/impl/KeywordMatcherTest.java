@@ -0,0 +1,145 @@
+package ru.mai.lessons.rpks.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class KeywordMatcherTest {
+
+  private static final String[] WORDS = {"Корги", "корги", "КОРГИ", "кор", "гик", "corgi", "CORGI",
+      "k", "K", "K", "ё", "Ё", " ", "...", "пемброк", "日本語", "🐶"};
+
+  @DataProvider(name = "keyWords")
+  private Object[][] getKeyWords() {
+    return new Object[][]{
+        {"корги"},
+        {"CoRgI"},
+        {"k"},
+        {"ё"},
+        {"日本"},
+        {"🐶"}
+    };
+  }
+
+  @Test(dataProvider = "keyWords",
+      description = "Проверяем, что поиск в байтах совпадает с toLowerCase().contains по строке")
+  public void testPositiveMatchesLikeString(String keyWord) {
+    // GIVEN
+    Random random = new Random(7);
+    KeywordMatcher matcher = new KeywordMatcher(keyWord);
+
+    for (int attempt = 0; attempt < 2_000; attempt++) {
+      StringBuilder line = new StringBuilder();
+      int words = random.nextInt(40);
+      for (int index = 0; index < words; index++) {
+        line.append(WORDS[random.nextInt(WORDS.length)]);
+      }
+      byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+
+      // WHEN
+      boolean actual = matcher.matches(ByteBuffer.wrap(bytes), 0, bytes.length);
+
+      // THEN
+      assertEquals(actual, line.toString().toLowerCase().contains(keyWord.toLowerCase()),
+          line.toString());
+    }
+  }
+
+  @Test(dataProvider = "keyWords",
+      description = "Проверяем, что векторная реализация находит те же позиции, что и скалярная")
+  public void testPositiveVectorMatchesScalar(String keyWord) {
+    // GIVEN
+    Random random = new Random(11);
+    KeywordMatcher scalar = new KeywordMatcher(keyWord);
+    KeywordMatcher vector = KeywordMatcher.create(keyWord);
+    assertTrue(vector instanceof VectorKeywordMatcher, "jdk.incubator.vector is not enabled");
+
+    for (int attempt = 0; attempt < 2_000; attempt++) {
+      StringBuilder line = new StringBuilder();
+      int words = random.nextInt(120);
+      for (int index = 0; index < words; index++) {
+        line.append(WORDS[random.nextInt(WORDS.length)]);
+      }
+      byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 16);
+      buffer.position(16);
+      buffer.put(bytes);
+      int from = random.nextInt(17);
+
+      // WHEN
+      int actual = vector.indexOf(buffer, from, buffer.limit());
+
+      // THEN
+      assertEquals(actual, scalar.indexOf(buffer, from, buffer.limit()), line.toString());
+    }
+  }
+
+  @DataProvider(name = "matchOptions")
+  private Object[][] getMatchOptions() {
+    return new Object[][]{
+        {"корги", true, false},
+        {"КОРГИ", true, true},
+        {"корги", false, true},
+        {"k", false, true},
+        {"🐶", true, true}
+    };
+  }
+
+  @Test(dataProvider = "matchOptions",
+      description = "Проверяем учёт регистра и поиск целого слова: результат совпадает с Pattern")
+  public void testPositiveMatchOptionsLikePattern(String keyWord, boolean caseSensitive,
+                                                  boolean wholeWord) {
+    // GIVEN
+    Random random = new Random(13);
+    KeywordMatcher matcher = KeywordMatcher.create(keyWord, caseSensitive, wholeWord);
+    String expression = Pattern.quote(caseSensitive ? keyWord : lowerCodePoints(keyWord));
+    if (wholeWord) {
+      expression = "(?<![\\p{L}\\p{Nd}_])" + expression + "(?![\\p{L}\\p{Nd}_])";
+    }
+    Pattern pattern = Pattern.compile(expression);
+
+    for (int attempt = 0; attempt < 2_000; attempt++) {
+      StringBuilder line = new StringBuilder();
+      int words = random.nextInt(40);
+      for (int index = 0; index < words; index++) {
+        line.append(WORDS[random.nextInt(WORDS.length)]);
+      }
+      byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+      String text = caseSensitive ? line.toString() : lowerCodePoints(line.toString());
+
+      // WHEN
+      boolean actual = matcher.matches(ByteBuffer.wrap(bytes), 0, bytes.length);
+
+      // THEN
+      assertEquals(actual, pattern.matcher(text).find(), line.toString());
+    }
+  }
+
+  @Test(description = "Проверяем, что варианты первого символа совпадают с полным перебором кодовых точек")
+  public void testPositiveFirstVariantsCoverAllCodePoints() {
+    for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+      // GIVEN
+      int expected = codePoint;
+
+      // WHEN
+      int[] variants = CaseFolds.lowerCaseVariants(Character.toLowerCase(codePoint));
+
+      // THEN
+      assertTrue(Arrays.stream(variants).anyMatch(variant -> variant == expected),
+          Integer.toHexString(codePoint));
+    }
+  }
+
+  private static String lowerCodePoints(String line) {
+    StringBuilder result = new StringBuilder();
+    line.codePoints().map(Character::toLowerCase).forEach(result::appendCodePoint);
+    return result.toString();
+  }
+}
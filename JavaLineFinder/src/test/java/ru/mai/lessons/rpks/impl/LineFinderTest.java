@@ -1,19 +1,48 @@
 package ru.mai.lessons.rpks.impl;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import io.airlift.compress.zstd.ZstdOutputStream;
 import lombok.extern.slf4j.Slf4j;
+import org.testng.SkipException;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 import ru.mai.lessons.rpks.ILineFinder;
+import ru.mai.lessons.rpks.ISearchMetricsListener;
 import ru.mai.lessons.rpks.exception.LineCountShouldBePositiveException;
+import ru.mai.lessons.rpks.exception.SearchTimeoutException;
+import ru.mai.lessons.rpks.query.SearchQuery;
+import ru.mai.lessons.rpks.result.KeywordMatch;
+import ru.mai.lessons.rpks.result.SearchStatistics;
+import ru.mai.lessons.rpks.result.WorkerStatistics;
 
 @Slf4j
 public class LineFinderTest {
@@ -156,7 +185,958 @@ public class LineFinderTest {
     // THEN ожидаем получение исключения
   }
 
+  @DataProvider(name = "largeFileCases")
+  private Object[][] getLargeFileCases() {
+    return new Object[][]{
+            {"пемброк", 0},
+            {"Пемброк", 2},
+            {"XIX", 5}
+    };
+  }
+
+  @Test(dataProvider = "largeFileCases",
+          description = "Проверяем поиск в большом файле: совпадения и контекст на границах блоков "
+                  + "не теряются и не дублируются")
+  public void testPositiveFindLargeFile(String keyWord, int lineCount)
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path inputFile = createLargeInputFile();
+    Path outputFile = Files.createTempFile("lineFinderLarge", ".txt");
+    outputFile.toFile().deleteOnExit();
+    List<String> expected = findNaive(Files.readAllLines(inputFile), List.of(keyWord), lineCount);
+
+    // WHEN
+    long startTime = System.currentTimeMillis();
+    lineFinder.find(inputFile.toString(), outputFile.toString(), keyWord, lineCount);
+    log.info("Поиск отработал за {} ms.", System.currentTimeMillis() - startTime);
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile), expected);
+  }
+
+  @Test(description = "Проверяем поиск нескольких ключевых слов за один проход: вывод совпадает с "
+          + "объединением результатов, а для каждой строки известны найденные в ней слова")
+  public void testPositiveFindMultipleKeyWords()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path inputFile = createLargeInputFile();
+    Path outputFile = Files.createTempFile("lineFinderMulti", ".txt");
+    outputFile.toFile().deleteOnExit();
+    List<String> keyWords = List.of("Корги", "никогда", "XIX", "кардиган");
+    int lineCount = 1;
+    List<KeywordMatch> matches = new ArrayList<>();
+
+    // WHEN
+    long startTime = System.currentTimeMillis();
+    lineFinder.find(inputFile.toString(), outputFile.toString(), keyWords, lineCount, matches::add);
+    log.info("Поиск отработал за {} ms.", System.currentTimeMillis() - startTime);
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile),
+            findNaive(Files.readAllLines(inputFile), keyWords, lineCount));
+    List<String> matchedLines = Files.readAllLines(inputFile).stream()
+            .filter(line -> keyWords.stream()
+                    .anyMatch(keyWord -> line.toLowerCase().contains(keyWord.toLowerCase())))
+            .toList();
+    assertEquals(matches.stream().map(KeywordMatch::getLine).toList(), matchedLines);
+    for (KeywordMatch match : matches) {
+      List<String> expectedKeyWords = keyWords.stream()
+              .filter(keyWord -> match.getLine().toLowerCase().contains(keyWord.toLowerCase()))
+              .toList();
+      assertEquals(match.getKeyWords(), expectedKeyWords);
+    }
+  }
+
+  @Test(description = "Проверяем поиск с индексом границ строк: индекс создаётся, дополняется при "
+          + "дописывании файла и перестраивается при его перезаписи")
+  public void testPositiveFindWithLineIndex()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    LineFinder indexedLineFinder = new LineFinder();
+    indexedLineFinder.setLineIndexEnabled(true);
+    Path inputFile = createLargeInputFile();
+    Path indexFile = Paths.get(inputFile + LineIndex.SUFFIX);
+    indexFile.toFile().deleteOnExit();
+    Path outputFile = Files.createTempFile("lineFinderIndexed", ".txt");
+    outputFile.toFile().deleteOnExit();
+    String keyWord = "пемброк";
+    int lineCount = 2;
+
+    // WHEN
+    indexedLineFinder.find(inputFile.toString(), outputFile.toString(), keyWord, lineCount);
+
+    // THEN
+    assertTrue(Files.exists(indexFile));
+    assertEquals(Files.readAllLines(outputFile),
+            findNaive(Files.readAllLines(inputFile), List.of(keyWord), lineCount));
+
+    // WHEN
+    Files.write(inputFile, List.of("", "Пемброк в конце", "хвост", "", "ещё строка"),
+            StandardOpenOption.APPEND);
+    indexedLineFinder.find(inputFile.toString(), outputFile.toString(), keyWord, lineCount);
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile),
+            findNaive(Files.readAllLines(inputFile), List.of(keyWord), lineCount));
+
+    // WHEN
+    Files.write(inputFile, List.of("другой", "файл про пемброка", "целиком"));
+    indexedLineFinder.find(inputFile.toString(), outputFile.toString(), keyWord, lineCount);
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile),
+            List.of("другой", "файл про пемброка", "целиком"));
+  }
+
+  @DataProvider(name = "unwritableIndexCases")
+  public Object[][] getUnwritableIndexCases() {
+    return new Object[][] {
+        {"read-only directory"},
+        {"index path is a directory"},
+    };
+  }
+
+  @Test(dataProvider = "unwritableIndexCases",
+          description = "Проверяем, что поиск, для которого нельзя записать индексы, просматривает файл "
+                  + "без них и учитывает сбой в статистике")
+  public void testPositiveFindWithUnwritableIndex(String indexCase)
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path directory = Files.createTempDirectory("lineFinderUnwritableIndex");
+    directory.toFile().deleteOnExit();
+    Path inputFile = Files.copy(createLargeInputFile(), directory.resolve("input.txt"));
+    inputFile.toFile().deleteOnExit();
+    if (indexCase.equals("read-only directory")) {
+      directory.toFile().setWritable(false);
+      if (Files.isWritable(directory)) {
+        directory.toFile().setWritable(true);
+        throw new SkipException("Permissions are not enforced for this user");
+      }
+    } else {
+      for (String suffix : List.of(LineIndex.SUFFIX, NgramIndex.SUFFIX)) {
+        Files.createDirectory(Paths.get(inputFile + suffix)).toFile().deleteOnExit();
+      }
+    }
+    Path outputFile = Files.createTempFile("lineFinderUnwritableIndex", ".txt");
+    outputFile.toFile().deleteOnExit();
+    LineFinder indexedLineFinder = new LineFinder();
+    indexedLineFinder.setNgramIndexEnabled(true);
+    long failuresBefore = LineFinder.totalMetrics().getIndexFailures();
+
+    try {
+      // WHEN
+      indexedLineFinder.find(inputFile.toString(), outputFile.toString(), "пемброк", 2);
+    } finally {
+      directory.toFile().setWritable(true);
+    }
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile),
+            findNaive(Files.readAllLines(inputFile), List.of("пемброк"), 2));
+    assertTrue(LineFinder.totalMetrics().getIndexFailures() > failuresBefore);
+  }
+
+  @Test(description = "Проверяем, что индекс перестраивается, если файл перезаписан на месте без "
+          + "изменения размера и последних байтов")
+  public void testPositiveFindAfterSameSizeRewrite()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    LineFinder indexedLineFinder = new LineFinder();
+    indexedLineFinder.setLineIndexEnabled(true);
+    Path inputFile = createLargeInputFile();
+    Paths.get(inputFile + LineIndex.SUFFIX).toFile().deleteOnExit();
+    Path outputFile = Files.createTempFile("lineFinderRewrite", ".txt");
+    outputFile.toFile().deleteOnExit();
+    List<String> lines = new ArrayList<>(Files.readAllLines(inputFile));
+    lines.add(0, "пемброк на первой строке");
+    lines.add(1, "вторая");
+    Files.write(inputFile, lines);
+    indexedLineFinder.find(inputFile.toString(), outputFile.toString(), "первой", 0);
+
+    // WHEN первые две строки меняются местами: размер и хвост файла прежние, границы строк — нет
+    lines.set(0, "вторая");
+    lines.set(1, "пемброк на первой строке");
+    Files.write(inputFile, lines);
+    Files.setLastModifiedTime(inputFile,
+        FileTime.fromMillis(Files.getLastModifiedTime(inputFile).toMillis() + 10_000));
+    indexedLineFinder.find(inputFile.toString(), outputFile.toString(), "первой", 1);
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile), findNaive(lines, List.of("первой"), 1));
+  }
+
+  @Test(description = "Проверяем, что индекс триграмм перестраивается, если файл перезаписан на месте "
+          + "без изменения размера и последних байтов")
+  public void testPositiveFindWithNgramIndexAfterSameSizeRewrite()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    LineFinder indexedLineFinder = new LineFinder();
+    indexedLineFinder.setNgramIndexEnabled(true);
+    Path inputFile = createLargeInputFile();
+    Paths.get(inputFile + LineIndex.SUFFIX).toFile().deleteOnExit();
+    Paths.get(inputFile + NgramIndex.SUFFIX).toFile().deleteOnExit();
+    Path outputFile = Files.createTempFile("lineFinderNgramRewrite", ".txt");
+    outputFile.toFile().deleteOnExit();
+    List<String> lines = new ArrayList<>(Files.readAllLines(inputFile));
+    lines.add(0, "корги");
+    lines.add(1, "пемброк");
+    Files.write(inputFile, lines);
+    indexedLineFinder.find(inputFile.toString(), outputFile.toString(), "корги", 0);
+
+    // WHEN вторая строка заменяется строкой той же длины: размер и хвост файла прежние
+    lines.set(1, "шпицева");
+    Files.write(inputFile, lines);
+    Files.setLastModifiedTime(inputFile,
+        FileTime.fromMillis(Files.getLastModifiedTime(inputFile).toMillis() + 10_000));
+    indexedLineFinder.find(inputFile.toString(), outputFile.toString(), "шпицева", 0);
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile), findNaive(lines, List.of("шпицева"), 0));
+  }
+
+  @Test(description = "Проверяем, что одновременные запросы, дополняющие общий индекс, не портят друг "
+          + "другу результат")
+  public void testPositiveConcurrentQueriesShareIndex() throws Exception {
+    // GIVEN
+    Path inputFile = createLargeInputFile();
+    Paths.get(inputFile + LineIndex.SUFFIX).toFile().deleteOnExit();
+    Paths.get(inputFile + NgramIndex.SUFFIX).toFile().deleteOnExit();
+    String keyWord = "пемброк";
+    int lineCount = 1;
+    ExecutorService queries = Executors.newFixedThreadPool(4);
+
+    try {
+      for (int round = 0; round < 3; round++) {
+        Files.write(inputFile, List.of("", "пемброк номер " + round, "хвост"), StandardOpenOption.APPEND);
+        List<String> expected = findNaive(Files.readAllLines(inputFile), List.of(keyWord), lineCount);
+
+        // WHEN
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int query = 0; query < 4; query++) {
+          results.add(queries.submit(() -> {
+            LineFinder indexedLineFinder = new LineFinder();
+            indexedLineFinder.setNgramIndexEnabled(true);
+            Path outputFile = Files.createTempFile("lineFinderConcurrent", ".txt");
+            try {
+              indexedLineFinder.find(inputFile.toString(), outputFile.toString(), keyWord, lineCount);
+              return Files.readAllLines(outputFile);
+            } finally {
+              Files.delete(outputFile);
+            }
+          }));
+        }
+
+        // THEN
+        for (Future<List<String>> result : results) {
+          assertEquals(result.get(), expected);
+        }
+      }
+    } finally {
+      queries.shutdown();
+    }
+  }
+
+  @Test(description = "Проверяем поиск по индексу триграмм: вывод совпадает с полным просмотром, "
+          + "дописанные строки находятся и до, и после дополнения индекса")
+  public void testPositiveFindWithNgramIndex()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    LineFinder indexedLineFinder = new LineFinder();
+    indexedLineFinder.setNgramIndexEnabled(true);
+    Path inputFile = createLargeInputFile();
+    Paths.get(inputFile + LineIndex.SUFFIX).toFile().deleteOnExit();
+    Path indexFile = Paths.get(inputFile + NgramIndex.SUFFIX);
+    indexFile.toFile().deleteOnExit();
+    Path outputFile = Files.createTempFile("lineFinderNgram", ".txt");
+    outputFile.toFile().deleteOnExit();
+    int lineCount = 3;
+
+    for (String keyWord : List.of("пемброк", "Кардиган", "ан", "несуществующее")) {
+      // WHEN
+      indexedLineFinder.find(inputFile.toString(), outputFile.toString(), keyWord, lineCount);
+
+      // THEN
+      assertTrue(Files.exists(indexFile));
+      assertEquals(Files.readAllLines(outputFile),
+              findNaive(Files.readAllLines(inputFile), List.of(keyWord), lineCount));
+    }
+
+    // WHEN
+    Files.write(inputFile, List.of("", "Пемброк в конце", "хвост"), StandardOpenOption.APPEND);
+    Files.write(inputFile, "незавершённая строка про пемброка".getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+    indexedLineFinder.find(inputFile.toString(), outputFile.toString(), "пемброк", lineCount);
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile),
+            findNaive(Files.readAllLines(inputFile), List.of("пемброк"), lineCount));
+
+    // WHEN
+    Files.write(inputFile, List.of(" и ещё одна", "последний пемброк"), StandardOpenOption.APPEND);
+    indexedLineFinder.find(inputFile.toString(), outputFile.toString(), "пемброк", lineCount);
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile),
+            findNaive(Files.readAllLines(inputFile), List.of("пемброк"), lineCount));
+  }
+
+  @Test(description = "Проверяем поиск по индексу триграмм из нескольких сегментов: кандидаты каждого "
+          + "сегмента выбираются отдельно, а вывод совпадает с полным просмотром")
+  public void testPositiveFindWithNgramIndexAcrossSegments()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    LineFinder indexedLineFinder = new LineFinder();
+    indexedLineFinder.setNgramIndexEnabled(true);
+    Path inputFile = createLargeInputFile();
+    byte[] content = Files.readAllBytes(inputFile);
+    while (Files.size(inputFile) < 2 * NgramIndex.SEGMENT_INPUT_SIZE + content.length) {
+      Files.write(inputFile, content, StandardOpenOption.APPEND);
+    }
+    Paths.get(inputFile + LineIndex.SUFFIX).toFile().deleteOnExit();
+    Paths.get(inputFile + NgramIndex.SUFFIX).toFile().deleteOnExit();
+    Path outputFile = Files.createTempFile("lineFinderNgramSegments", ".txt");
+    outputFile.toFile().deleteOnExit();
+    int lineCount = 2;
+
+    // WHEN
+    indexedLineFinder.find(inputFile.toString(), outputFile.toString(), "пемброк", lineCount);
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile),
+            findNaive(Files.readAllLines(inputFile), List.of("пемброк"), lineCount));
+  }
+
+  @Test(description = "Проверяем слежение за дописываемым файлом: обрабатываются только новые строки, "
+          + "незавершённая строка ждёт перевода строки, усечение и ротация файла начинают чтение заново")
+  public void testPositiveFollowGrowingFile()
+          throws IOException, LineCountShouldBePositiveException, InterruptedException {
+    // GIVEN
+    Path directory = Files.createTempDirectory("lineFollower");
+    Path inputFile = directory.resolve("app.log");
+    Path outputFile = directory.resolve("matches.txt");
+    Path rotated = directory.resolve("app.log.1");
+    directory.toFile().deleteOnExit();
+    List.of(inputFile, outputFile, rotated).forEach(file -> file.toFile().deleteOnExit());
+    LineFinder followingLineFinder = new LineFinder();
+    Files.write(inputFile, List.of("старт", "ошибка один", "после", "", "тишина"));
+
+    try (LineFollower follower = followingLineFinder.follow(inputFile.toString(), outputFile.toString(), "ошибка", 1, 0)) {
+      // WHEN
+      long firstMatches = follower.poll();
+
+      // THEN
+      assertEquals(firstMatches, 1);
+      assertEquals(Files.readAllLines(outputFile), List.of("старт", "ошибка один", "после"));
+      assertEquals(follower.offset(), Files.size(inputFile));
+
+      // WHEN
+      Files.write(inputFile, "ещё\nОшибка два, без перевода".getBytes(StandardCharsets.UTF_8),
+              StandardOpenOption.APPEND);
+      long secondMatches = follower.poll();
+      Files.write(inputFile, " строки\nконец\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      long thirdMatches = follower.poll();
+
+      // THEN
+      assertEquals(secondMatches, 0);
+      assertEquals(thirdMatches, 1);
+      assertEquals(Files.readAllLines(outputFile), List.of("старт", "ошибка один", "после",
+              "ещё", "Ошибка два, без перевода строки", "конец"));
+
+      // WHEN
+      Files.write(inputFile, List.of("ошибка после усечения"));
+      follower.poll();
+      Files.move(inputFile, rotated);
+      Files.write(rotated, List.of("хвост старого"), StandardOpenOption.APPEND);
+      Files.write(inputFile, List.of("новый файл", "ошибка после ротации"));
+      follower.poll();
+
+      // THEN
+      assertEquals(Files.readAllLines(outputFile), List.of("старт", "ошибка один", "после",
+              "ещё", "Ошибка два, без перевода строки", "конец",
+              "ошибка после усечения", "хвост старого",
+              "новый файл", "ошибка после ротации"));
+    }
+
+    // WHEN
+    long offset = Files.size(inputFile);
+    Files.write(inputFile, List.of("ошибка после перезапуска"), StandardOpenOption.APPEND);
+    try (LineFollower follower = followingLineFinder.follow(inputFile.toString(), outputFile.toString(), "ошибка", 1,
+            offset)) {
+      Thread watcher = new Thread(() -> {
+        try {
+          follower.follow(50);
+        } catch (IOException | InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      });
+      watcher.start();
+      Thread.sleep(300);
+      follower.close();
+      watcher.join(5000);
+    }
+
+    // THEN
+    List<String> output = Files.readAllLines(outputFile);
+    assertEquals(output.get(output.size() - 1), "ошибка после перезапуска");
+  }
+
+  @DataProvider(name = "compressedFormats")
+  public Object[][] getCompressedFormats() {
+    return new Object[][] {
+        {"gzip"},
+        {"gzip-members"},
+        {"bgzip"},
+        {"zstd"}
+    };
+  }
+
+  @Test(dataProvider = "compressedFormats",
+          description = "Проверяем поиск в сжатом файле: вывод совпадает с поиском в распакованном файле")
+  public void testPositiveFindCompressedFile(String format)
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path inputFile = createLargeInputFile();
+    byte[] content = Files.readAllBytes(inputFile);
+    Path compressedFile = Files.createTempFile("lineFinderCompressed", "." + format);
+    compressedFile.toFile().deleteOnExit();
+    try (OutputStream output = Files.newOutputStream(compressedFile)) {
+      switch (format) {
+        case "gzip" -> writeGzip(output, content, 0, content.length);
+        case "gzip-members" -> {
+          writeGzip(output, content, 0, content.length / 3);
+          writeGzip(output, content, content.length / 3, content.length);
+        }
+        case "bgzip" -> writeBgzip(output, content);
+        default -> {
+          try (OutputStream zstd = new ZstdOutputStream(output)) {
+            zstd.write(content);
+          }
+        }
+      }
+    }
+    Path outputFile = Files.createTempFile("lineFinderCompressedOutput", ".txt");
+    outputFile.toFile().deleteOnExit();
+    List<String> keyWords = List.of("пемброк", "Кардиган");
+    int lineCount = 2;
+
+    // WHEN
+    new LineFinder().find(compressedFile.toString(), outputFile.toString(), keyWords, lineCount);
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile), findNaive(Files.readAllLines(inputFile), keyWords, lineCount));
+  }
+
+  @DataProvider(name = "searchQueries")
+  public Object[][] getSearchQueries() {
+    return new Object[][] {
+        {SearchQuery.keyWord("Пемброк").caseSensitive(true), "Пемброк"},
+        {SearchQuery.keyWord("корги").wholeWord(true), "(?<![\\p{L}\\p{Nd}_])(?iu:корги)(?![\\p{L}\\p{Nd}_])"},
+        {SearchQuery.regex("кардиган.*корги"), "(?iu)кардиган.*корги"},
+        {SearchQuery.regex("[Пп]емброк\\S*").caseSensitive(true), "[Пп]емброк\\S*"}
+    };
+  }
+
+  @Test(dataProvider = "searchQueries",
+          description = "Проверяем поиск с параметрами запроса: с индексом триграмм и без результат "
+                  + "совпадает с проверкой каждой строки через Pattern")
+  public void testPositiveFindWithSearchQuery(SearchQuery query, String expectedRegex)
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path inputFile = createLargeInputFile();
+    Paths.get(inputFile + LineIndex.SUFFIX).toFile().deleteOnExit();
+    Paths.get(inputFile + NgramIndex.SUFFIX).toFile().deleteOnExit();
+    Path outputFile = Files.createTempFile("lineFinderQuery", ".txt");
+    outputFile.toFile().deleteOnExit();
+    Pattern pattern = Pattern.compile(expectedRegex);
+    int lineCount = 1;
+    List<String> lines = Files.readAllLines(inputFile).stream().filter(line -> !line.isEmpty()).toList();
+    boolean[] selected = new boolean[lines.size()];
+    for (int index = 0; index < lines.size(); index++) {
+      if (pattern.matcher(lines.get(index)).find()) {
+        for (int context = Math.max(0, index - lineCount);
+             context <= Math.min(lines.size() - 1, index + lineCount); context++) {
+          selected[context] = true;
+        }
+      }
+    }
+    List<String> expected = new ArrayList<>();
+    for (int index = 0; index < lines.size(); index++) {
+      if (selected[index]) {
+        expected.add(lines.get(index));
+      }
+    }
+
+    for (boolean ngramIndexEnabled : new boolean[] {false, true}) {
+      LineFinder queryLineFinder = new LineFinder();
+      queryLineFinder.setNgramIndexEnabled(ngramIndexEnabled);
+
+      // WHEN
+      queryLineFinder.find(inputFile.toString(), outputFile.toString(), query, lineCount);
+
+      // THEN
+      assertEquals(Files.readAllLines(outputFile), expected);
+    }
+  }
+
+  @Test(description = "Проверяем поиск по каталогу: файлы из подкаталогов и сжатые файлы выводятся "
+          + "группами в порядке сортировки путей, файлы без совпадений и не подходящие под шаблон пропускаются")
+  public void testPositiveFindInDirectory()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path directory = Files.createTempDirectory("lineFinderTree");
+    Path large = createLargeInputFile();
+    Path first = Files.copy(large, directory.resolve("b.log"));
+    Path nested = Files.createDirectories(directory.resolve("a").resolve("nested"));
+    Path small = Files.write(nested.resolve("small.log"), List.of("первая", "", "Пемброк здесь", "последняя"));
+    Path empty = Files.write(nested.resolve("nothing.log"), List.of("совпадений нет"));
+    Path skipped = Files.write(directory.resolve("skipped.txt"), List.of("пемброк, но не .log"));
+    Path compressed = directory.resolve("c.log");
+    try (OutputStream output = Files.newOutputStream(compressed)) {
+      writeGzip(output, Files.readAllBytes(large), 0, (int) Files.size(large));
+    }
+    Path outputFile = directory.resolve("result.log");
+    List.of(directory, nested.getParent(), nested).forEach(path -> path.toFile().deleteOnExit());
+    List.of(first, small, empty, skipped, compressed, outputFile).forEach(path -> path.toFile().deleteOnExit());
+    SearchQuery query = SearchQuery.keyWord("пемброк");
+    int lineCount = 1;
+
+    // WHEN
+    new LineFinder().findInDirectory(directory.toString(), "**.log", outputFile.toString(), query, lineCount);
+
+    // THEN
+    List<String> expected = new ArrayList<>();
+    for (Path file : List.of(small, first, compressed)) {
+      expected.add("==> " + file + " <==");
+      expected.addAll(findNaive(Files.readAllLines(file == compressed ? large : file), List.of("пемброк"),
+              lineCount));
+    }
+    assertEquals(Files.readAllLines(outputFile), expected);
+  }
+
+  @Test(description = "Проверяем, что после остановки поиска по каталогу ограничением числа совпадений "
+          + "не остаётся открытых файлов")
+  public void testPositiveFindInDirectoryClosesFilesOnMaxMatches()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path descriptors = Paths.get("/proc/self/fd");
+    if (!Files.isDirectory(descriptors)) {
+      throw new SkipException("Open file descriptors are not listed on this platform");
+    }
+    Path directory = Files.createTempDirectory("lineFinderOpenFiles");
+    directory.toFile().deleteOnExit();
+    for (int file = 0; file < 40; file++) {
+      Files.write(directory.resolve(String.format("%02d.log", file)), List.of("корги", "пемброк")).toFile()
+          .deleteOnExit();
+    }
+    Path outputFile = Files.createTempFile("lineFinderOpenFiles", ".txt");
+    outputFile.toFile().deleteOnExit();
+
+    // WHEN
+    new LineFinder().findInDirectory(directory.toString(), "*.log", outputFile.toString(),
+        SearchQuery.keyWord("корги").maxMatches(1), 0);
+
+    // THEN
+    assertEquals(Files.readAllLines(outputFile), List.of("==> " + directory.resolve("00.log") + " <==", "корги"));
+    List<Path> openFiles = new ArrayList<>();
+    try (var links = Files.list(descriptors)) {
+      for (Path link : links.toList()) {
+        try {
+          Path target = Files.readSymbolicLink(link);
+          if (target.startsWith(directory.toRealPath())) {
+            openFiles.add(target);
+          }
+        } catch (IOException e) {
+          // дескриптор закрыт, пока перебирали список
+        }
+      }
+    }
+    assertEquals(openFiles, List.of());
+  }
+
+  @Test(description = "Проверяем, что сжатые файлы каталога просматриваются параллельно, а ограничение "
+          + "числа совпадений, исчерпанное посреди архива, обрезает его вывод")
+  public void testPositiveFindInDirectoryCompressedWithMaxMatches()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path directory = Files.createTempDirectory("lineFinderCompressedTree");
+    directory.toFile().deleteOnExit();
+    List<String> lines = List.of("корги раз", "середина", "корги два", "конец");
+    byte[] content = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+    List<Path> archives = new ArrayList<>();
+    for (String name : List.of("a.gz", "b.gz", "c.gz")) {
+      Path archive = directory.resolve(name);
+      try (OutputStream output = Files.newOutputStream(archive)) {
+        writeGzip(output, content, 0, content.length);
+      }
+      archive.toFile().deleteOnExit();
+      archives.add(archive);
+    }
+    Path outputFile = directory.resolve("result.txt");
+    outputFile.toFile().deleteOnExit();
+    int lineCount = 1;
+
+    // WHEN
+    new LineFinder().findInDirectory(directory.toString(), "*.gz", outputFile.toString(),
+        SearchQuery.keyWord("корги").maxMatches(3), lineCount);
+
+    // THEN
+    List<String> expected = new ArrayList<>();
+    expected.add("==> " + archives.get(0) + " <==");
+    expected.addAll(lines);
+    expected.add("==> " + archives.get(1) + " <==");
+    expected.addAll(findNaive(lines, List.of("корги"), lineCount, 1));
+    assertEquals(Files.readAllLines(outputFile), expected);
+  }
+
+  @Test(description = "Проверяем, что сжатый файл без совпадений не выводит заголовок, а вывод большого "
+          + "архива, записанный частями, совпадает с полным просмотром")
+  public void testPositiveFindInDirectoryCompressedWithoutMatches()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path directory = Files.createTempDirectory("lineFinderCompressedEmpty");
+    directory.toFile().deleteOnExit();
+    Path large = createLargeInputFile();
+    byte[] matching = Files.readAllBytes(large);
+    byte[] notMatching = "совпадений нет\nи здесь тоже\n".getBytes(StandardCharsets.UTF_8);
+    for (String name : List.of("a.gz", "b.gz", "c.gz")) {
+      byte[] content = name.equals("b.gz") ? matching : notMatching;
+      try (OutputStream output = Files.newOutputStream(directory.resolve(name))) {
+        writeGzip(output, content, 0, content.length);
+      }
+      directory.resolve(name).toFile().deleteOnExit();
+    }
+    Path outputFile = directory.resolve("result.txt");
+    outputFile.toFile().deleteOnExit();
+    int lineCount = 2;
+
+    // WHEN
+    new LineFinder().findInDirectory(directory.toString(), "*.gz", outputFile.toString(),
+        SearchQuery.keyWord("корги"), lineCount);
+
+    // THEN
+    List<String> expected = new ArrayList<>();
+    expected.add("==> " + directory.resolve("b.gz") + " <==");
+    expected.addAll(findNaive(Files.readAllLines(large), List.of("корги"), lineCount));
+    assertEquals(Files.readAllLines(outputFile), expected);
+  }
+
+  @Test(description = "Проверяем, что поиски на общем и на переданном исполнителе дают тот же результат, "
+          + "а исполнитель не останавливается после запроса")
+  public void testPositiveFindWithInjectedExecutor()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path inputFile = createLargeInputFile();
+    Path outputFile = Files.createTempFile("lineFinderExecutor", ".txt");
+    outputFile.toFile().deleteOnExit();
+    List<String> expected = findNaive(Files.readAllLines(inputFile), List.of("корги"), 2);
+    ExecutorService virtualThreads = LineFinder.newVirtualThreadExecutor();
+
+    try {
+      for (ExecutorService executor : List.of(LineFinder.sharedExecutor(), virtualThreads)) {
+        LineFinder executorLineFinder = new LineFinder(executor);
+        executorLineFinder.setParallelism(3);
+        for (int attempt = 0; attempt < 3; attempt++) {
+          // WHEN
+          executorLineFinder.find(inputFile.toString(), outputFile.toString(), "корги", 2);
+
+          // THEN
+          assertEquals(Files.readAllLines(outputFile), expected);
+          assertTrue(!executor.isShutdown());
+        }
+      }
+    } finally {
+      virtualThreads.shutdownNow();
+    }
+  }
+
+  @Test(expectedExceptions = SearchTimeoutException.class,
+          description = "Проверяем, что поиск, не уложившийся в срок, прерывается с исключением")
+  public void testNegativeFindTimeout() throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path inputFile = createLargeInputFile();
+    byte[] content = Files.readAllBytes(inputFile);
+    for (int copy = 0; copy < 8; copy++) {
+      Files.write(inputFile, content, StandardOpenOption.APPEND);
+    }
+    Path outputFile = Files.createTempFile("lineFinderTimeout", ".txt");
+    outputFile.toFile().deleteOnExit();
+    LineFinder timedLineFinder = new LineFinder(LineFinder.sharedExecutor());
+    timedLineFinder.setQueryTimeout(1);
+
+    // WHEN
+    timedLineFinder.find(inputFile.toString(), outputFile.toString(), SearchQuery.regex("к.р.и"), 2);
+  }
+
+  @Test(expectedExceptions = SearchTimeoutException.class,
+          description = "Проверяем, что поиск по каталогу сжатых файлов, не уложившийся в срок, прерывается "
+                  + "с исключением")
+  public void testNegativeFindInDirectoryCompressedTimeout()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path directory = Files.createTempDirectory("lineFinderCompressedTimeout");
+    directory.toFile().deleteOnExit();
+    byte[] content = Files.readAllBytes(createLargeInputFile());
+    for (int archive = 0; archive < 4; archive++) {
+      Path file = directory.resolve(archive + ".gz");
+      try (OutputStream output = Files.newOutputStream(file)) {
+        writeGzip(output, content, 0, content.length);
+      }
+      file.toFile().deleteOnExit();
+    }
+    Path outputFile = Files.createTempFile("lineFinderCompressedTimeout", ".txt");
+    outputFile.toFile().deleteOnExit();
+    LineFinder timedLineFinder = new LineFinder(LineFinder.sharedExecutor());
+    timedLineFinder.setQueryTimeout(1);
+
+    // WHEN
+    timedLineFinder.findInDirectory(directory.toString(), "*.gz", outputFile.toString(),
+        SearchQuery.regex("к.р.и"), 2);
+  }
+
+  @Test(description = "Проверяем вывод диапазонов строк без копирования: переводы строк \\r\\n, последняя "
+          + "строка без перевода строки и множество коротких несмежных диапазонов")
+  public void testPositiveFindWritesRangesWithoutCopying()
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    List<String> lines = Files.readAllLines(createLargeInputFile());
+    StringBuilder content = new StringBuilder();
+    for (int index = 0; index < lines.size(); index++) {
+      content.append(lines.get(index));
+      if (index < lines.size() - 1) {
+        content.append(index % 7 == 0 ? "\r\n" : "\n");
+      }
+    }
+    Path inputFile = Files.createTempFile("lineFinderRanges", ".txt");
+    inputFile.toFile().deleteOnExit();
+    Files.writeString(inputFile, content);
+    Path outputFile = Files.createTempFile("lineFinderRangesOutput", ".txt");
+    outputFile.toFile().deleteOnExit();
+
+    for (String keyWord : List.of("корги", "XIX", "а")) {
+      // WHEN
+      lineFinder.find(inputFile.toString(), outputFile.toString(), keyWord, 1);
+
+      // THEN
+      assertEquals(Files.readString(outputFile),
+              findNaive(lines, List.of(keyWord), 1).stream().map(line -> line + "\n").collect(Collectors.joining()));
+    }
+  }
+
+  @DataProvider(name = "maxMatchesCases")
+  public Object[][] getMaxMatchesCases() {
+    return new Object[][] {
+        {1},
+        {10},
+        {10_000},
+        {1_000_000}
+    };
+  }
+
+  @Test(dataProvider = "maxMatchesCases",
+          description = "Проверяем ограничение числа совпадений: выводятся первые совпадения с контекстом в "
+                  + "порядке файла — в обычном и сжатом файле, с индексом триграмм и по каталогу")
+  public void testPositiveFindWithMaxMatches(int maxMatches)
+          throws IOException, LineCountShouldBePositiveException {
+    // GIVEN
+    Path directory = Files.createTempDirectory("lineFinderMaxMatches");
+    Path inputFile = Files.move(createLargeInputFile(), directory.resolve("a.txt"));
+    Path compressedFile = directory.resolve("b.txt.gz");
+    try (OutputStream output = Files.newOutputStream(compressedFile)) {
+      writeBgzip(output, Files.readAllBytes(inputFile));
+    }
+    Path outputFile = Files.createTempFile("lineFinderMaxMatchesOutput", ".txt");
+    List<Path> created = List.of(inputFile, compressedFile, outputFile, directory);
+    SearchQuery query = SearchQuery.keyWord("корги").maxMatches(maxMatches);
+    int lineCount = 2;
+    List<String> expected = findNaive(Files.readAllLines(inputFile), List.of("корги"), lineCount, maxMatches);
+    long matchesInFile = Files.readAllLines(inputFile).stream().filter(line -> line.toLowerCase().contains("корги")).count();
+    List<SearchStatistics> finished = new ArrayList<>();
+    ISearchMetricsListener listener = new ISearchMetricsListener() {
+      @Override
+      public void onProgress(SearchStatistics statistics) {
+      }
+
+      @Override
+      public void onFinish(SearchStatistics statistics) {
+        finished.add(statistics);
+      }
+    };
+    LineFinder plainLineFinder = new LineFinder();
+    plainLineFinder.setMetricsListener(listener);
+    LineFinder indexedLineFinder = new LineFinder();
+    indexedLineFinder.setNgramIndexEnabled(true);
+    indexedLineFinder.setMetricsListener(listener);
+
+    try {
+      for (LineFinder finder : List.of(plainLineFinder, indexedLineFinder)) {
+        for (Path file : List.of(inputFile, compressedFile)) {
+          // WHEN
+          finished.clear();
+          finder.find(file.toString(), outputFile.toString(), query, lineCount);
+
+          // THEN в статистике столько совпадений, сколько записано
+          assertEquals(Files.readAllLines(outputFile), expected);
+          assertEquals(finished.get(0).getMatches(), Math.min(maxMatches, matchesInFile), file.toString());
+        }
+      }
+
+      // WHEN
+      finished.clear();
+      plainLineFinder.findInDirectory(directory.toString(), "*.txt*", outputFile.toString(), query, lineCount);
+
+      // THEN
+      assertEquals(finished.get(0).getMatches(), Math.min(maxMatches, 2 * matchesInFile));
+      List<String> expectedDirectory = new ArrayList<>();
+      expectedDirectory.add("==> " + inputFile + " <==");
+      expectedDirectory.addAll(expected);
+      if (maxMatches > matchesInFile) {
+        expectedDirectory.add("==> " + compressedFile + " <==");
+        expectedDirectory.addAll(expected);
+      }
+      assertEquals(Files.readAllLines(outputFile), expectedDirectory);
+    } finally {
+      try (var files = Files.list(directory)) {
+        for (Path file : files.toList()) {
+          Files.deleteIfExists(file);
+        }
+      }
+      for (Path file : created) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  @Test(description = "Проверяем статистику запроса: слушатель получает просмотренные байты, строки и "
+          + "совпадения, а общие счётчики доступны через MXBean")
+  public void testPositiveFindMetrics() throws Exception {
+    // GIVEN
+    Path inputFile = createLargeInputFile();
+    Path outputFile = Files.createTempFile("lineFinderMetrics", ".txt");
+    outputFile.toFile().deleteOnExit();
+    List<String> lines = Files.readAllLines(inputFile).stream().filter(line -> !line.isEmpty()).toList();
+    long expectedMatches = lines.stream().filter(line -> line.toLowerCase().contains("корги")).count();
+    List<SearchStatistics> progress = new ArrayList<>();
+    List<SearchStatistics> finished = new ArrayList<>();
+    LineFinder metricsLineFinder = new LineFinder();
+    metricsLineFinder.setMetricsListener(new ISearchMetricsListener() {
+      @Override
+      public void onProgress(SearchStatistics statistics) {
+        progress.add(statistics);
+      }
+
+      @Override
+      public void onFinish(SearchStatistics statistics) {
+        finished.add(statistics);
+      }
+    });
+    ObjectName name = LineFinder.registerMXBean();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    long bytesBefore = (Long) server.getAttribute(name, "BytesScanned");
+
+    // WHEN
+    metricsLineFinder.find(inputFile.toString(), outputFile.toString(), "корги", 2);
+
+    // THEN
+    assertEquals(finished.size(), 1);
+    SearchStatistics statistics = finished.get(0);
+    assertEquals(statistics.getInput(), inputFile.toString());
+    assertEquals(statistics.getBytesScanned(), Files.size(inputFile));
+    assertEquals(statistics.getLinesScanned(), lines.size());
+    assertEquals(statistics.getMatches(), expectedMatches);
+    assertTrue(statistics.getScanNanos() > 0 && statistics.getIoNanos() > 0);
+    assertTrue(statistics.getWorkerThroughputMbPerSecond() > 0);
+    assertTrue(!statistics.getWorkers().isEmpty());
+    assertEquals(statistics.getWorkers().stream().mapToLong(WorkerStatistics::getBytesScanned).sum(),
+            statistics.getBytesScanned());
+    assertEquals(statistics.getWorkers().stream().mapToLong(WorkerStatistics::getScanNanos).sum(),
+            statistics.getScanNanos());
+    for (WorkerStatistics worker : statistics.getWorkers()) {
+      assertTrue(worker.getThroughputMbPerSecond() > 0, worker.toString());
+    }
+    assertTrue(!progress.isEmpty());
+    assertEquals(progress.get(progress.size() - 1).getMatches(), expectedMatches);
+    assertTrue((Long) server.getAttribute(name, "BytesScanned") - bytesBefore >= Files.size(inputFile));
+  }
+
   //region Вспомогательные методы
+  private static void writeGzip(OutputStream output, byte[] content, int from, int to) throws IOException {
+    GZIPOutputStream gzip = new GZIPOutputStream(output);
+    gzip.write(content, from, to - from);
+    gzip.finish();
+  }
+
+  /**
+   * Пишет файл в формате BGZF: независимые gzip-блоки не больше 64 КБ с размером блока в поле BC.
+   */
+  private static void writeBgzip(OutputStream output, byte[] content) throws IOException {
+    int blockInput = 60_000;
+    for (int from = 0; from <= content.length; from += blockInput) {
+      int length = Math.min(blockInput, content.length - from);
+      Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      deflater.setInput(content, from, length);
+      deflater.finish();
+      byte[] compressed = new byte[length + 1024];
+      int compressedLength = deflater.deflate(compressed);
+      deflater.end();
+      CRC32 crc = new CRC32();
+      crc.update(content, from, length);
+
+      ByteBuffer block = ByteBuffer.allocate(18 + compressedLength + 8).order(ByteOrder.LITTLE_ENDIAN);
+      block.put(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff});
+      block.putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2);
+      block.putShort((short) (block.capacity() - 1));
+      block.put(compressed, 0, compressedLength);
+      block.putInt((int) crc.getValue()).putInt(length);
+      output.write(block.array());
+      if (length == 0) {
+        break;
+      }
+    }
+  }
+
+
+  private static Path createLargeInputFile() throws IOException {
+    List<String> source = Files.readAllLines(getPath("inputFile.txt").toFile().toPath());
+    List<String> lines = new ArrayList<>();
+    Random random = new Random(42);
+    while (lines.size() < 50_000) {
+      String line = source.get(random.nextInt(source.size()));
+      lines.add(random.nextInt(10) == 0 ? "" : line);
+    }
+    Path file = Files.createTempFile("lineFinderInput", ".txt");
+    file.toFile().deleteOnExit();
+    Files.write(file, lines);
+    return file;
+  }
+
+  private static List<String> findNaive(List<String> allLines, List<String> keyWords, int lineCount) {
+    return findNaive(allLines, keyWords, lineCount, Integer.MAX_VALUE);
+  }
+
+  private static List<String> findNaive(List<String> allLines, List<String> keyWords, int lineCount,
+                                        int maxMatches) {
+    List<String> lines = allLines.stream().filter(line -> !line.isEmpty()).toList();
+    boolean[] selected = new boolean[lines.size()];
+    int matches = 0;
+    for (int index = 0; index < lines.size() && matches < maxMatches; index++) {
+      String line = lines.get(index).toLowerCase();
+      if (keyWords.stream().anyMatch(keyWord -> line.contains(keyWord.toLowerCase()))) {
+        matches++;
+        for (int context = Math.max(0, index - lineCount);
+             context <= Math.min(lines.size() - 1, index + lineCount); context++) {
+          selected[context] = true;
+        }
+      }
+    }
+    List<String> result = new ArrayList<>();
+    for (int index = 0; index < lines.size(); index++) {
+      if (selected[index]) {
+        result.add(lines.get(index));
+      }
+    }
+    return result;
+  }
+
   private String getOutputFilename(String keyWord, int lineCount) {
     return String.format("outputFilename_%s_%d_lines.txt", keyWord, lineCount);
   }
@@ -0,0 +1,121 @@
+package ru.mai.lessons.rpks.impl;
+
+import static org.testng.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class RegexMatcherTest {
+
+  private static final String[] WORDS = {"Корги", "корги", "пемброк", "Пемброк-вельш", "error",
+      "ERROR:", "error42", " ", "-", "42", "ſ", "s", "S", "ıi", "I"};
+
+  @DataProvider(name = "literalPrefixes")
+  private Object[][] getLiteralPrefixes() {
+    return new Object[][]{
+        {"корги", "корги"},
+        {"^error: \\d+", "error: "},
+        {"error\\.log", "error.log"},
+        {"errors?", "error"},
+        {"ab+c", "ab"},
+        {"abc{2}", "ab"},
+        {"пемброк|корги", ""},
+        {"(пемброк|корги)", ""},
+        {"[Кк]орги", ""},
+        {"\\d+ корги", ""},
+        {"(?i)корги", ""}
+    };
+  }
+
+  @Test(dataProvider = "literalPrefixes",
+      description = "Проверяем извлечение литерального префикса из регулярного выражения")
+  public void testPositiveLiteralPrefix(String regex, String expectedPrefix) {
+    // WHEN
+    String actual = RegexMatcher.literalPrefix(regex);
+
+    // THEN
+    assertEquals(actual, expectedPrefix);
+  }
+
+  @DataProvider(name = "regexQueries")
+  private Object[][] getRegexQueries() {
+    return new Object[][]{
+        {"корги", false, false},
+        {"Пемброк-\\w+", true, false},
+        {"error\\d*", false, true},
+        {"ERROR:", true, false},
+        {"s", false, false},
+        {"is", false, false},
+        {"пемброк|error", false, true}
+    };
+  }
+
+  @Test(dataProvider = "regexQueries",
+      description = "Проверяем, что отбор по литеральному префиксу не меняет результат Pattern")
+  public void testPositiveMatchesLikePattern(String regex, boolean caseSensitive, boolean wholeWord) {
+    // GIVEN
+    Random random = new Random(17);
+    RegexMatcher matcher = new RegexMatcher(regex, caseSensitive, wholeWord);
+    String expression = wholeWord ? "(?<![\\p{L}\\p{Nd}_])(?:" + regex + ")(?![\\p{L}\\p{Nd}_])" : regex;
+    Pattern pattern = Pattern.compile(expression,
+        caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+
+    for (int attempt = 0; attempt < 2_000; attempt++) {
+      StringBuilder line = new StringBuilder();
+      int words = random.nextInt(20);
+      for (int index = 0; index < words; index++) {
+        line.append(WORDS[random.nextInt(WORDS.length)]);
+      }
+      byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+
+      // WHEN
+      boolean actual = matcher.matches(ByteBuffer.wrap(bytes), 0, bytes.length);
+
+      // THEN
+      assertEquals(actual, pattern.matcher(line).find(), line.toString());
+    }
+  }
+
+  @Test(description = "Проверяем, что таблица неоднозначных символов совпадает с полным перебором кодовых точек")
+  public void testPositiveAmbiguousFoldsLikeFullSweep() {
+    // GIVEN для каждого символа, полученного переводом в верхний и затем в нижний регистр, ищем
+    // символы с ним же после такого перевода, но с разными формами в нижнем регистре
+    int[] firstLower = new int[Character.MAX_CODE_POINT + 1];
+    Arrays.fill(firstLower, -1);
+    boolean[] ambiguous = new boolean[Character.MAX_CODE_POINT + 1];
+    for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+      int folded = Character.toLowerCase(Character.toUpperCase(codePoint));
+      for (int lower : new int[]{Character.toLowerCase(codePoint), Character.toLowerCase(folded)}) {
+        if (firstLower[folded] < 0) {
+          firstLower[folded] = lower;
+        } else if (firstLower[folded] != lower) {
+          ambiguous[folded] = true;
+        }
+      }
+    }
+
+    for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+      // WHEN
+      boolean actual = CaseFolds.foldsAmbiguously(codePoint);
+
+      // THEN
+      assertEquals(actual, ambiguous[Character.toLowerCase(Character.toUpperCase(codePoint))],
+          Integer.toHexString(codePoint));
+    }
+  }
+
+  @Test(description = "Проверяем, что регистронезависимый префикс обрезается перед неоднозначным символом")
+  public void testPositiveCaselessSafePrefix() {
+    // WHEN
+    String actual = RegexMatcher.caselessSafePrefix("пемброк");
+
+    // THEN 'о' совпадает по правилам Pattern с 'ᲂ', у которой другая форма в нижнем регистре
+    assertEquals(actual, "пембр");
+    assertEquals(RegexMatcher.caselessSafePrefix("kelvin"), "kelv");
+  }
+}